@@ -37,7 +37,7 @@ public class AlphaBetaConnect4Player extends MiniMaxConnect4Player {
 			ScoredConnect4Move nextMove = mvStack[currDepth+1];
 
 			bestMove.set(0, bestScore);
-			GameState.Who currTurn = brd.getWho();
+			GameState.Undo undo = undoStack[currDepth];
 
 			int [] columns = new int [COLS];
 			for (int j=0; j<COLS; j++) {
@@ -48,17 +48,12 @@ public class AlphaBetaConnect4Player extends MiniMaxConnect4Player {
 				int c = columns[i];
 				if (brd.numInCol[c] < Connect4State.NUM_ROWS) {
 					tempMv.col = c;				// initialize move
-					brd.makeMove(tempMv);
+					brd.makeMove(tempMv, undo);
 		
 					alphaBeta(brd, currDepth+1, alpha, beta);  // Check out move
 					
 					// Undo move
-					brd.numInCol[c]--;
-					int row = brd.numInCol[c]; 
-					brd.board[row][c] = Connect4State.emptySym;
-					brd.numMoves--;
-					brd.status = GameState.Status.GAME_ON;
-					brd.who = currTurn;
+					brd.unmakeMove(undo);
 					
 					// Check out the results, relative to what we've seen before
 					if (toMaximize && nextMove.score > bestMove.score) {
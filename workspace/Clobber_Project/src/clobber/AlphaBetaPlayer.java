@@ -1,18 +1,19 @@
 package clobber;
 import game.*;
 
-import java.awt.Point;
 import java.util.*;
 
 import clobber.ScoredClobberMove;
 
 public class AlphaBetaPlayer extends GamePlayer {
 
-	public static final double MAX_SCORE = Double.POSITIVE_INFINITY;
+	public static final double MAX_SCORE = 1000000;		// A game won at once; a point less per ply
 	public static final int ROWS = ClobberState.ROWS;
 	public static final int COLS = ClobberState.COLS;
 	
-	public static final int MAX_DEPTH = 4;
+	public static final int MAX_DEPTH = ROWS * COLS;
+	public static final int CHECK_NODES = 1024;		// Nodes between looks at the clock
+	public int maxDepth;
 	public int depthLimit;
 	protected int eval_function;
 	protected int P = 27;
@@ -20,38 +21,65 @@ public class AlphaBetaPlayer extends GamePlayer {
 	// Used to store the best move at any particular depth
 	protected ScoredClobberMove[] mvStack;
 	
+	// Used to take back the move tried at any particular depth
+	protected GameState.Undo[] undoStack;
+	
+	// Used to search the most promising moves first
+	protected MoveOrdering ordering = new MoveOrdering();
+	
+	// Used to budget each move from the game clock
+	protected TimeManager timer = new TimeManager(ClobberState.gameParams);
+	protected boolean aborted;
+	protected boolean timed;		// Whether the search has a deadline
+	protected int nodes;
+	
+	// Used to search the best move of the last iteration first, and to count the root
+	// moves an iteration has finished
+	protected ClobberMove rootFirst;
+	protected int rootSearched;
+	
+	// Used to play opening moves searched offline
+	protected OpeningBook book;
+	
+	// Used to count what the search does, over the move, the game and the tournament
+	protected SearchStats moveStats = new SearchStats();
+	protected SearchStats gameStats = new SearchStats();
+	protected SearchStats totalStats = new SearchStats();
+	protected boolean report = ClobberState.gameParams.bool("SEARCHSTATS");	// Print each move's counts
+	
 	
 	/**
-	 * Constructs an AlphaBetaPlayer object with the specified name and depth.
+	 * Constructs an AlphaBetaPlayer object with the specified name and maximum depth.
 	 * 
 	 * @param n			: the name of the player
-	 * @param depth		: the depth of the alpha beta search
+	 * @param depth		: the maximum depth of the alpha beta search
 	 * @param eval_function which evaluation function to use
 	 */
 	public AlphaBetaPlayer(String n, int depth, int eval_function) {
 		super(n, new ClobberState(), false);
-		this.depthLimit = depth;
+		this.maxDepth = depth;
 		this.eval_function = eval_function;
 	}
 	
 	/**
 	 * Determines whether a board represents a completed game.  If the board is
 	 * complete, then the evaluation value for the board is recorded based on
-	 * which players is moving.
+	 * which players is moving, less the plies it took so that quicker wins score more.
 	 * 
 	 * @param brd	: clobber board to be considered
 	 * @param move	: the move associated with the board state
+	 * @param ply	: the depth of the board in the search
 	 * @return 		: true if the board is terminal
 	 */
-	protected boolean terminalValue(GameState board, ScoredClobberMove move) {
+	protected boolean terminalValue(GameState board, ScoredClobberMove move, int ply) {
 		GameState.Status status = board.getStatus();
 		boolean isTerminal = true;
 		
 		if (status == GameState.Status.HOME_WIN) {
-			move.setScore(MAX_SCORE);
+			move.setScore(MAX_SCORE - ply);
 		}
 		else if (status == GameState.Status.AWAY_WIN) {
-			move.setScore(-MAX_SCORE);
+			move.setScore(-(MAX_SCORE - ply));
 		}
 		else {
 			isTerminal = false;
@@ -60,6 +88,38 @@ public class AlphaBetaPlayer extends GamePlayer {
 		return isTerminal;
 	}
 	
+	/**
+	 * Determines whether a board can be solved exactly by splitting it into
+	 * independent regions.  If it can, the winning value is recorded in the move, as if
+	 * the win took every stone left on the board.
+	 * 
+	 * @param board	: clobber board to be considered
+	 * @param move	: the move associated with the board state
+	 * @param ply	: the depth of the board in the search
+	 * @return 		: true if the board was solved
+	 */
+	protected boolean solvedValue(ClobberState board, ScoredClobberMove move, int ply) {
+		GameState.Who winner = Regions.winner(board);
+		
+		if (winner == null) {
+			return false;
+		}
+		
+		double win = MAX_SCORE - ply - Long.bitCount(board.home | board.away);
+		move.setScore(winner == GameState.Who.HOME ? win : -win);
+		return true;
+	}
+	
+	/**
+	 * Determines whether a score is that of a won or lost game rather than an evaluation.
+	 * 
+	 * @param score	: the score, from home's side
+	 * @return		: true if the game is decided
+	 */
+	protected static boolean decided(double score) {
+		return Math.abs(score) >= MAX_SCORE - MAX_DEPTH;
+	}
+	
 	/**
 	 * Used to initialize the alpha beta search.
 	 * 		- Creates the default move stack of best moves
@@ -67,12 +127,72 @@ public class AlphaBetaPlayer extends GamePlayer {
 	 */
 	public void init() {
 		mvStack = new ScoredClobberMove [MAX_DEPTH];
+		undoStack = new GameState.Undo [MAX_DEPTH];
 		
 		for (int i=0; i < MAX_DEPTH; i++) {
 			mvStack[i] = new ScoredClobberMove(0, 0, 0, 0, 0);
+			undoStack[i] = new GameState.Undo();
+		}
+		
+		book = OpeningBook.load();
+		Regions.load();
+	}
+	
+	public void startGame(String opponent) {
+		timer.startGame();
+		gameStats.clear();
+	}
+	
+	/**
+	 * Reports what the searches of the game did, and adds it to the tournament's counts.
+	 */
+	public void endGame(int result) {
+		System.out.println(nickname + " game: " + gameStats);
+		totalStats.add(gameStats);
+	}
+	
+	/**
+	 * Reports what the searches of the tournament did, if any games were played.
+	 */
+	public void done() {
+		if (totalStats.moves > 0) {
+			System.out.println(nickname + " tournament: " + totalStats);
+		}
+	}
+	
+	/**
+	 * @return			: the counts of the last move's search
+	 */
+	public SearchStats getMoveStats() {
+		return moveStats;
+	}
+	
+	/**
+	 * @return			: the counts of the searches of the game so far
+	 */
+	public SearchStats getGameStats() {
+		return gameStats;
+	}
+	
+	/**
+	 * Ends the counts of a move and adds them to the game's.
+	 * 
+	 * @param reached	: the depth of the deepest iteration completed
+	 * @param began		: when the search of the move began, from System.nanoTime()
+	 */
+	protected void recordMove(int reached, long began) {
+		moveStats.endMove(reached, System.nanoTime() - began);
+		gameStats.add(moveStats);
+		
+		if (report) {
+			System.out.println(nickname + " move: " + moveStats);
 		}
 	}
 	
+	public void timeOfLastMove(double secs) {
+		timer.endMove(secs);
+	}
+	
 	/*
 	public void reinit(GameState state) {
 		ClobberMove firstmove = getMoves(state).get(0);
@@ -93,29 +213,7 @@ public class AlphaBetaPlayer extends GamePlayer {
 		ClobberState board = (ClobberState) state;
 		
 		ArrayList<ScoredClobberMove> list = new ArrayList<ScoredClobberMove>();
-		ScoredClobberMove move = new ScoredClobberMove();
-		
-		for (int r = 0; r < ClobberState.ROWS; r++) {
-			for (int c = 0; c < ClobberState.COLS; c++) {
-				move.row1 = r;
-				move.col1 = c;
-				move.row2 = r-1;
-				move.col2 = c;
-				if (board.moveOK(move)) list.add((ScoredClobberMove) move.clone());
-				
-				move.row2 = r+1;
-				move.col2 = c;
-				if (board.moveOK(move)) list.add((ScoredClobberMove) move.clone());
-				
-				move.row2 = r;
-				move.col2 = c-1;
-				if (board.moveOK(move)) list.add((ScoredClobberMove) move.clone());
-				
-				move.row2 = r;
-				move.col2 = c+1;
-				if (board.moveOK(move)) list.add((ScoredClobberMove) move.clone());
-			}
-		}
+		board.getMoves(list);
 		
 		return list;
 	}
@@ -129,79 +227,94 @@ public class AlphaBetaPlayer extends GamePlayer {
 	 * @param b				: beta, the best minimum score
 	 */
 	private void alphaBeta(ClobberState board, int currDepth, double a, double b) {
-		alphaBeta(board, currDepth, a, b, true);
-	}
-	private void alphaBeta(ClobberState board, int currDepth, double a, double b, boolean use_limit) {
+		// Check the clock every so often, giving up on the iteration once the move's time is spent
+		if ((++nodes & (CHECK_NODES - 1)) == 0 && timed && depthLimit > 1 && timer.pastDeadline()) {
+			aborted = true;
+		}
+		if (aborted) {
+			return;
+		}
+		moveStats.nodes++;
+		
 		boolean toMaximize = (board.getWho() == GameState.Who.HOME);
-		boolean isTerminal = terminalValue(board, mvStack[currDepth]);
+		// Regions are only solved where the search would go on, never at the horizon
+		boolean isTerminal = terminalValue(board, mvStack[currDepth], currDepth) ||
+				(currDepth > 0 && currDepth < depthLimit && solvedValue(board, mvStack[currDepth], currDepth));
 		
-		// If the move is terminal, allow score to propagate up
+		// If the move is terminal or solved, allow score to propagate up
 		if (isTerminal) {
 			return;
 		}
 		
 		// If the depth limit is reached, use the evaluation function
-		else if (currDepth == depthLimit  && use_limit) {
+		else if (currDepth == depthLimit) {
+			moveStats.evals++;
 			mvStack[currDepth].setScore(eval(board));
 		}
 		
 		// Otherwise continue alpha beta recursion
 		else {
-			ScoredClobberMove tempMove = new ScoredClobberMove();
-			
-			double bestScore = (toMaximize ? 
-					Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+			ScoredClobberMove tempMove;
+			double quickest = MAX_SCORE - (currDepth + 1);	// A win on the next move cannot be bettered
 			
 			ScoredClobberMove bestMove = mvStack[currDepth];
 			ScoredClobberMove nextMove = mvStack[currDepth+1];
 			
-			bestMove.setScore(bestScore);
-			GameState.Who currTurn = board.getWho();
+			GameState.Undo undo = undoStack[currDepth];
 			
-			// Get possible moves and shuffle them
+			// Get possible moves and order them, leaving ties in random order
 			ArrayList<ScoredClobberMove> moves = getMoves(board);
 			Collections.shuffle(moves);
+			ordering.order(moves, 0, currDepth);
+			if (currDepth == 0 && rootFirst != null) {
+				for (int i = 0; i < moves.size(); i++) {
+					if (moves.get(i).sameAs(rootFirst)) {
+						moves.add(0, moves.remove(i));
+						break;
+					}
+				}
+			}
 			
 			for (int i = 0; i < moves.size(); i++) {
 				// Create and make move
-				tempMove = new ScoredClobberMove(moves.get(i));
-				board.makeMove(tempMove);
+				tempMove = moves.get(i);
+				board.makeMove(tempMove, undo);
 				
 				// Examine the move recursively
 				alphaBeta(board, currDepth+1, a, b);
 				
 				// Undo the move
-				board.board[tempMove.row1][tempMove.col1] = 
-						(board.getWho() == GameState.Who.HOME ? 
-								ClobberState.homeSym : ClobberState.awaySym);
-				
-				board.board[tempMove.row2][tempMove.col2] = 
-						(board.getWho() == GameState.Who.HOME ? 
-								ClobberState.awaySym : ClobberState.homeSym);
-				
-				// Ensure status and turn have not been modified
-				board.status = GameState.Status.GAME_ON;
-				board.who = currTurn;
-				board.numMoves--;
+				board.unmakeMove(undo);
 				
-				// Examine the results, relative to what we have seen
-				if (toMaximize && nextMove.score >= bestMove.score) {
-					bestMove.set(tempMove, nextMove.score);
+				// Unwind at once when out of time; the moves already examined stand
+				if (aborted) {
+					return;
+				}
+				if (currDepth == 0) {
+					rootSearched++;
 				}
-				else if (!toMaximize && nextMove.score <= bestMove.score) {
+				
+				// Examine the results, relative to what we have seen; the first move
+				// examined is taken whatever its score
+				if (i == 0 || (toMaximize && nextMove.score > bestMove.score) ||
+						(!toMaximize && nextMove.score < bestMove.score)) {
 					bestMove.set(tempMove, nextMove.score);
 				}
 				
 				// Update alpha and beta and perform pruning
 				if (!toMaximize) {
 					b = Math.min(bestMove.score, b);
-					if (bestMove.score <= a || bestMove.score == -MAX_SCORE) {
+					if (bestMove.score <= a || bestMove.score <= -quickest) {
+						ordering.cutoff(bestMove, currDepth, depthLimit - currDepth);
+						moveStats.cutoff(i);
 						return;
 					}
 				}
 				else {
 					a = Math.max(bestMove.score, a);
-					if (bestMove.score >= b || bestMove.score == MAX_SCORE) {
+					if (bestMove.score >= b || bestMove.score >= quickest) {
+						ordering.cutoff(bestMove, currDepth, depthLimit - currDepth);
+						moveStats.cutoff(i);
 						return;
 					}
 				}
@@ -212,78 +325,48 @@ public class AlphaBetaPlayer extends GamePlayer {
 	protected GameMove scorpu(GameState state)
 	{
 		ClobberState cs = (ClobberState)state;
-		ArrayList<Point> possibleStones = new ArrayList<Point>();
 		boolean home = (cs.getWho() == GameState.Who.HOME);
-		int max_opposing = 0;
-		for (int r = 0; r < ClobberState.ROWS; r++)
+		long mine = home ? cs.home : cs.away;
+		long opp = home ? cs.away : cs.home;
+		
+		// Find the stones with the most adjacent opponents
+		long possibleStones = 0;
+		int max_opposing = 1;
+		for (long m = mine; m != 0; m &= m - 1)
 		{
-			for (int c = 0; c < ClobberState.COLS; c++)
+			int i = Long.numberOfTrailingZeros(m);
+			int opposingStones = Long.bitCount(opp & ClobberState.ADJACENT[i]);
+			if (opposingStones > max_opposing)
 			{
-				
-				int opposingStones = 0;		
-				if (home)
-				{
-					if (cs.board[r][c] == ClobberState.homeSym) //if this piece is owned by the player
-					{					
-						try { if (cs.board[r - 1][c + 0] == ClobberState.awaySym) opposingStones++; } catch (IndexOutOfBoundsException e) {}
-						try { if (cs.board[r + 0][c - 1] == ClobberState.awaySym) opposingStones++; } catch (IndexOutOfBoundsException e) {}
-						try { if (cs.board[r + 0][c + 1] == ClobberState.awaySym) opposingStones++; } catch (IndexOutOfBoundsException e) {}
-						try { if (cs.board[r + 1][c + 0] == ClobberState.awaySym) opposingStones++; } catch (IndexOutOfBoundsException e) {}
-					}
-					if (opposingStones > max_opposing)
-					{
-						possibleStones.clear(); //no stone has had this many adjacent opponents
-						possibleStones.add(new Point(r, c));
-						max_opposing = opposingStones;
-					}
-					if (opposingStones == max_opposing)
-					{
-						possibleStones.add(new Point(r, c));
-					}
-				}
-				else
-				{
-					if (cs.board[r][c] == ClobberState.awaySym) //if this piece is owned by the player
-					{					
-						try { if (cs.board[r - 1][c + 0] == ClobberState.homeSym) opposingStones++; } catch (IndexOutOfBoundsException e) {}
-						try { if (cs.board[r + 0][c - 1] == ClobberState.homeSym) opposingStones++; } catch (IndexOutOfBoundsException e) {}
-						try { if (cs.board[r + 0][c + 1] == ClobberState.homeSym) opposingStones++; } catch (IndexOutOfBoundsException e) {}
-						try { if (cs.board[r + 1][c + 0] == ClobberState.homeSym) opposingStones++; } catch (IndexOutOfBoundsException e) {}
-					}
-					if (opposingStones > max_opposing)
-					{
-						possibleStones.clear(); //no stone has had this many adjacent opponents
-						possibleStones.add(new Point(r, c));
-						max_opposing = opposingStones;
-					}
-					if (opposingStones == max_opposing)
-					{
-						possibleStones.add(new Point(r, c));
-					}
-				}					
+				possibleStones = 0; //no stone has had this many adjacent opponents
+				max_opposing = opposingStones;
+			}
+			if (opposingStones == max_opposing)
+			{
+				possibleStones |= 1L << i;
 			}
 		}
-		Point stone_to_move = possibleStones.get((int)(Math.random() * (possibleStones.size() - 1))); //get a random stone from the array
-		ArrayList<ClobberMove> validMoves = new ArrayList<ClobberMove>();
-		int x = stone_to_move.x;
-		int y = stone_to_move.y;
-		if (home)
-		{			
-			try { if (cs.board[x - 1][y + 0] == ClobberState.awaySym) validMoves.add(new ClobberMove(x, y, x - 1, y + 0)); } catch (IndexOutOfBoundsException e) {}
-			try { if (cs.board[x + 0][y - 1] == ClobberState.awaySym) validMoves.add(new ClobberMove(x, y, x + 0, y - 1)); } catch (IndexOutOfBoundsException e) {}
-			try { if (cs.board[x + 0][y + 1] == ClobberState.awaySym) validMoves.add(new ClobberMove(x, y, x + 0, y + 1)); } catch (IndexOutOfBoundsException e) {}
-			try { if (cs.board[x + 1][y + 0] == ClobberState.awaySym) validMoves.add(new ClobberMove(x, y, x + 1, y + 0)); } catch (IndexOutOfBoundsException e) {}
-			
-		}
-		else
-		{
-			try { if (cs.board[x - 1][y + 0] == ClobberState.homeSym) validMoves.add(new ClobberMove(x, y, x - 1, y + 0)); } catch (IndexOutOfBoundsException e) {}
-			try { if (cs.board[x + 0][y - 1] == ClobberState.homeSym) validMoves.add(new ClobberMove(x, y, x + 0, y - 1)); } catch (IndexOutOfBoundsException e) {}
-			try { if (cs.board[x + 0][y + 1] == ClobberState.homeSym) validMoves.add(new ClobberMove(x, y, x + 0, y + 1)); } catch (IndexOutOfBoundsException e) {}
-			try { if (cs.board[x + 1][y + 0] == ClobberState.homeSym) validMoves.add(new ClobberMove(x, y, x + 1, y + 0)); } catch (IndexOutOfBoundsException e) {}
-		}
+		int stone_to_move = nthBit(possibleStones, (int)(Math.random() * Long.bitCount(possibleStones))); //get a random stone
+		long validMoves = opp & ClobberState.ADJACENT[stone_to_move];
+		int target = nthBit(validMoves, (int)(Math.random() * Long.bitCount(validMoves)));
 		
-		return validMoves.get((int)(Math.random() * (validMoves.size() - 1)));
+		return new ClobberMove(ClobberState.row(stone_to_move), ClobberState.col(stone_to_move),
+				ClobberState.row(target), ClobberState.col(target));
+	}
+	
+	/**
+	 * Finds a set bit of a mask by its position among the set bits.
+	 * 
+	 * @param mask		: the mask
+	 * @param n			: how many set bits to skip, lowest first
+	 * @return			: the index of the bit
+	 */
+	private static int nthBit(long mask, int n)
+	{
+		for (int i = 0; i < n; i++) {
+			mask &= mask - 1;
+		}
+		return Long.numberOfTrailingZeros(mask);
 	}
 	
 	protected GameMove headscratcher(GameState state)
@@ -293,7 +376,9 @@ public class AlphaBetaPlayer extends GamePlayer {
 	}
 	
 	/**
-	 * Calculates the next move to be performed by the alpha beta player
+	 * Calculates the next move to be performed by the alpha beta player.  The search
+	 * is deepened one ply at a time while the time manager expects the next iteration
+	 * to fit, and the best move of the last completed iteration is played.
 	 * 
 	 * @param state		: the current game board
 	 * @param lastMove	: the last move to be performed
@@ -312,13 +397,98 @@ public class AlphaBetaPlayer extends GamePlayer {
 		}
 		else
 		{
-			if (state.numMoves <= 15)	
-				alphaBeta((ClobberState)state, 0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false); //don't use depth limit
-			else
-				alphaBeta((ClobberState)state, 0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+			ClobberState board = (ClobberState)state;
+			timer.startMove(Long.bitCount(board.movable()) / 2 + 1);
+			ordering.newSearch();
+			
+			// Play straight from the opening book when it holds the position
+			ScoredClobberMove booked = (book != null ? book.probe(board) : null);
+			if (booked != null) {
+				timer.stopMove();
+				return booked;
+			}
+			
+			// Each ply removes a stone, so no line can outlast the stones on the board
+			int plies = Math.min(maxDepth, Long.bitCount(board.home | board.away) - 1);
+			
+			ScoredClobberMove best = null;
+			double last = 0;
+			double prev = 0;
+			int reached = 0;
+			long began = System.nanoTime();
+			moveStats.clear();
+			aborted = false;
+			timed = true;
+			rootFirst = null;
+			
+			for (depthLimit = 1; depthLimit <= plies; depthLimit++) {
+				long start = System.nanoTime();
+				rootSearched = 0;
+				alphaBeta(board, 0, -MAX_SCORE, MAX_SCORE);
+				
+				// A cut-short iteration still counts once it has finished the move searched
+				// first, the best of the last iteration
+				if (aborted) {
+					if (rootSearched > 0) {
+						best = new ScoredClobberMove(mvStack[0]);
+					}
+					break;
+				}
+				
+				best = new ScoredClobberMove(mvStack[0]);
+				rootFirst = best;
+				reached = depthLimit;
+				prev = last;
+				last = (System.nanoTime() - start) / 1e9;
+				
+				// Stop once the game is decided
+				if (decided(best.score) || !timer.startIteration(last, prev)) {
+					break;
+				}
+			}
+			
+			recordMove(reached, began);
+			timer.stopMove();
+			return best;
+		}
+	}
+	
+	/**
+	 * Searches a board to a fixed depth, whatever the clock says and without the opening
+	 * book.  The search deepens one ply at a time as getMove does, but every iteration runs
+	 * to completion; it only stops short of the depth once the game is decided.
+	 * 
+	 * @param board		: the current game board
+	 * @param depth		: the depth to search to
+	 * @return			: the best move, with its score
+	 */
+	public ScoredClobberMove searchDepth(ClobberState board, int depth) {
+		ordering.newSearch();
+		int plies = Math.min(depth, Long.bitCount(board.home | board.away) - 1);
 		
-			return mvStack[0];
+		ScoredClobberMove best = null;
+		int reached = 0;
+		long began = System.nanoTime();
+		moveStats.clear();
+		aborted = false;
+		timed = false;
+		rootFirst = null;
+		
+		for (depthLimit = 1; depthLimit <= plies; depthLimit++) {
+			rootSearched = 0;
+			alphaBeta(board, 0, -MAX_SCORE, MAX_SCORE);
+			
+			best = new ScoredClobberMove(mvStack[0]);
+			rootFirst = best;
+			reached = depthLimit;
+			
+			if (decided(best.score)) {
+				break;
+			}
 		}
+		
+		recordMove(reached, began);
+		return best;
 	}
 	
 	/**
@@ -329,7 +499,7 @@ public class AlphaBetaPlayer extends GamePlayer {
 	 * @param gs	: the current game state
 	 * @return		: an integer indicating which side is winning
 	 */
-	private int eval(ClobberState gs) {
+	int eval(ClobberState gs) {
 		switch(eval_function)
 		{
 		case 1:
@@ -341,165 +511,22 @@ public class AlphaBetaPlayer extends GamePlayer {
 		}
 	}
 	private int eval1(ClobberState gs) {
-		int homePiecesMove = 0;
-		int awayPiecesMove = 0;
-		
-		for (int row = 0; row < ClobberState.ROWS; row++) {
-			for (int col = 0; col < ClobberState.COLS; col++) {
-				// If the home piece can move, increment its movable pieces
-				if (gs.board[row][col] == ClobberState.homeSym && canMove(row, col, gs.board)) {
-					homePiecesMove++;
-				}
-				// If the away piece can move, increment its movable pieces
-				else if (gs.board[row][col] == ClobberState.awaySym && canMove(row, col, gs.board)) {
-					awayPiecesMove++;
-				}
-			}
-		}
+		// A piece can move if an opponent piece is next to it
+		int homePiecesMove = Long.bitCount(gs.home & ClobberState.neighbours(gs.away));
+		int awayPiecesMove = Long.bitCount(gs.away & ClobberState.neighbours(gs.home));
 		
 		//System.out.println("Home: " + homePiecesMove + "\nAway: " + awayPiecesMove);
 		
 		// Return the difference between the home and away pieces
 		return homePiecesMove - awayPiecesMove;
 	}
-	class Block
-	{
-		ArrayList<Point> points;
-		int home_stones;
-		int away_stones;
-		Block()
-		{
-			points = new ArrayList<Point>();
-			home_stones = 0;
-			away_stones = 0;
-		}
-		Block(Point point, ClobberState state)
-		{
-			this();
-			addPoint(point, state);
-		}
-		Block(Block other)
-		{
-			this();
-			for(Point p : other.points)
-			{
-				points.add(p);
-			}
-			home_stones = other.home_stones;
-			away_stones = other.away_stones;
-		}
-		void addPoint(Point p, ClobberState cs)
-		{
-			points.add(p);
-			if (cs.board[p.x][p.y] == ClobberState.homeSym)
-				home_stones++;
-			else
-				away_stones++;
-		}
-	}
-	protected Block buildBlock(Block outer_block, Point current, ClobberState cs)
-	{
-		Block local_block = new Block(outer_block);
-		
-		return local_block;
-	}
-	protected ArrayList<Block> getBlocks(ClobberState cs)
-	{
-		
-		for (int r = 0; r < ROWS; r++)
-		{
-			for (int c = 0; c < COLS; c++)
-			{
-				 
-			}
-		}
-		return null;
-	}
 	private int eval2(ClobberState gs) {
-		int home_score = 0;
-		int away_score = 0;
-		if (gs.numMoves < 15)
-		{
-			for (int row = 0; row < ClobberState.ROWS; row++) {
-				for (int col = 0; col < ClobberState.COLS; col++) {
-					// If the home piece can move, increment its movable pieces
-					if (gs.board[row][col] == ClobberState.homeSym && canMove(row, col, gs.board)) {
-						home_score++;
-					}
-					// If the away piece can move, increment its movable pieces
-					else if (gs.board[row][col] == ClobberState.awaySym && canMove(row, col, gs.board)) {
-						away_score++;
-					}
-				}
-			}
-		}
 		return eval1(gs);
 	}
 	
-	/**
-	 * Checks whether the player piece at the specified location can move to at least one adjacent
-	 * location.  Pieces can move to in-bound and opponent-occupied adjacent locations.
-	 * 
-	 * @param row		: the row of the player piece
-	 * @param col		: the column of the player piece
-	 * @param board		: the game board
-	 * @return			: true if the player piece can move
-	 */
-	private boolean canMove(int row, int col, char[][] board) {
-		char playerSym = board[row][col];
-		ClobberMove cm = new ClobberMove();
-		
-		// Check (row + 1, column)
-		cm.row2 = row + 1;
-		cm.col2 = col;
-		if (moveOK(cm, board, playerSym)) return true;
-		
-		// Check (row - 1, column)
-		cm.row2 = row - 1;
-		cm.col2 = col;
-		if (moveOK(cm, board, playerSym)) return true;
-		
-		// Check (row, column + 1)
-		cm.row2 = row;
-		cm.col2 = col + 1;
-		if (moveOK(cm, board, playerSym)) return true;
-		
-		// Check (row, column - 1)
-		cm.row2 = row;
-		cm.col2 = col - 1;
-		if (moveOK(cm, board, playerSym)) return true;
-		
-		// Return false if no moves possible
-		return false;
-	}
-	
-	/**
-	 * Checks to see whether the specified move is valid.  This method assumes that the player
-	 * is adjacent to the move locations (i.e. that the moves are available) and only returns true
-	 * if the location is in bounds and occupied by the opponent.
-	 * 
-	 * @param cm				: the move object
-	 * @param board				: the Clobber board
-	 * @param playerSym			: the color of the player
-	 * @return					: true if OK
-	 */
-	private boolean moveOK(ClobberMove cm, char[][] board, char playerSym) {
-		// Set the opponent symbol
-		char opponent = (playerSym == ClobberState.homeSym) ? 
-				ClobberState.awaySym : ClobberState.homeSym;
-		
-		// Check whether the move is valid
-		if (cm != null && Util.inrange(cm.row2, 0, ClobberState.ROWS - 1) &&
-			Util.inrange(cm.col2, 0, ClobberState.COLS - 1) && board[cm.row2][cm.col2] == opponent) {
-				return true;
-			}
-		
-		return false;
-	}
-	
 	public static void main(String [] args) {
 		int eval = 1;
-		GamePlayer p = new AlphaBetaPlayer("AB_" + eval, AlphaBetaPlayer.MAX_DEPTH - 1, eval);
+		GamePlayer p = new AlphaBetaPlayer("AB_" + eval, AlphaBetaPlayer.MAX_DEPTH, eval);
 		p.compete(args, 1);
 	}
 }
@@ -0,0 +1,930 @@
+package clobber;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import game.GameMove;
+import game.GameState;
+import game.TimeManager;
+
+/**
+ * The parallel alpha-beta search the threaded Clobber players share.  A player makes one in
+ * init(), giving it the player's evaluation function and the score of a won game, and keeps
+ * it for the whole tournament along with its transposition table, move ordering and pool of
+ * search threads.  Each move is searched by iterative deepening while the player's clock
+ * allows, and the search can also ponder the position it predicts on the opponent's time.
+ *
+ * A game won at a ply of the search scores the win score less that ply, so the search plays
+ * the quickest win and the slowest loss.  Evaluations are kept inside the scores of the
+ * longest games, so a score is a decided game exactly when it is beyond them.
+ *
+ * Nodes far from the horizon are searched in parallel following the Young Brothers Wait
+ * Concept; nodes within SPLIT_DEPTH of it are searched sequentially on one thread.
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class AlphaBetaSearch {
+
+	public static final int SPLIT_DEPTH		= 3;		// Nodes closer to the horizon are not split
+	public static final int CHECK_NODES		= 1024;		// Nodes between looks at the clock, a power of 2
+	public static final int MAX_PLY			= ClobberState.ROWS * ClobberState.COLS;	// Each ply takes a stone, so no game is longer
+
+	private static final Comparator<ScoredClobberMove> NEAR_HOME = new ScoredClobberMove.SortMoveDes();
+	private static final Comparator<ScoredClobberMove> NEAR_AWAY = new ScoredClobberMove.SortMoveAsc();
+
+	/**
+	 * Scores a position the search stops at, from home's side.
+	 */
+	public interface Evaluator {
+
+		/**
+		 * @param state		: the position
+		 * @return			: its score, positive when home is ahead; the search keeps it inside
+		 * 					  the scores of won games
+		 */
+		float evaluate(ClobberState state);
+	}
+
+	private final String name;							// The player's name, for reports
+	private final int maxDepth;							// The deepest iteration searched
+	private final Evaluator evaluator;					// Scores positions at the horizon
+	private final double winScore;						// The score of a game won at the root
+	private final double evalLimit;						// Evaluations are kept inside this, short of any win
+	private final boolean distanceOrdering;				// Whether ties are sorted by distance score
+
+	private final TranspositionTable table;				// Shared by all of the search threads
+	private final MoveOrdering ordering;				// Killer and history tables, also shared
+	private final ForkJoinPool pool;					// Runs the search
+	private final SearchWorker.Factory workers;			// The pool's threads, which count what they search
+	private int depthLimit;								// Depth of the current iteration
+	private TimeManager timer;							// The clock of the move being searched
+	private volatile boolean timed;						// Whether the running search has a deadline
+	private volatile boolean outOfTime;					// Set when the deadline passes, to unwind the search
+	private boolean aborted;							// Whether the last iteration was cut short
+
+	private boolean report = ClobberState.gameParams.bool("SEARCHSTATS");	// Print each move's counts
+	private SearchStats moveStats = new SearchStats();	// What the last move's search did
+	private SearchStats gameStats = new SearchStats();	// Added up over the game
+	private SearchStats totalStats = new SearchStats();	// Added up over the tournament
+
+	private Thread ponderThread;						// Searches the predicted position
+	private volatile boolean ponderStop;				// Set to end pondering
+	private volatile AlphaBetaTask ponderRoot;			// Root of the iteration being pondered
+	private ClobberState ponderState;					// The position after the predicted reply
+	private long ponderKey;								// Its key, to recognize a ponder hit
+	private ScoredClobberMove ponderBest;				// Best move of the last completed ponder iteration
+	private int ponderDepth;							// Depth of that iteration
+	private double ponderLast, ponderPrev;				// Times of the last two ponder iterations
+
+	/**
+	 * Constructs a search and starts its pool of threads.
+	 *
+	 * @param name				: the name of the player searching, for its reports
+	 * @param threads			: the number of threads searching each move
+	 * @param maxDepth			: the deepest iteration to search
+	 * @param evaluator			: scores the positions at the horizon
+	 * @param winScore			: the score of a game won at the root, finite and well beyond
+	 * 							  anything the evaluator returns
+	 * @param distanceOrdering	: whether moves the move ordering cannot tell apart are sorted by
+	 * 							  their distance score before being searched
+	 */
+	public AlphaBetaSearch(String name, int threads, int maxDepth, Evaluator evaluator,
+			double winScore, boolean distanceOrdering) {
+		this.name = name;
+		this.maxDepth = maxDepth;
+		this.evaluator = evaluator;
+		this.winScore = winScore;
+		this.evalLimit = winScore - MAX_PLY - 1;
+		this.distanceOrdering = distanceOrdering;
+
+		table = new TranspositionTable();
+		ordering = new MoveOrdering();
+		workers = new SearchWorker.Factory();
+		pool = new ForkJoinPool(threads, workers, null, false);
+	}
+
+	/**
+	 * Stops the search pool at the end of the tournament, and reports what it searched if any
+	 * games were played.  Fixed-depth searches, done outside of a game, are not reported.
+	 */
+	public void shutdown() {
+		stopPondering();
+		pool.shutdown();
+		if (totalStats.moves > 0) {
+			System.out.println(name + " tournament: " + totalStats);
+		}
+	}
+
+	/**
+	 * Starts counting the searches of a new game.
+	 */
+	public void startGame() {
+		gameStats.clear();
+	}
+
+	/**
+	 * Reports what the searches of the game did, and adds it to the tournament's counts.
+	 */
+	public void endGame() {
+		System.out.println(name + " game: " + gameStats);
+		totalStats.add(gameStats);
+	}
+
+	/**
+	 * Returns the counts of the search of the last move: nodes, evaluations, cutoffs, table
+	 * hits, the depth reached and the time taken.
+	 *
+	 * @return				: the counts of the last move
+	 */
+	public SearchStats getMoveStats() {
+		return moveStats;
+	}
+
+	/**
+	 * Returns the counts of the searches of the game so far, added up over its moves.
+	 *
+	 * @return				: the counts of the game
+	 */
+	public SearchStats getGameStats() {
+		return gameStats;
+	}
+
+	/**
+	 * Searches a position for the best move, deepening the search one ply at a time for as
+	 * long as the time manager expects the next iteration to fit in the move's share of the
+	 * game clock.  The best move found by the last completed iteration is returned.
+	 *
+	 * @param state			: the position, which must have a move
+	 * @param timer			: the clock, on which the move has been started
+	 * @return				: the best move, with its score
+	 */
+	public ScoredClobberMove deepen(ClobberState state, TimeManager timer) {
+		List<ScoredClobberMove> allMoves = new ArrayList<ScoredClobberMove>();
+		state.getMoves(allMoves);
+		long began = System.nanoTime();
+
+		// Leave what pondering searched out of this move's counts
+		workers.collect(moveStats);
+		moveStats.clear();
+		ordering.newSearch();
+		this.timer = timer;
+
+		// Each ply removes a stone, so no line can outlast the stones on the board
+		int plies = Math.min(maxDepth, Long.bitCount(state.home | state.away) - 1);
+
+		ScoredClobberMove best = allMoves.get(0);
+		double last = 0;
+		double prev = 0;
+		int firstDepth = 1;
+		int reached = 0;
+
+		/** On a ponder hit, carry on from the iterations searched on the opponent's time **/
+		if (ponderBest != null && ponderKey == state.key) {
+			best = ponderBest;
+			last = ponderLast;
+			prev = ponderPrev;
+			firstDepth = ponderDepth + 1;
+			reached = ponderDepth;
+			moveFirst(allMoves, best);
+
+			// Play it at once if the game is decided or another iteration will not fit
+			if (decided(best.score) || !timer.startIteration(last, prev)) {
+				firstDepth = plies + 1;
+			}
+		}
+		ponderBest = null;
+
+		/** Deepen the search while the clock allows **/
+		for (depthLimit = firstDepth; depthLimit <= plies; depthLimit++) {
+			long start = System.nanoTime();
+			ScoredClobberMove result = searchRoot(state, allMoves);
+
+			// Keep the last completed iteration if this one finished none of its moves
+			if (result == null) {
+				break;
+			}
+
+			best = result;
+			if (aborted) {
+				break;
+			}
+			reached = depthLimit;
+
+			prev = last;
+			last = (System.nanoTime() - start) / 1e9;
+
+			// Stop once the game is decided
+			if (decided(best.score) || !timer.startIteration(last, prev)) {
+				break;
+			}
+
+			// Search the best move first in the next iteration
+			moveFirst(allMoves, best);
+		}
+
+		recordMove(reached, System.nanoTime() - began);
+		return best;
+	}
+
+	/**
+	 * Searches a position to a fixed depth, without a clock.  Iterations deepen one ply at a
+	 * time, as they do for deepen(), to warm the table and move ordering, but every one runs
+	 * to completion.  The search only stops short of the depth when the game is decided or
+	 * the stones on the board run out, where deeper iterations could not change the result.
+	 * The depth reached is in the move's counts, as for a timed search.
+	 *
+	 * @param state			: the position, which must have a move
+	 * @param depth			: the depth to search to
+	 * @return				: the best move, with its score
+	 */
+	public ScoredClobberMove searchDepth(ClobberState state, int depth) {
+		List<ScoredClobberMove> allMoves = new ArrayList<ScoredClobberMove>();
+		state.getMoves(allMoves);
+		long began = System.nanoTime();
+
+		workers.collect(moveStats);
+		moveStats.clear();
+		ordering.newSearch();
+
+		int plies = Math.min(depth, Long.bitCount(state.home | state.away) - 1);
+		ScoredClobberMove best = allMoves.get(0);
+		int reached = 0;
+
+		for (depthLimit = 1; depthLimit <= plies; depthLimit++) {
+			AlphaBetaTask root = new AlphaBetaTask(null, state, allMoves, 0, -winScore, winScore);
+
+			// Only searchRoot sets a deadline, so the iteration runs to completion
+			pool.invoke(root);
+
+			best = root.bestMove;
+			reached = depthLimit;
+
+			if (decided(best.score)) {
+				break;
+			}
+
+			moveFirst(allMoves, best);
+		}
+
+		recordMove(reached, System.nanoTime() - began);
+		return best;
+	}
+
+	/**
+	 * Gathers the counts of the move just searched from the pool's threads, and adds them to
+	 * the counts of the game.
+	 *
+	 * @param reached		: the depth of the deepest iteration completed
+	 * @param time			: the time the move took, in nanoseconds
+	 */
+	private void recordMove(int reached, long time) {
+		moveStats.clear();
+		workers.collect(moveStats);
+		moveStats.endMove(reached, time);
+		gameStats.add(moveStats);
+
+		if (report) {
+			System.out.println(name + " move: " + moveStats);
+		}
+	}
+
+	/**
+	 * Moves the specified move to the front of a list of moves, so that it is searched first.
+	 *
+	 * @param moves			: the moves of a position
+	 * @param best			: the move to search first
+	 */
+	private static void moveFirst(List<ScoredClobberMove> moves, ClobberMove best) {
+		for (int i = 0; i < moves.size(); i++) {
+			if (moves.get(i).sameAs(best)) {
+				moves.add(0, moves.remove(i));
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Takes the opponent's reply the last search expects from the transposition table, and
+	 * starts searching the position it leads to while the opponent thinks.  The search shares
+	 * the table, so even a wrong prediction leaves it warm.
+	 *
+	 * @param state			: the Clobber state the player moved from
+	 * @param mv			: the move the player sent
+	 */
+	public void startPondering(ClobberState state, GameMove mv) {
+		ClobberState predicted = (ClobberState)state.clone();
+		predicted.makeMove(mv);
+		long entry = (predicted.getStatus() == GameState.Status.GAME_ON ? table.probe(predicted.key) : 0);
+
+		if (entry == 0) {
+			return;
+		}
+
+		int from = TranspositionTable.from(entry);
+		int to = TranspositionTable.to(entry);
+		ClobberMove reply = new ClobberMove(ClobberState.row(from), ClobberState.col(from),
+				ClobberState.row(to), ClobberState.col(to));
+
+		// Only ponder a reply that is legal and leaves us a move to think about
+		if (!predicted.makeMove(reply) || predicted.getStatus() != GameState.Status.GAME_ON) {
+			return;
+		}
+
+		ponderState = predicted;
+		ponderKey = predicted.key;
+		ponderBest = null;
+		ponderLast = 0;
+		ponderPrev = 0;
+		ponderStop = false;
+
+		ponderThread = new Thread(new Runnable() {
+			public void run() {
+				ponder();
+			}
+		});
+		ponderThread.start();
+	}
+
+	/**
+	 * Stops the search of the predicted position and waits for it to unwind, keeping the
+	 * iterations it completed for deepen() in case the prediction was right.
+	 */
+	public void stopPondering() {
+		if (ponderThread == null) {
+			return;
+		}
+
+		ponderStop = true;
+		AlphaBetaTask root = ponderRoot;
+		if (root != null) {
+			root.stopped = true;
+		}
+
+		try {
+			ponderThread.join();
+		}
+		catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+
+		ponderThread = null;
+		ponderRoot = null;
+	}
+
+	/**
+	 * Deepens the search of the predicted position, without a time limit, until pondering is
+	 * stopped or the game is decided.
+	 */
+	private void ponder() {
+		List<ScoredClobberMove> allMoves = new ArrayList<ScoredClobberMove>();
+		ponderState.getMoves(allMoves);
+		int plies = Math.min(maxDepth, Long.bitCount(ponderState.home | ponderState.away) - 1);
+		ordering.newSearch();
+
+		for (int depth = 1; depth <= plies; depth++) {
+			long start = System.nanoTime();
+			AlphaBetaTask root = new AlphaBetaTask(null, ponderState, allMoves, 0, -winScore, winScore);
+			depthLimit = depth;
+			ponderRoot = root;
+
+			// A stop that came before this root was published would have missed it
+			if (ponderStop) {
+				break;
+			}
+
+			pool.invoke(root);
+
+			if (root.stopped) {
+				break;
+			}
+
+			ponderBest = root.bestMove;
+			ponderDepth = depth;
+			ponderPrev = ponderLast;
+			ponderLast = (System.nanoTime() - start) / 1e9;
+
+			if (decided(ponderBest.score)) {
+				break;
+			}
+
+			moveFirst(allMoves, ponderBest);
+		}
+	}
+
+	/**
+	 * Performs one iteration of the search by running the root node on the pool.
+	 *
+	 * @param state			: the current Clobber state
+	 * @param allMoves		: the moves that can be made from the state, best first
+	 * @return				: the best move, or null if the iteration ran out of time
+	 */
+	private ScoredClobberMove searchRoot(ClobberState state, List<ScoredClobberMove> allMoves) {
+		AlphaBetaTask root = new AlphaBetaTask(null, state, allMoves, 0, -winScore, winScore);
+
+		// The first iteration always completes, so that there is a move to play; the searching
+		// threads unwind later ones themselves once they see the move's deadline pass
+		outOfTime = false;
+		timed = (depthLimit > 1);
+		pool.invoke(root);
+		timed = false;
+		aborted = outOfTime;
+		outOfTime = false;
+
+		// A cut-short iteration still counts once it has finished the move searched first
+		return (root.complete || root.searched > 0 ? root.bestMove : null);
+	}
+
+	/**
+	 * Marks the search out of time once a timed search passes the move's deadline.
+	 */
+	private void checkClock() {
+		if (timed && !outOfTime && timer.pastDeadline()) {
+			outOfTime = true;
+		}
+	}
+
+	/**
+	 * Determines whether a score is that of a won or lost game rather than an evaluation.
+	 *
+	 * @param score		: the score, from home's side
+	 * @return			: true if the game is decided
+	 */
+	private boolean decided(double score) {
+		return Math.abs(score) > evalLimit;
+	}
+
+	/**
+	 * Converts a score found at a depth of the search to the one stored in the transposition
+	 * table, where a decided game counts its plies from the stored position rather than from
+	 * the root, so that the entry holds wherever in a search the position is met.
+	 *
+	 * @param score		: the score, with wins counted from the root
+	 * @param ply		: the depth of the position in the search
+	 * @return			: the score to store
+	 */
+	private double toTable(double score, int ply) {
+		return (score > evalLimit ? score + ply : score < -evalLimit ? score - ply : score);
+	}
+
+	/**
+	 * Converts a score stored in the transposition table back to one at a depth of the search.
+	 *
+	 * @param score		: the stored score, with wins counted from its position
+	 * @param ply		: the depth of the position in the search
+	 * @return			: the score, with wins counted from the root
+	 */
+	private double fromTable(double score, int ply) {
+		return (score > evalLimit ? score - ply : score < -evalLimit ? score + ply : score);
+	}
+
+	/**
+	 * Determines whether the specified Clobber state represents a completed game.  If the
+	 * game is complete, then the winning score, less the plies it took, is recorded in the
+	 * move based on which of the players won.
+	 *
+	 * @param state		: the Clobber state to evaluate
+	 * @param move		: receives the score
+	 * @param ply		: the depth of the state in the search
+	 * @return			: true if the board is terminal, false otherwise
+	 */
+	private boolean terminalValue(ClobberState state, ScoredClobberMove move, int ply) {
+		GameState.Status status = state.getStatus();
+
+		if (status == GameState.Status.HOME_WIN) {
+			move.score = winScore - ply;
+		}
+		else if (status == GameState.Status.AWAY_WIN) {
+			move.score = -(winScore - ply);
+		}
+		else {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Determines whether the specified Clobber state can be solved exactly by splitting it into
+	 * independent regions.  If it can, the winning score is recorded in the move and stored in
+	 * the transposition table as a proven result, so that the position is only solved once.
+	 * The solution does not say how long the game lasts, so the win is scored as if it took
+	 * every stone left on the board.
+	 *
+	 * @param state		: the Clobber state to solve, whose table entry has been probed
+	 * @param move		: receives the score
+	 * @param ply		: the depth of the state in the search
+	 * @return			: true if the state was solved, false otherwise
+	 */
+	private boolean solvedValue(ClobberState state, ScoredClobberMove move, int ply) {
+		GameState.Who winner = Regions.winner(state);
+
+		if (winner == null) {
+			return false;
+		}
+
+		double win = winScore - ply - Long.bitCount(state.home | state.away);
+		move.score = (winner == GameState.Who.HOME ? win : -win);
+		table.store(state.key, TranspositionTable.PROVEN, TranspositionTable.EXACT,
+				toTable(move.score, ply), 0, 0);
+		return true;
+	}
+
+	/**
+	 * Recursively performs an alpha-beta search to the depth of the current iteration, leaving
+	 * the best move and its score on the worker's move stack at the depth searched.
+	 *
+	 * @param task			: the node of the parallel search this search belongs to
+	 * @param worker		: the thread searching, whose stacks store the best move, hold the
+	 * 						  moves and take back the move tried at any depth
+	 * @param state			: the current Clobber state
+	 * @param currDepth		: the current depth of the recursive search
+	 * @param a				: alpha, the best maximum score
+	 * @param b				: beta, the best minimum score
+	 */
+	private void alphaBeta(AlphaBetaTask task, SearchWorker worker, ClobberState state,
+			int currDepth, double a, double b) {
+		ScoredClobberMove[] mvStack = worker.mvStack;
+		GameState.Undo[] undoStack = worker.undoStack;
+		SearchStats stats = worker.stats;
+
+		// Check the clock every so often; stopped() then unwinds the whole search
+		if ((++stats.nodes & (CHECK_NODES - 1)) == 0) {
+			checkClock();
+		}
+
+		boolean toMaximize = (state.getWho() == GameState.Who.HOME);
+
+		/** If the game is over, allow the score to propagate up **/
+		if (terminalValue(state, mvStack[currDepth], currDepth)) {
+			return;
+		}
+
+		/** If the depth limit is reached, use the evaluation function **/
+		else if (currDepth == depthLimit) {
+			mvStack[currDepth].score = Math.max(-evalLimit, Math.min(evalLimit, evaluator.evaluate(state)));
+			stats.evals++;
+		}
+
+		/** Otherwise continue alpha beta recursion **/
+		else {
+			int depthLeft = depthLimit - currDepth;
+
+			// Use a stored or solved result, except at the root which must always produce a move
+			long entry = table.probe(state.key);
+			if (currDepth > 0 && (probeTable(entry, depthLeft, currDepth, a, b, mvStack[currDepth], stats) ||
+					solvedValue(state, mvStack[currDepth], currDepth))) {
+				return;
+			}
+
+			double origA = a;
+			double origB = b;
+			double quickest = winScore - (currDepth + 1);	// A win on the next move cannot be bettered
+
+			ScoredClobberMove bestMove = mvStack[currDepth];
+			ScoredClobberMove nextMove = mvStack[currDepth + 1];
+
+			// Get possible moves and order them
+			List<ScoredClobberMove> moves = worker.moves(state, currDepth);
+			orderMoves(moves, toMaximize, entry, currDepth);
+
+			for (int i = 0; i < moves.size(); i++) {
+				// Make the move
+				ScoredClobberMove tempMove = moves.get(i);
+				state.makeMove(tempMove, undoStack[currDepth]);
+
+				// Recurse over the new state
+				alphaBeta(task, worker, state, currDepth + 1, a, b);
+
+				// Undo the previous move
+				state.unmakeMove(undoStack[currDepth]);
+
+				// Unwind without a result once the search no longer needs one
+				if (task.stopped()) {
+					return;
+				}
+
+				// Examine the move relative to what we have seen; the first move searched is taken
+				// whatever its score
+				if (i == 0 || (toMaximize && nextMove.score > bestMove.score) ||
+						(!toMaximize && nextMove.score < bestMove.score)) {
+					bestMove.set(tempMove, nextMove.score);
+				}
+
+				// Update alpha and beta, then perform pruning
+				if (!toMaximize) {
+					b = Math.min(bestMove.score, b);
+					if (bestMove.score <= a || bestMove.score <= -quickest) {
+						ordering.cutoff(bestMove, currDepth, depthLeft);
+						stats.cutoff(i);
+						break;
+					}
+				}
+				else {
+					a = Math.max(bestMove.score, a);
+					if (bestMove.score >= b || bestMove.score >= quickest) {
+						ordering.cutoff(bestMove, currDepth, depthLeft);
+						stats.cutoff(i);
+						break;
+					}
+				}
+			}
+
+			storeTable(state, depthLeft, currDepth, origA, origB, bestMove);
+		}
+	}
+
+	/**
+	 * Looks up a position in the transposition table.  A stored result is only used if it was
+	 * searched deeply enough to settle the position for the specified window.
+	 *
+	 * @param entry			: the entry the table holds for the position, or 0 if none
+	 * @param depthLeft		: the depth the position is to be searched to
+	 * @param ply			: the depth of the position in the search
+	 * @param a				: alpha, the best maximum score
+	 * @param b				: beta, the best minimum score
+	 * @param move			: receives the stored score
+	 * @param stats			: counts the lookup
+	 * @return				: true if the stored score can be used
+	 */
+	private boolean probeTable(long entry, int depthLeft, int ply, double a, double b,
+			ScoredClobberMove move, SearchStats stats) {
+		stats.probes++;
+		if (entry != 0 && TranspositionTable.depth(entry) >= depthLeft) {
+			double score = fromTable(TranspositionTable.score(entry), ply);
+			int bound = TranspositionTable.bound(entry);
+
+			if (bound == TranspositionTable.EXACT ||
+					(bound == TranspositionTable.LOWER && score >= b) ||
+					(bound == TranspositionTable.UPPER && score <= a)) {
+				move.score = score;
+				stats.hits++;
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Stores the result of searching a position, noting whether it only bounds the true score.
+	 *
+	 * @param state			: the Clobber state that was searched
+	 * @param depthLeft		: the depth the position was searched to
+	 * @param ply			: the depth of the position in the search
+	 * @param a				: alpha, as the search of the position began
+	 * @param b				: beta, as the search of the position began
+	 * @param bestMove		: the best move found and its score
+	 */
+	private void storeTable(ClobberState state, int depthLeft, int ply, double a, double b,
+			ScoredClobberMove bestMove) {
+		int bound = (bestMove.score <= a ? TranspositionTable.UPPER :
+				bestMove.score >= b ? TranspositionTable.LOWER : TranspositionTable.EXACT);
+
+		table.store(state.key, depthLeft, bound, toTable(bestMove.score, ply),
+				ClobberState.index(bestMove.row1, bestMove.col1),
+				ClobberState.index(bestMove.row2, bestMove.col2));
+	}
+
+	/**
+	 * Orders moves so that the most promising are searched first.  The stored move, the killer
+	 * moves and the moves with the best history come first.  With distance ordering, moves these
+	 * cannot tell apart are sorted by their distance score; any left are in random order.
+	 *
+	 * @param moves			: the moves to order
+	 * @param toMaximize	: whether home is to move
+	 * @param entry			: the entry the table holds for the position, or 0 if none
+	 * @param ply			: the depth of the position in the search
+	 */
+	private void orderMoves(List<ScoredClobberMove> moves, boolean toMaximize, long entry, int ply) {
+		// Randomness only breaks the ties left by the sorts below
+		Collections.shuffle(moves, ThreadLocalRandom.current());
+
+		if (distanceOrdering) {
+			for (int i = 0; i < moves.size(); i++) {
+				moves.get(i).calculateDistanceScore();
+			}
+
+			MoveOrdering.sort(moves, toMaximize ? NEAR_HOME : NEAR_AWAY);
+		}
+
+		ordering.order(moves, entry, ply);
+	}
+
+	/**
+	 * A node of the parallel search.  Following the Young Brothers Wait Concept, the first move
+	 * of a node is searched before its brothers, so that they start with the window it produced.
+	 * The brothers are then forked onto the pool, where idle workers steal them at any depth.
+	 * Nodes within SPLIT_DEPTH of the horizon are searched sequentially by alphaBeta.
+	 */
+	private class AlphaBetaTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private AlphaBetaTask parent;				// The node this one was forked from
+		private ClobberState state;					// The state of the board
+		private ScoredClobberMove move;				// For a young brother, the move to its board
+		private List<ScoredClobberMove> moves;		// The moves to search, in order
+		private AlphaBetaTask next;					// The next younger brother
+		private int currDepth;						// The depth of this node
+		private double a, b;						// The window this node is searched with
+		private boolean toMaximize;					// Whether home is to move
+		private volatile boolean stopped;			// Whether the result is no longer needed
+		private boolean complete;					// Whether bestMove is the node's full result
+		private int searched;						// Moves whose search has completed
+		public ScoredClobberMove bestMove;			// The best move and its score
+
+		/**
+		 * Constructs an instance of AlphaBetaTask.  The node owns the specified state until it
+		 * has been searched.
+		 *
+		 * @param parent		: the node this one was forked from, or null for the root
+		 * @param state			: the Clobber state of the node
+		 * @param moves			: the moves to search in order, or null to generate them
+		 * @param currDepth		: the depth of the node
+		 * @param a				: alpha, the best maximum score
+		 * @param b				: beta, the best minimum score
+		 */
+		public AlphaBetaTask(AlphaBetaTask parent, ClobberState state,
+				List<ScoredClobberMove> moves, int currDepth, double a, double b) {
+			this.parent = parent;
+			this.state = state;
+			this.moves = moves;
+			this.currDepth = currDepth;
+			this.a = a;
+			this.b = b;
+			this.bestMove = new ScoredClobberMove(0, 0, 0, 0, 0);
+		}
+
+		/**
+		 * Constructs a young brother, which is searched on a board of the thread that runs it.
+		 *
+		 * @param parent		: the node this one was forked from
+		 * @param move			: the move from the parent's board to this node
+		 * @param currDepth		: the depth of the node
+		 * @param a				: alpha, the best maximum score
+		 * @param b				: beta, the best minimum score
+		 */
+		public AlphaBetaTask(AlphaBetaTask parent, ScoredClobberMove move, int currDepth, double a, double b) {
+			this(parent, null, null, currDepth, a, b);
+			this.move = move;
+		}
+
+		/**
+		 * Determines whether this node, or any node above it, no longer needs a result.
+		 *
+		 * @return				: true if the search of this node should unwind
+		 */
+		public boolean stopped() {
+			if (outOfTime) return true;
+			for (AlphaBetaTask node = this; node != null; node = node.parent) {
+				if (node.stopped) return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Overrides the compute method from the parent RecursiveAction class.  This method
+		 * searches the node, leaving its best move and score in bestMove.
+		 */
+		protected void compute() {
+			SearchWorker worker = SearchWorker.current();
+			SearchWorker.Frame frame = worker.takeFrame();
+
+			// The parent waits for its brothers, so its board and moves stay put while they copy them
+			try {
+				if (move != null) {
+					state = frame.board();
+					state.copy(parent.state);
+					state.makeMove(move);
+				}
+
+				search(worker, frame);
+			}
+			finally {
+				worker.giveFrame();
+			}
+		}
+
+		/**
+		 * Searches the node on the thread running it.
+		 *
+		 * @param worker		: the thread, whose stacks the search near the horizon uses
+		 * @param frame			: the node's own moves and undo, taken from the thread
+		 */
+		private void search(SearchWorker worker, SearchWorker.Frame frame) {
+			int depthLeft = depthLimit - currDepth;
+			toMaximize = (state.getWho() == GameState.Who.HOME);
+
+			/** Close to the horizon, search sequentially **/
+			if (depthLeft < SPLIT_DEPTH) {
+				alphaBeta(this, worker, state, currDepth, a, b);
+				bestMove.set(worker.mvStack[currDepth], worker.mvStack[currDepth].score);
+				complete = !stopped();
+				return;
+			}
+
+			checkClock();
+			worker.stats.nodes++;
+
+			/** If the move is terminal, or its result is known, there is nothing to search **/
+			long entry = table.probe(state.key);
+			if (terminalValue(state, bestMove, currDepth) || (currDepth > 0 &&
+					(probeTable(entry, depthLeft, currDepth, a, b, bestMove, worker.stats) ||
+					solvedValue(state, bestMove, currDepth)))) {
+				complete = true;
+				return;
+			}
+
+			double origA = a;
+			double origB = b;
+
+			if (moves == null) {
+				moves = frame.generate(state);
+				orderMoves(moves, toMaximize, entry, currDepth);
+			}
+
+			/** Search the eldest brother first, on this node's own state **/
+			AlphaBetaTask eldest = new AlphaBetaTask(this, state, null, currDepth + 1, a, b);
+
+			state.makeMove(moves.get(0), frame.undo);
+			eldest.compute();
+			state.unmakeMove(frame.undo);
+
+			if (!eldest.complete) {
+				return;
+			}
+
+			boolean cutoff = improve(moves.get(0), eldest.bestMove.score);
+
+			if (cutoff) {
+				ordering.cutoff(bestMove, currDepth, depthLeft);
+				worker.stats.cutoff(0);
+			}
+
+			/** Then fork the young brothers with the window the eldest produced, chained in order **/
+			AlphaBetaTask first = null, last = null;
+
+			for (int i = 1; !cutoff && i < moves.size(); i++) {
+				AlphaBetaTask brother = new AlphaBetaTask(this, moves.get(i), currDepth + 1, a, b);
+				if (last == null) first = brother;
+				else last.next = brother;
+				last = brother;
+				brother.fork();
+			}
+
+			int i = 1;
+			for (AlphaBetaTask brother = first; brother != null; brother = brother.next, i++) {
+				brother.join();
+
+				// Only a brother that finished its search has a score to compare
+				if (cutoff || !brother.complete) {
+					continue;
+				}
+
+				cutoff = improve(brother.move, brother.bestMove.score);
+
+				// The remaining brothers cannot change the result, so stop them
+				if (cutoff) {
+					ordering.cutoff(bestMove, currDepth, depthLeft);
+					worker.stats.cutoff(i);
+
+					for (AlphaBetaTask younger = brother.next; younger != null; younger = younger.next) {
+						younger.stopped = true;
+					}
+				}
+			}
+
+			complete = !stopped();
+			if (complete) {
+				storeTable(state, depthLeft, currDepth, origA, origB, bestMove);
+			}
+		}
+
+		/**
+		 * Examines a searched move relative to what the node has seen, updating the best move
+		 * and the window.  The first move searched is taken whatever its score.
+		 *
+		 * @param move			: the move that was searched
+		 * @param score			: the score of the move
+		 * @return				: true if the remaining moves can be pruned
+		 */
+		private boolean improve(ScoredClobberMove move, double score) {
+			if (searched++ == 0 || (toMaximize && score > bestMove.score) ||
+					(!toMaximize && score < bestMove.score)) {
+				bestMove.set(move, score);
+			}
+
+			// A win on the next move cannot be bettered
+			double quickest = winScore - (currDepth + 1);
+
+			if (!toMaximize) {
+				b = Math.min(bestMove.score, b);
+				return bestMove.score <= a || bestMove.score <= -quickest;
+			}
+			else {
+				a = Math.max(bestMove.score, a);
+				return bestMove.score >= b || bestMove.score >= quickest;
+			}
+		}
+	}
+}
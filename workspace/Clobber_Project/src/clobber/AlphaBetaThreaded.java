@@ -1,6 +1,5 @@
 package clobber;
 import game.*;
-import game.GameState.Who;
 
 import java.util.*;
 import java.io.*;
@@ -9,30 +8,53 @@ import clobber.ScoredClobberMove;
 
 public class AlphaBetaThreaded extends GamePlayer {
 
-	public static final double MAX_SCORE 	= Double.POSITIVE_INFINITY;
+	public static final double MAX_SCORE 	= 1000000;	// A game won at once; the search takes off a point per ply
 	public static final int ROWS 			= ClobberState.ROWS;
 	public static final int COLS 			= ClobberState.COLS;
-	public static final int MAX_DEPTH 		= 3;
+	public static final int MAX_DEPTH 		= ROWS * COLS;
 	public static final int MAX_THREADS		= 8;
 	
-	private int depthLimit;
-	private int movesTaken = 0;
-	private int evalCutoff = 9;
+	private int maxDepth;
+	private int threadLimit;				// Threads searching each move
 	
-	private double gametime = 0;
+	private TimeManager timer = new TimeManager(ClobberState.gameParams);
 	private String[] messages = new String[0];
+	private AlphaBetaSearch search;			// The parallel search, started once for the tournament
+	private OpeningBook book;
+
+	/** The hand-written stone heuristic, which the pattern table is compiled from **/
+	static final StoneEvaluator HEURISTIC = new StoneEvaluator() {
+		public float score(ClobberState state, int row, int col) {
+			return evaluateStone(state, row, col);
+		}
+	};
+	
+	/** Scores stones for the running evaluation each searched state keeps **/
+	private static final StoneEvaluator STONES = PatternTable.load("ABTPATTERNS", HEURISTIC);
 	
 	
 	/**
-	 * Constructs an AlphaBetaPlayer object with the specified name and depth.
+	 * Constructs an AlphaBetaPlayer object with the specified name and maximum depth.
 	 * 
 	 * @param n			: the name of the player
-	 * @param depth		: the depth of the alpha beta search
+	 * @param depth		: the maximum depth of the alpha beta search
 	 */
 	public AlphaBetaThreaded(String n, int depth, String mesFileName) {
+		this(n, depth, MAX_THREADS, mesFileName);
+	}
+	
+	/**
+	 * Constructs an AlphaBetaPlayer object that searches with a set number of threads.
+	 * 
+	 * @param n			: the name of the player
+	 * @param depth		: the maximum depth of the alpha beta search
+	 * @param threads	: the number of threads searching each move
+	 */
+	public AlphaBetaThreaded(String n, int depth, int threads, String mesFileName) {
 		// Use the super-constructor and set the depth
 		super(n, new ClobberState(), false);
-		this.depthLimit = depth;
+		this.maxDepth = depth;
+		this.threadLimit = threads;
 		
 		try {
 			// Get the path of the reference messages file
@@ -59,7 +81,7 @@ public class AlphaBetaThreaded extends GamePlayer {
 	 * @param args		: command line arguments
 	 */
 	public static void main(String [] args) {
-		GamePlayer p = new AlphaBetaThreaded("ABT", MAX_DEPTH - 1, "messages");
+		GamePlayer p = new AlphaBetaThreaded("ABT", MAX_DEPTH, "messages");
 		p.compete(args, 1);
 	}
 	
@@ -73,19 +95,52 @@ public class AlphaBetaThreaded extends GamePlayer {
 		return message;
 	}
 	
+	public void startGame(String opponent) {
+		timer.startGame();
+		search.startGame();
+	}
+	
 	public void timeOfLastMove(double secs) { 
-		gametime += secs;
+		timer.endMove(secs);
 	}
 	
 	public void endGame(int result) { 
-		System.out.println("Game took: " + gametime);
+		search.endGame();
+	}
+	
+	/**
+	 * @return			: the counts of the last move's search
+	 */
+	public SearchStats getMoveStats() {
+		return search.getMoveStats();
+	}
+	
+	/**
+	 * @return			: the counts of the searches of the game so far
+	 */
+	public SearchStats getGameStats() {
+		return search.getGameStats();
 	}
 	
 	/**
 	 * Used to initialize data structures for the alpha beta search.
 	 */
 	public void init() {
-		
+		AlphaBetaSearch.Evaluator evaluator = new AlphaBetaSearch.Evaluator() {
+			public float evaluate(ClobberState state) {
+				return evaluateState(state);
+			}
+		};
+		search = new AlphaBetaSearch(nickname, threadLimit, maxDepth, evaluator, MAX_SCORE, false);
+		book = OpeningBook.load();
+		Regions.load();
+	}
+	
+	/**
+	 * Stops the search pool at the end of the tournament, and reports what it searched.
+	 */
+	public void done() {
+		search.shutdown();
 	}
 	
 	/**
@@ -99,175 +154,32 @@ public class AlphaBetaThreaded extends GamePlayer {
 		ClobberState board = (ClobberState) state;
 		
 		List<ScoredClobberMove> list = new ArrayList<ScoredClobberMove>();
-		ScoredClobberMove move = new ScoredClobberMove();
-		
-		for (int r = 0; r < ROWS; r++) {
-			for (int c = 0; c < COLS; c++) {
-				move.row1 = r;
-				move.col1 = c;
-				move.row2 = r-1;
-				move.col2 = c;
-				if (board.moveOK(move)) list.add((ScoredClobberMove)move.clone());
-				
-				move.row2 = r+1;
-				move.col2 = c;
-				if (board.moveOK(move)) list.add((ScoredClobberMove)move.clone());
-				
-				move.row2 = r;
-				move.col2 = c-1;
-				if (board.moveOK(move)) list.add((ScoredClobberMove)move.clone());
-				
-				move.row2 = r;
-				move.col2 = c+1;
-				if (board.moveOK(move)) list.add((ScoredClobberMove)move.clone());
-			}
-		}
+		board.getMoves(list);
 		
 		return list;
 	}
 	
-	/**
-	 * Determines whether a board represents a completed game.  If the board is
-	 * complete, then the evaluation value for the board is recorded based on
-	 * which players is moving.
-	 * 
-	 * @param brd	: clobber board to be considered
-	 * @param move	: the move associated with the board state
-	 * @return 		: true if the board is terminal
-	 */
-	protected boolean terminalValue(GameState board, ScoredClobberMove move) {
-		GameState.Status status = board.getStatus();
-		boolean isTerminal = true;
-		
-		if (status == GameState.Status.HOME_WIN) {
-			move.setScore(MAX_SCORE);
-		}
-		else if (status == GameState.Status.AWAY_WIN) {
-			move.setScore(-MAX_SCORE);
-		}
-		else {
-			isTerminal = false;
-		}
-		
-		return isTerminal;
-	}
-	
-	/**
-	 * Populates the list of best moves by performing a recursive alpha beta search.
-	 * 
-	 * @param state			: the board being considered
-	 * @param mvStack		: stores the best move at any depth
-	 * @param currDepth		: the current depth of the search
-	 * @param a				: alpha, the best maximum score
-	 * @param b				: beta, the best minimum score
-	 */
-	private void alphaBeta(ClobberState state, ScoredClobberMove[] mvStack, 
-			int currDepth, double a, double b) {
-		
-		boolean toMaximize = (state.getWho() == GameState.Who.HOME);
-		boolean isTerminal = terminalValue(state, mvStack[currDepth]);
-		
-		/** If the move is terminal, allow the score to propagate up **/
-		if (isTerminal) {
-			;
+	float evaluateState(ClobberState cs) {
+		// The state keeps the stone scores as running totals, updated by every move
+		if (cs.getEvaluator() != STONES) {
+			cs.setEvaluator(STONES);
 		}
+		float homeScore = cs.homeEval();
+		float awayScore = cs.awayEval();
 		
-		/** If the depth limit is reached, use the evaluation function **/
-		else if (movesTaken < evalCutoff && currDepth == depthLimit) {
-			mvStack[currDepth].setScore(evaluateState(state));
+		// Stones in regions of one colour can never move again
+		long dead = ~cs.liveStones();
+		for (long m = cs.home & dead; m != 0; m &= m - 1) {
+			homeScore -= cs.stoneScore(Long.numberOfTrailingZeros(m));
 		}
-		
-		/** Otherwise continue alpha beta recursion **/
-		else {
-			double bestScore = (toMaximize ? 
-					Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
-			
-			ScoredClobberMove bestMove = mvStack[currDepth];
-			ScoredClobberMove nextMove = mvStack[currDepth + 1];
-			
-			bestMove.setScore(bestScore);
-			
-			// Get possible moves and shuffle them
-			List<ScoredClobberMove> moves = getPossibleMoves(state);
-			Collections.shuffle(moves);
-			
-			for (int i = 0; i < moves.size(); i++) {
-				// Create and make move
-				ScoredClobberMove tempMove = new ScoredClobberMove(moves.get(i));
-				state.makeMove(tempMove);
-				
-				// Examine the move recursively
-				alphaBeta(state, mvStack, currDepth + 1, a, b);
-				
-				// Undo the move
-				undoMove(state, tempMove);
-				
-				// Examine the results relative to what we have seen
-				if (toMaximize && nextMove.score >= bestMove.score) {
-					bestMove.set(tempMove, nextMove.score);
-				}
-				else if (!toMaximize && nextMove.score <= bestMove.score) {
-					bestMove.set(tempMove, nextMove.score);
-				}
-				
-				// Update alpha and beta, perform pruning
-				if (!toMaximize) {
-					b = Math.min(bestMove.score, b);
-					if (bestMove.score <= a || bestMove.score == -MAX_SCORE) {
-						return;
-					}
-				}
-				else {
-					a = Math.max(bestMove.score, a);
-					if (bestMove.score >= b || bestMove.score == MAX_SCORE) {
-						return;
-					}
-				}
-			}
+		for (long m = cs.away & dead; m != 0; m &= m - 1) {
+			awayScore -= cs.stoneScore(Long.numberOfTrailingZeros(m));
 		}
-	}
-	
-	/**
-	 * Undoes the specified move by retrieving the original game status and swapping
-	 * pieces back to their original positions.
-	 * 
-	 * @param state		: the current state of the board
-	 * @param move		: the move to undo
-	 */
-	private void undoMove(ClobberState state, ScoredClobberMove move) {
-		// Ensure status and turn have not been modified
-		state.status = GameState.Status.GAME_ON;
-		state.who = (state.who == Who.HOME) ? Who.AWAY : Who.HOME;
-		state.numMoves--;
 		
-		// Undo the move
-		state.board[move.row1][move.col1] = 
-				(state.getWho() == GameState.Who.HOME ? 
-						ClobberState.homeSym : ClobberState.awaySym);
-		
-		state.board[move.row2][move.col2] = 
-				(state.getWho() == GameState.Who.HOME ? 
-						ClobberState.awaySym : ClobberState.homeSym);
-	}
-	
-	private float evaluateState(ClobberState cs) {
-		float homeScore = 0;
-		float awayScore = 0;
-		
-		for (int row = 0; row < ClobberState.ROWS; row++) {
-			for (int col = 0; col < ClobberState.COLS; col++) {
-				
-				// If the stone is a home symbol
-				if (cs.board[row][col] == ClobberState.homeSym) {
-					homeScore += evaluateStone(cs, row, col);
-				}
-				
-				// If the stone is an away symbol
-				else if (cs.board[row][col] == ClobberState.awaySym) {
-					awayScore += evaluateStone(cs, row, col);
-				}
-			}
-		}
+		// A side scoring less than a single stone counts as one, so that the ratio stays finite
+		// and keeps its sign when every stone of a side is dead or a table scores them below 1
+		homeScore = Math.max(homeScore, 1);
+		awayScore = Math.max(awayScore, 1);
 		
 		// Return the heuristic
 		if (homeScore > awayScore) {
@@ -276,150 +188,72 @@ public class AlphaBetaThreaded extends GamePlayer {
 		else return -awayScore / homeScore;
 	}
 	
-	private float evaluateStone(ClobberState cs, int row, int col) {
-		float score = 1;
-		char friend = cs.board[row][col];
+	private static float evaluateStone(ClobberState cs, int row, int col) {
+		int i = ClobberState.index(row, col);
+		long bit = 1L << i;
 		
-		// Check if the symbol is empty
-		if (friend == ClobberState.emptySym) {
-			return score;
+		// Check if the cell is empty
+		if (((cs.home | cs.away) & bit) == 0) {
+			return 1;
 		}
 		
-		char opponent = (friend == ClobberState.homeSym) ? ClobberState.awaySym : ClobberState.homeSym;
+		long friends = ((cs.home & bit) != 0) ? cs.home : cs.away;
+		long opponents = ((cs.home & bit) != 0) ? cs.away : cs.home;
 		
-		/** Check for opponent symbols that can take this stone **/
-		if (ClobberMove.posOK(row + 1, col) && cs.board[row + 1][col] == opponent) score++;
-		if (ClobberMove.posOK(row - 1, col) && cs.board[row - 1][col] == opponent) score++;
-		if (ClobberMove.posOK(row, col + 1) && cs.board[row][col + 1] == opponent) score++;
-		if (ClobberMove.posOK(row, col - 1) && cs.board[row][col - 1] == opponent) score++;
+		/** Count the opponent stones that can take this stone **/
+		float score = 1 + Long.bitCount(opponents & ClobberState.ADJACENT[i]);
 		
-		/** Check for friend symbols that can take opponent stones **/
-		if (ClobberMove.posOK(row + 1, col + 1) && cs.board[row + 1][col + 1] == friend)
-			if (cs.board[row + 1][col] == opponent || cs.board[row][col + 1] == opponent) score++;
-		if (ClobberMove.posOK(row + 1, col - 1) && cs.board[row + 1][col - 1] == friend)
-			if (cs.board[row + 1][col] == opponent || cs.board[row][col - 1] == opponent) score++;
-		if (ClobberMove.posOK(row - 1, col + 1) && cs.board[row - 1][col + 1] == friend)
-			if (cs.board[row - 1][col] == opponent || cs.board[row][col + 1] == opponent) score++;
-		if (ClobberMove.posOK(row - 1, col - 1) && cs.board[row - 1][col - 1] == friend)
-			if (cs.board[row - 1][col] == opponent || cs.board[row][col - 1] == opponent) score++;
+		/** Count the friend stones that can take an opponent stone next to this one **/
+		for (long m = friends & ClobberState.DIAGONAL[i]; m != 0; m &= m - 1) {
+			int d = Long.numberOfTrailingZeros(m);
+			if ((opponents & ClobberState.ADJACENT[i] & ClobberState.ADJACENT[d]) != 0) score++;
+		}
 		
 		// Return the total score
 		return score;
 	}
 	
 	/**
-	 * Calculates the next move to be performed by the alpha beta player
+	 * Calculates the next move to be performed by the alpha beta player, deepening the
+	 * search one ply at a time while the time manager expects the next iteration to fit.
 	 * 
 	 * @param state		: the current game board
 	 * @param lastMove	: the last move to be performed
 	 * @return			: the next move to be performed
 	 */
 	public GameMove getMove(GameState state, String lastMove) {
-		// Increase the number of moves taken
-		movesTaken = state.numMoves;
+		ClobberState board = (ClobberState)state;
 		
-		List<ScoredClobberMove> allMoves = getPossibleMoves((ClobberState)state);
+		// Score every stone once; moves made during the search rescore only the stones they touch
+		board.setEvaluator(STONES);
 		
-		int movesPerThread = Math.max(1, (int)Math.ceil(allMoves.size() / MAX_THREADS));
-		int numThreads = Math.min((int)Math.ceil(allMoves.size() / movesPerThread), MAX_THREADS);
-		AlphaBetaThread[] threads = new AlphaBetaThread[numThreads];
+		// Expect to move about once for every two of our stones that can still capture
+		timer.startMove(Long.bitCount(board.movable()) / 2 + 1);
 		
-		// Run each of the threads over the possible moves
-		for (int i = 0; i < threads.length; i++) {
-			if (i == threads.length - 1) {
-				threads[i] = new AlphaBetaThread((ClobberState)state,
-						allMoves.subList(i * movesPerThread, allMoves.size()));
-			}
-			else {
-				threads[i] = new AlphaBetaThread((ClobberState)state,
-						allMoves.subList(i * movesPerThread, (i + 1) * movesPerThread));
-			}
-			
-			threads[i].start();
+		// Play straight from the opening book when it holds the position
+		ScoredClobberMove booked = (book != null ? book.probe(board) : null);
+		if (booked != null) {
+			timer.stopMove();
+			return booked;
 		}
 		
-		// Wait for the threads to complete
-		for (int i = 0; i < threads.length; i++) {
-			try {
-				threads[i].join();
-			}
-			catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-		
-		ScoredClobberMove best = threads[0].bestMove;
-		
-		// Determine which move is best
-		for (int i = 1; i < threads.length; i++) {
-			ScoredClobberMove temp = threads[i].bestMove;
-			
-			if (state.who == GameState.Who.HOME && temp.score > best.score) best = temp;
-			else if (state.who == GameState.Who.AWAY && temp.score < best.score) best = temp;
-		}
+		ScoredClobberMove best = search.deepen(board, timer);
+		timer.stopMove();
 		
 		// Return the best move
 		return best;
 	}
 	
-	private class AlphaBetaThread extends Thread {
-		
-		private ClobberState state;					// The state of the board
-		private ScoredClobberMove[] mvStack;		// Stores the best move at any depth
-		private List<ScoredClobberMove> moves;		// The moves to evaluate
-		public ScoredClobberMove bestMove;			// The best move
-		
-		/**
-		 * Constructor for the AlphaBetaThread.
-		 * 
-		 * @param state		: the current state of the board
-		 * @param moves		: a list of possible moves
-		 */
-		public AlphaBetaThread(ClobberState state, List<ScoredClobberMove> moves) {
-			this.moves = moves;
-			this.bestMove = moves.get(0);
-			
-			this.mvStack = new ScoredClobberMove[31];
-			this.state = new ClobberState();
-			
-			// Initialize the move stack
-			for (int i=0; i < this.mvStack.length; i++) {
-				this.mvStack[i] = new ScoredClobberMove(0, 0, 0, 0, 0);
-			}
-			
-			// Copy the board state
-			for (int row = 0; row < AlphaBetaThreaded.ROWS; row++) {
-				for (int col = 0; col < AlphaBetaThreaded.COLS; col++) {
-					this.state.board[row][col] = state.board[row][col];
-				}
-			}
-			this.state.who = state.getWho();
-			this.state.status = state.getStatus();
-			this.state.numMoves = state.getNumMoves();
-		}
-		
-		public void run() {
-			for (int i = 0; i < moves.size(); i++) {
-				// Make the move
-				state.makeMove(moves.get(i));
-				
-				// Perform the recursive alpha beta search
-				AlphaBetaThreaded.this.alphaBeta(state, mvStack, 0,
-						Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
-				
-				// Undo the move
-				AlphaBetaThreaded.this.undoMove(state, moves.get(i));
-				
-				// Update the score of the original move
-				moves.get(i).score = mvStack[0].score;
-				
-				// Check if the move is better than the best move
-				if (i == 0) bestMove = new ScoredClobberMove(moves.get(0));
-				else if (this.state.who == GameState.Who.HOME && 
-						moves.get(i).score > bestMove.score) bestMove = new ScoredClobberMove(moves.get(i));
-				else if (this.state.who == GameState.Who.AWAY && 
-						moves.get(i).score < bestMove.score) bestMove = new ScoredClobberMove(moves.get(i));
-			}
-		}
+	/**
+	 * Searches a position to a fixed depth, whatever the clock says and without the opening
+	 * book, for measuring the search.
+	 * 
+	 * @param state		: the current game board
+	 * @param depth		: the depth to search to
+	 * @return			: the best move, with its score
+	 */
+	public ScoredClobberMove searchDepth(ClobberState state, int depth) {
+		state.setEvaluator(STONES);
+		return search.searchDepth(state, depth);
 	}
-}
\ No newline at end of file
+}
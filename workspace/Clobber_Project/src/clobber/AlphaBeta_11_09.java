@@ -65,29 +65,7 @@ public class AlphaBeta_11_09 extends GamePlayer {
 		ClobberState board = (ClobberState) state;
 		
 		ArrayList<ScoredClobberMove> list = new ArrayList<ScoredClobberMove>();
-		ScoredClobberMove move = new ScoredClobberMove();
-		
-		for (int r = 0; r < ClobberState.ROWS; r++) {
-			for (int c = 0; c < ClobberState.COLS; c++) {
-				move.row1 = r;
-				move.col1 = c;
-				move.row2 = r-1;
-				move.col2 = c;
-				if (board.moveOK(move)) list.add((ScoredClobberMove) move.clone());
-				
-				move.row2 = r+1;
-				move.col2 = c;
-				if (board.moveOK(move)) list.add((ScoredClobberMove) move.clone());
-				
-				move.row2 = r;
-				move.col2 = c-1;
-				if (board.moveOK(move)) list.add((ScoredClobberMove) move.clone());
-				
-				move.row2 = r;
-				move.col2 = c+1;
-				if (board.moveOK(move)) list.add((ScoredClobberMove) move.clone());
-			}
-		}
+		board.getMoves(list);
 		
 		return list;
 	}
@@ -101,7 +79,7 @@ public class AlphaBeta_11_09 extends GamePlayer {
 	 * @param b				: beta, the best minimum score
 	 */
 	private void alphaBeta(ClobberState board, ScoredClobberMove[] mvStack,
-			int currDepth, double a, double b) {
+			GameState.Undo[] undoStack, int currDepth, double a, double b) {
 		
 		boolean toMaximize = (board.getWho() == GameState.Who.HOME);
 		boolean isTerminal = terminalValue(board, mvStack[currDepth]);
@@ -118,7 +96,7 @@ public class AlphaBeta_11_09 extends GamePlayer {
 		
 		// Otherwise continue alpha beta recursion
 		else {
-			ScoredClobberMove tempMove = new ScoredClobberMove();
+			ScoredClobberMove tempMove;
 			
 			double bestScore = (toMaximize ? 
 					Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
@@ -127,7 +105,7 @@ public class AlphaBeta_11_09 extends GamePlayer {
 			ScoredClobberMove nextMove = mvStack[currDepth+1];
 			
 			bestMove.setScore(bestScore);
-			GameState.Who currTurn = board.getWho();
+			GameState.Undo undo = undoStack[currDepth];
 			
 			// Get possible moves and shuffle them
 			ArrayList<ScoredClobberMove> moves = getMoves(board);
@@ -135,25 +113,14 @@ public class AlphaBeta_11_09 extends GamePlayer {
 			
 			for (int i = 0; i < moves.size(); i++) {
 				// Create and make move
-				tempMove = new ScoredClobberMove(moves.get(i));
-				board.makeMove(tempMove);
+				tempMove = moves.get(i);
+				board.makeMove(tempMove, undo);
 				
 				// Examine the move recursively
-				alphaBeta(board, mvStack, currDepth + 1, a, b);
-				
-				// Ensure status and turn have not been modified
-				board.status = GameState.Status.GAME_ON;
-				board.who = currTurn;
-				board.numMoves--;
+				alphaBeta(board, mvStack, undoStack, currDepth + 1, a, b);
 				
 				// Undo the move
-				board.board[tempMove.row1][tempMove.col1] = 
-						(board.getWho() == GameState.Who.HOME ? 
-								ClobberState.homeSym : ClobberState.awaySym);
-				
-				board.board[tempMove.row2][tempMove.col2] = 
-						(board.getWho() == GameState.Who.HOME ? 
-								ClobberState.awaySym : ClobberState.homeSym);
+				board.unmakeMove(undo);
 				
 				// Examine the results, relative to what we have seen
 				if (toMaximize && nextMove.score >= bestMove.score) {
@@ -207,34 +174,25 @@ public class AlphaBeta_11_09 extends GamePlayer {
 	}
 	
 	private float evaluateStone(ClobberState cs, int row, int col) {
-		int score = 1;
-		char friend = cs.board[row][col];
+		int i = ClobberState.index(row, col);
+		long bit = 1L << i;
 		
-		// Check if the symbol is empty
-		if (friend == ClobberState.emptySym) {
-			return score;
+		// Check if the cell is empty
+		if (((cs.home | cs.away) & bit) == 0) {
+			return 1;
 		}
 		
-		char opponent = (friend == ClobberState.homeSym) ? ClobberState.awaySym : ClobberState.homeSym;
-		
-		/** Check for opponent symbols that can take this stone **/
-		if (ClobberMove.posOK(row + 1, col) && cs.board[row + 1][col] == opponent) score++;
-		if (ClobberMove.posOK(row - 1, col) && cs.board[row - 1][col] == opponent) score++;
-		if (ClobberMove.posOK(row, col + 1) && cs.board[row][col + 1] == opponent) score++;
-		if (ClobberMove.posOK(row, col - 1) && cs.board[row][col - 1] == opponent) score++;
-		
-		/** Check for friend symbols that can take opponent stones **/
-		if (ClobberMove.posOK(row + 1, col + 1) && cs.board[row + 1][col + 1] == friend)
-			if (cs.board[row + 1][col] == opponent || cs.board[row][col + 1] == opponent) score++;
+		long friends = ((cs.home & bit) != 0) ? cs.home : cs.away;
+		long opponents = ((cs.home & bit) != 0) ? cs.away : cs.home;
 		
-		if (ClobberMove.posOK(row + 1, col - 1) && cs.board[row + 1][col - 1] == friend)
-			if (cs.board[row + 1][col] == opponent || cs.board[row][col - 1] == opponent) score++;
+		/** Count the opponent stones that can take this stone **/
+		float score = 1 + Long.bitCount(opponents & ClobberState.ADJACENT[i]);
 		
-		if (ClobberMove.posOK(row - 1, col + 1) && cs.board[row - 1][col + 1] == friend)
-			if (cs.board[row - 1][col] == opponent || cs.board[row][col + 1] == opponent) score++;
-		
-		if (ClobberMove.posOK(row - 1, col - 1) && cs.board[row - 1][col - 1] == friend)
-			if (cs.board[row - 1][col] == opponent || cs.board[row][col - 1] == opponent) score++;
+		/** Count the friend stones that can take an opponent stone next to this one **/
+		for (long m = friends & ClobberState.DIAGONAL[i]; m != 0; m &= m - 1) {
+			int d = Long.numberOfTrailingZeros(m);
+			if ((opponents & ClobberState.ADJACENT[i] & ClobberState.ADJACENT[d]) != 0) score++;
+		}
 		
 		// Return the total score
 		return score;
@@ -292,6 +250,8 @@ public class AlphaBeta_11_09 extends GamePlayer {
 		
 		private ClobberState state;					// The state of the board
 		private ScoredClobberMove[] mvStack;		// Stores best move at any depth
+		private GameState.Undo[] undoStack;			// Takes back the move tried at any depth
+		private GameState.Undo rootUndo;			// Takes back the root move
 		private List<ScoredClobberMove> moves;		// The moves to evaluate
 		private int maxDepth;						// The maximum depth of the search
 		
@@ -302,49 +262,31 @@ public class AlphaBeta_11_09 extends GamePlayer {
 			this.mvStack = new ScoredClobberMove[AlphaBeta_11_09.MAX_DEPTH];
 			this.state = new ClobberState();
 			
+			this.undoStack = new GameState.Undo[AlphaBeta_11_09.MAX_DEPTH];
+			this.rootUndo = new GameState.Undo();
+			
 			// Instantiate stack to dummy values
 			for (int i=0; i < AlphaBeta_11_09.MAX_DEPTH; i++) {
 				this.mvStack[i] = new ScoredClobberMove(0, 0, 0, 0, 0);
+				this.undoStack[i] = new GameState.Undo();
 			}
 			
 			// Copy the board state
-			for (int row = 0; row < ClobberState.ROWS; row++) {
-				for (int col = 0; col < ClobberState.COLS; col++) {
-					this.state.board[row][col] = state.board[row][col];
-				}
-			}
-			
-			this.state.who = state.getWho();
-			this.state.status = state.getStatus();
-			this.state.numMoves = state.getNumMoves();
+			this.state.copy(state);
 		}
 		
 		public void run() {
 			
 			for (int i = 0; i < moves.size(); i++) {
-				// Record the current turn
-				GameState.Who currTurn = state.getWho();
-				
 				// Make the move
-				state.makeMove(moves.get(i));
+				state.makeMove(moves.get(i), rootUndo);
 				
 				// Perform the recursive alpha beta search
-				AlphaBeta_11_09.this.alphaBeta(state, mvStack, 0,
+				AlphaBeta_11_09.this.alphaBeta(state, mvStack, undoStack, 0,
 						Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
 				
-				// Ensure status and turn have not been modified
-				state.status = GameState.Status.GAME_ON;
-				state.who = currTurn;
-				state.numMoves--;
-				
 				// Undo the move
-				state.board[moves.get(i).row1][moves.get(i).col1] = 
-						(state.getWho() == GameState.Who.HOME ? 
-								ClobberState.homeSym : ClobberState.awaySym);
-				
-				state.board[moves.get(i).row2][moves.get(i).col2] = 
-						(state.getWho() == GameState.Who.HOME ? 
-								ClobberState.awaySym : ClobberState.homeSym);
+				state.unmakeMove(rootUndo);
 			}
 		}
 		
@@ -1,6 +1,5 @@
 package clobber;
 import game.*;
-import game.GameState.Who;
 
 import java.util.*;
 
@@ -18,8 +17,25 @@ public class AlphaBeta_11_10 extends GamePlayer {
 	
 	
 	private ScoredClobberMove[] mvStack;
+	private GameState.Undo[] undoStack;
 	private int depthLimit;
 	
+	private SearchStats moveStats = new SearchStats();	// What the last move's search did
+	private SearchStats gameStats = new SearchStats();	// Added up over the game
+	private SearchStats totalStats = new SearchStats();	// Added up over the tournament
+	private boolean report = ClobberState.gameParams.bool("SEARCHSTATS");	// Print each move's counts
+	private int reached;								// Deepest ply the move's search visited
+
+	/** The hand-written stone heuristic, which the pattern table is compiled from **/
+	private static final StoneEvaluator HEURISTIC = new StoneEvaluator() {
+		public float score(ClobberState state, int row, int col) {
+			return evaluateStone(state, row, col);
+		}
+	};
+	
+	/** Scores stones for the running evaluation each searched state keeps **/
+	private static final StoneEvaluator STONES = PatternTable.load("ABTPATTERNS", HEURISTIC);
+	
 	/**
 	 * Sort all moves in ascending based on their evaluation values
 	 */
@@ -81,21 +97,54 @@ public class AlphaBeta_11_10 extends GamePlayer {
 	public void startGame(String opponent)
 	{
 		moves_taken = 0;
+		gameStats.clear();
 	}
 	
 	/**
-	 * Used to initialize data structures for the alpha beta search.
+	 * Reports what the searches of the game did, and adds it to the tournament's counts.
+	 */
+	@Override
+	public void endGame(int result)
+	{
+		System.out.println(nickname + " game: " + gameStats);
+		totalStats.add(gameStats);
+	}
+	
+	/**
+	 * Reports what the searches of the tournament did, if any games were played.
+	 */
+	@Override
+	public void done()
+	{
+		if (totalStats.moves > 0) {
+			System.out.println(nickname + " tournament: " + totalStats);
+		}
+	}
+	
+	/**
+	 * @return			: the counts of the last move's search
+	 */
+	public SearchStats getMoveStats() {
+		return moveStats;
+	}
+	
+	/**
+	 * @return			: the counts of the searches of the game so far
+	 */
+	public SearchStats getGameStats() {
+		return gameStats;
+	}
+	
+	/**
+	 * Used to initialize data structures for the alpha beta search.  The stacks are sized
+	 * for the deepest search, to the end of the game, and kept for the whole tournament.
 	 */
 	public void init() {
-		mvStack = null;
-		if (moves_taken < cutoff)
-			mvStack = new ScoredClobberMove [MAX_DEPTH];
-		else
-			mvStack = new ScoredClobberMove[31 - cutoff]; //fifteen max moves
-		
-		
+		mvStack = new ScoredClobberMove[Math.max(MAX_DEPTH, ROWS * COLS + 1)];
+		undoStack = new GameState.Undo[mvStack.length];
 		for (int i = 0; i < mvStack.length; i++) {
 			mvStack[i] = new ScoredClobberMove(0, 0, 0, 0, 0);
+			undoStack[i] = new GameState.Undo();
 		}
 	}
 	
@@ -110,29 +159,7 @@ public class AlphaBeta_11_10 extends GamePlayer {
 		ClobberState board = (ClobberState) state;
 		
 		List<ScoredClobberMove> list = new ArrayList<ScoredClobberMove>();
-		ScoredClobberMove move = new ScoredClobberMove();
-		
-		for (int r = 0; r < ROWS; r++) {
-			for (int c = 0; c < COLS; c++) {
-				move.row1 = r;
-				move.col1 = c;
-				move.row2 = r-1;
-				move.col2 = c;
-				if (board.moveOK(move)) list.add((ScoredClobberMove)move.clone());
-				
-				move.row2 = r+1;
-				move.col2 = c;
-				if (board.moveOK(move)) list.add((ScoredClobberMove)move.clone());
-				
-				move.row2 = r;
-				move.col2 = c-1;
-				if (board.moveOK(move)) list.add((ScoredClobberMove)move.clone());
-				
-				move.row2 = r;
-				move.col2 = c+1;
-				if (board.moveOK(move)) list.add((ScoredClobberMove)move.clone());
-			}
-		}
+		board.getMoves(list);
 		
 		return list;
 	}
@@ -168,12 +195,16 @@ public class AlphaBeta_11_10 extends GamePlayer {
 	 * 
 	 * @param state			: the board being considered
 	 * @param mvStack		: stores the best move at any depth
+	 * @param undoStack		: takes back the move tried at any depth
 	 * @param currDepth		: the current depth of the search
 	 * @param a				: alpha, the best maximum score
 	 * @param b				: beta, the best minimum score
 	 */
-	private void alphaBeta(ClobberState state, ScoredClobberMove[] mvStack, 
-			int currDepth, double a, double b) {
+	private void alphaBeta(ClobberState state, ScoredClobberMove[] mvStack,
+			GameState.Undo[] undoStack, int currDepth, double a, double b) {
+		
+		moveStats.nodes++;
+		reached = Math.max(reached, currDepth);
 		
 		boolean toMaximize = (state.getWho() == GameState.Who.HOME);
 		boolean isTerminal = terminalValue(state, mvStack[currDepth]);
@@ -185,6 +216,7 @@ public class AlphaBeta_11_10 extends GamePlayer {
 		
 		/** If the depth limit is reached, use the evaluation function **/
 		else if (moves_taken < cutoff && currDepth == depthLimit) {
+			moveStats.evals++;
 			mvStack[currDepth].setScore(evaluateState(state));
 			//mvStack[currDepth].setScore(0);
 		}
@@ -213,13 +245,13 @@ public class AlphaBeta_11_10 extends GamePlayer {
 			for (int i = 0; i < moves.size(); i++) {
 				// Create and make move
 				ScoredClobberMove tempMove = new ScoredClobberMove(moves.get(i));
-				state.makeMove(tempMove);
+				state.makeMove(tempMove, undoStack[currDepth]);
 				
 				// Examine the move recursively
-				alphaBeta(state, mvStack, currDepth + 1, a, b);
+				alphaBeta(state, mvStack, undoStack, currDepth + 1, a, b);
 				
 				// Undo the move
-				undoMove(state, tempMove);
+				state.unmakeMove(undoStack[currDepth]);
 				
 				// Examine the results relative to what we have seen
 				if (toMaximize && nextMove.score >= bestMove.score) {
@@ -233,12 +265,14 @@ public class AlphaBeta_11_10 extends GamePlayer {
 				if (!toMaximize) {
 					b = Math.min(bestMove.score, b);
 					if (bestMove.score <= a || bestMove.score == -MAX_SCORE) {
+						moveStats.cutoff(i);
 						return;
 					}
 				}
 				else {
 					a = Math.max(bestMove.score, a);
 					if (bestMove.score >= b || bestMove.score == MAX_SCORE) {
+						moveStats.cutoff(i);
 						return;
 					}
 				}
@@ -246,47 +280,18 @@ public class AlphaBeta_11_10 extends GamePlayer {
 		}
 	}
 	
-	/**
-	 * Undoes the specified move by retrieving the original game status and swapping
-	 * pieces back to their original positions.
-	 * 
-	 * @param state		: the current state of the board
-	 * @param move		: the move to undo
-	 */
-	private void undoMove(ClobberState state, ScoredClobberMove move) {
-		// Ensure status and turn have not been modified
-		state.status = GameState.Status.GAME_ON;
-		state.who = (state.who == Who.HOME) ? Who.AWAY : Who.HOME;
-		state.numMoves--;
-		
-		// Undo the move
-		state.board[move.row1][move.col1] = 
-				(state.getWho() == GameState.Who.HOME ? 
-						ClobberState.homeSym : ClobberState.awaySym);
-		
-		state.board[move.row2][move.col2] = 
-				(state.getWho() == GameState.Who.HOME ? 
-						ClobberState.awaySym : ClobberState.homeSym);
-	}
-	
-	private float evaluateState(ClobberState cs) {
-		float homeScore = 0;
-		float awayScore = 0;
-		
-		for (int row = 0; row < ClobberState.ROWS; row++) {
-			for (int col = 0; col < ClobberState.COLS; col++) {
-				
-				// If the stone is a home symbol
-				if (cs.board[row][col] == ClobberState.homeSym) {
-					homeScore += evaluateStone(cs, row, col);
-				}
-				
-				// If the stone is an away symbol
-				else if (cs.board[row][col] == ClobberState.awaySym) {
-					awayScore += evaluateStone(cs, row, col);
-				}
-			}
+	float evaluateState(ClobberState cs) {
+		// The state keeps the stone scores as running totals, updated by every move
+		if (cs.getEvaluator() != STONES) {
+			cs.setEvaluator(STONES);
 		}
+		float homeScore = cs.homeEval();
+		float awayScore = cs.awayEval();
+		
+		// A side scoring less than a single stone counts as one, so that the ratio stays finite
+		// and keeps its sign when every stone of a side is dead or a table scores them below 1
+		homeScore = Math.max(homeScore, 1);
+		awayScore = Math.max(awayScore, 1);
 		
 		// Return the heuristic
 		if (homeScore > awayScore) {
@@ -295,35 +300,26 @@ public class AlphaBeta_11_10 extends GamePlayer {
 		else return -awayScore / homeScore;
 	}
 	
-	private float evaluateStone(ClobberState cs, int row, int col) {
-		float score = 1;
-		char friend = cs.board[row][col];
+	private static float evaluateStone(ClobberState cs, int row, int col) {
+		int i = ClobberState.index(row, col);
+		long bit = 1L << i;
 		
-		// Check if the symbol is empty
-		if (friend == ClobberState.emptySym) {
-			return score;
+		// Check if the cell is empty
+		if (((cs.home | cs.away) & bit) == 0) {
+			return 1;
 		}
 		
-		char opponent = (friend == ClobberState.homeSym) ? ClobberState.awaySym : ClobberState.homeSym;
-		
-		/** Check for opponent symbols that can take this stone **/
-		if (ClobberMove.posOK(row + 1, col) && cs.board[row + 1][col] == opponent) score++;
-		if (ClobberMove.posOK(row - 1, col) && cs.board[row - 1][col] == opponent) score++;
-		if (ClobberMove.posOK(row, col + 1) && cs.board[row][col + 1] == opponent) score++;
-		if (ClobberMove.posOK(row, col - 1) && cs.board[row][col - 1] == opponent) score++;
-		
-		/** Check for friend symbols that can take opponent stones **/
-		if (ClobberMove.posOK(row + 1, col + 1) && cs.board[row + 1][col + 1] == friend)
-			if (cs.board[row + 1][col] == opponent || cs.board[row][col + 1] == opponent) score++;
-		
-		if (ClobberMove.posOK(row + 1, col - 1) && cs.board[row + 1][col - 1] == friend)
-			if (cs.board[row + 1][col] == opponent || cs.board[row][col - 1] == opponent) score++;
+		long friends = ((cs.home & bit) != 0) ? cs.home : cs.away;
+		long opponents = ((cs.home & bit) != 0) ? cs.away : cs.home;
 		
-		if (ClobberMove.posOK(row - 1, col + 1) && cs.board[row - 1][col + 1] == friend)
-			if (cs.board[row - 1][col] == opponent || cs.board[row][col + 1] == opponent) score++;
+		/** Count the opponent stones that can take this stone **/
+		float score = 1 + Long.bitCount(opponents & ClobberState.ADJACENT[i]);
 		
-		if (ClobberMove.posOK(row - 1, col - 1) && cs.board[row - 1][col - 1] == friend)
-			if (cs.board[row - 1][col] == opponent || cs.board[row][col - 1] == opponent) score++;
+		/** Count the friend stones that can take an opponent stone next to this one **/
+		for (long m = friends & ClobberState.DIAGONAL[i]; m != 0; m &= m - 1) {
+			int d = Long.numberOfTrailingZeros(m);
+			if ((opponents & ClobberState.ADJACENT[i] & ClobberState.ADJACENT[d]) != 0) score++;
+		}
 		
 		// Return the total score
 		return score;
@@ -338,12 +334,20 @@ public class AlphaBeta_11_10 extends GamePlayer {
 	 */
 	public GameMove getMove(GameState state, String lastMove) {
 		moves_taken++;
-		init();
+		long began = System.nanoTime();
+		moveStats.clear();
+		reached = 0;
+		
+		alphaBeta((ClobberState)state, mvStack, undoStack, 0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
 		
-		alphaBeta((ClobberState)state, mvStack, 0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		moveStats.endMove(reached, System.nanoTime() - began);
+		gameStats.add(moveStats);
+		if (report) {
+			System.out.println(nickname + " move: " + moveStats);
+		}
 
 		
-		return mvStack[0];
+		return new ScoredClobberMove(mvStack[0]);
 		
 		/*
 		List<ScoredClobberMove> allMoves = getPossibleMoves((ClobberState)state);
@@ -394,6 +398,8 @@ public class AlphaBeta_11_10 extends GamePlayer {
 		
 		private ClobberState state;					// The state of the board
 		private ScoredClobberMove[] mvStack;		// Stores the best move at any depth
+		private GameState.Undo[] undoStack;		// Takes back the move tried at any depth
+		private GameState.Undo rootUndo;		// Takes back the root move
 		private List<ScoredClobberMove> moves;		// The moves to evaluate
 		public ScoredClobberMove bestMove;			// The best move
 		
@@ -410,34 +416,30 @@ public class AlphaBeta_11_10 extends GamePlayer {
 			this.mvStack = new ScoredClobberMove[AlphaBeta_11_10.MAX_DEPTH];
 			this.state = new ClobberState();
 			
+			this.undoStack = new GameState.Undo[this.mvStack.length];
+			this.rootUndo = new GameState.Undo();
+			
 			// Initialize the move stack
 			for (int i=0; i < AlphaBeta_11_10.MAX_DEPTH; i++) {
 				this.mvStack[i] = new ScoredClobberMove(0, 0, 0, 0, 0);
+				this.undoStack[i] = new GameState.Undo();
 			}
 			
 			// Copy the board state
-			for (int row = 0; row < AlphaBeta_11_10.ROWS; row++) {
-				for (int col = 0; col < AlphaBeta_11_10.COLS; col++) {
-					this.state.board[row][col] = state.board[row][col];
-				}
-			}
-			
-			this.state.who = state.getWho();
-			this.state.status = state.getStatus();
-			this.state.numMoves = state.getNumMoves();
+			this.state.copy(state);
 		}
 		
 		public void run() {
 			for (int i = 0; i < moves.size(); i++) {
 				// Make the move
-				state.makeMove(moves.get(i));
+				state.makeMove(moves.get(i), rootUndo);
 				
 				// Perform the recursive alpha beta search
-				AlphaBeta_11_10.this.alphaBeta(state, mvStack, 0,
+				AlphaBeta_11_10.this.alphaBeta(state, mvStack, undoStack, 0,
 						Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
 				
 				// Undo the move
-				AlphaBeta_11_10.this.undoMove(state, moves.get(i));
+				state.unmakeMove(rootUndo);
 				
 				// Update the score of the original move
 				moves.get(i).score = mvStack[0].score;
@@ -0,0 +1,460 @@
+package clobber;
+
+import java.io.*;
+import java.util.*;
+
+import game.GamePlayer;
+import game.GameState;
+
+/**
+ * Times the hot paths of the Clobber players over a corpus of real positions, so that a change
+ * to any of them can be measured before and after.  The positions are read from the position
+ * corpus, or straight from the game records in Dumps if it has not been built, or from games
+ * of random moves if there are no records; a seed picks which of them are used.
+ *
+ * Each iteration of a benchmark makes passes over the corpus until it has run for at least
+ * ITERATION_TIME, so that even a fast operation runs often enough to be timed well.  A few
+ * iterations are run first to let the JIT compile the code, then the measured iterations are
+ * timed and reported as the mean and standard deviation of the time per operation.  Results
+ * are folded into a sink so that no work can be optimized away.  Running this class:
+ * 		Benchmark [filter] [positions] [seed] [depth] [threads]
+ * runs the benchmarks whose names contain the filter ("all" runs every one).  The threaded
+ * players search with the given number of threads, by default one per logical processor.
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class Benchmark {
+
+	public static final int DEFAULT_POSITIONS = 2000;			// Positions in the corpus by default
+	public static final int DEFAULT_SEED = 1;					// Seed picking them by default
+	public static final int DEFAULT_DEPTH = 4;					// Depth of the searches by default
+	public static final int SEARCHES = 50;						// Positions each search benchmark uses
+	public static final int WARMUP = 5;							// Iterations before timing
+	public static final int ITERATIONS = 10;					// Iterations timed
+	public static final long ITERATION_TIME = 500;				// Least milliseconds an iteration runs
+
+	private static long sink;									// Receives every result
+
+	/**
+	 * A player's search of a position to a fixed depth.
+	 */
+	private interface Search {
+		ScoredClobberMove search(ClobberState state, int depth);
+	}
+
+	/**
+	 * A benchmark of one operation.
+	 */
+	private abstract static class Case {
+
+		final String name;
+
+		Case(String name) {
+			this.name = name;
+		}
+
+		/** Prepares a pass; not timed **/
+		void setUp() {
+		}
+
+		/**
+		 * Runs the operation over the corpus once.
+		 *
+		 * @return			: the number of operations run
+		 */
+		abstract long run();
+
+		/** Cleans up after a pass; not timed **/
+		void tearDown() {
+		}
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args		: the filter, the number of positions, the seed, the search depth and
+	 * 					  the number of search threads; all optional
+	 */
+	public static void main(String[] args) {
+		String filter = (args.length > 0 && !args[0].equals("all") ? args[0] : "");
+		int count = (args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_POSITIONS);
+		long seed = (args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED);
+		int depth = (args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_DEPTH);
+		int threads = (args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors());
+
+		List<ClobberState> corpus = corpus(new File(GameDump.DEFAULT_DIR), count, seed);
+		System.out.printf("%d positions, seed %d, search depth %d, %d threads%n",
+				corpus.size(), seed, depth, threads);
+
+		for (Case c : cases(corpus, depth, threads)) {
+			if (c.name.contains(filter)) {
+				measure(c);
+			}
+		}
+	}
+
+	/**
+	 * Picks the positions to run over: distinct positions from real games where the game is
+	 * still on, shuffled by the seed.
+	 *
+	 * @param dir		: the directory of game records
+	 * @param count		: the number of positions to pick
+	 * @param seed		: the seed picking them
+	 * @return			: the positions
+	 */
+	public static List<ClobberState> corpus(File dir, int count, long seed) {
+		Map<Long, ClobberState> found = new LinkedHashMap<Long, ClobberState>();
+		Random random = new Random(seed);
+		List<PositionCorpus.Entry> entries = PositionCorpus.load();
+
+		if (entries != null) {
+			for (PositionCorpus.Entry entry : entries) {
+				found.put(entry.state.key, entry.state);
+			}
+		}
+		else for (File file : GameDump.find(dir)) {
+			try {
+				for (ClobberState state : GameDump.positions(file)) {
+					if (state.getStatus() == GameState.Status.GAME_ON && !found.containsKey(state.key)) {
+						found.put(state.key, state);
+					}
+				}
+			}
+			catch (IOException e) {
+				System.err.println("Could not read game record " + file);
+				e.printStackTrace();
+			}
+		}
+
+		// Without records, play random games instead
+		if (found.isEmpty()) {
+			System.err.println("No game records in " + dir + "; random games will be used");
+			List<ScoredClobberMove> moves = new ArrayList<ScoredClobberMove>();
+
+			while (found.size() < count) {
+				ClobberState state = new ClobberState();
+
+				while (state.getStatus() == GameState.Status.GAME_ON) {
+					found.put(state.key, (ClobberState)state.clone());
+					moves.clear();
+					state.getMoves(moves);
+					state.makeMove(moves.get(random.nextInt(moves.size())));
+				}
+			}
+		}
+
+		List<ClobberState> positions = new ArrayList<ClobberState>(found.values());
+		Collections.shuffle(positions, random);
+
+		return new ArrayList<ClobberState>(positions.subList(0, Math.min(count, positions.size())));
+	}
+
+	/**
+	 * Runs a benchmark's warm-up and timed iterations, and prints its time per operation.
+	 */
+	private static void measure(Case c) {
+		for (int i = 0; i < WARMUP; i++) {
+			iterate(c, null);
+		}
+
+		double[] times = new double[ITERATIONS];
+		long[] ops = new long[1];
+
+		for (int i = 0; i < ITERATIONS; i++) {
+			times[i] = iterate(c, ops);
+		}
+
+		double mean = 0;
+		for (double t : times) {
+			mean += t / ITERATIONS;
+		}
+		double variance = 0;
+		for (double t : times) {
+			variance += (t - mean) * (t - mean) / (ITERATIONS - 1);
+		}
+
+		System.out.printf("%-36s %12.1f ns/op  +- %8.1f  (%d ops)%n", c.name, mean, Math.sqrt(variance), ops[0]);
+	}
+
+	/**
+	 * Runs one iteration of a benchmark: passes over the corpus until ITERATION_TIME has been
+	 * spent in them.  Only the passes are timed, not their setUp and tearDown.
+	 *
+	 * @param c			: the benchmark
+	 * @param ops		: receives the number of operations run, if not null
+	 * @return			: the time per operation, in nanoseconds
+	 */
+	private static double iterate(Case c, long[] ops) {
+		long time = 0;
+		long count = 0;
+
+		do {
+			c.setUp();
+			long start = System.nanoTime();
+			count += c.run();
+			time += System.nanoTime() - start;
+			c.tearDown();
+		} while (time < ITERATION_TIME * 1000000);
+
+		if (ops != null) {
+			ops[0] = count;
+		}
+		return (double)time / count;
+	}
+
+	/**
+	 * Makes every benchmark.
+	 */
+	private static List<Case> cases(final List<ClobberState> corpus, final int depth, int threads) {
+		List<Case> cases = new ArrayList<Case>();
+
+		// The legal moves, and every move on the board a stone of the side to move could try,
+		// of each position
+		final List<List<ScoredClobberMove>> legal = new ArrayList<List<ScoredClobberMove>>();
+		final List<List<ClobberMove>> tried = new ArrayList<List<ClobberMove>>();
+
+		for (ClobberState state : corpus) {
+			List<ScoredClobberMove> moves = new ArrayList<ScoredClobberMove>();
+			state.getMoves(moves);
+			legal.add(moves);
+
+			List<ClobberMove> all = new ArrayList<ClobberMove>();
+			long mine = (state.getWho() == GameState.Who.HOME ? state.home : state.away);
+			for (long m = mine; m != 0; m &= m - 1) {
+				int i = Long.numberOfTrailingZeros(m);
+				int r = ClobberState.row(i), c = ClobberState.col(i);
+				for (int d = 0; d < 4; d++) {
+					int r2 = r + (d == 0 ? 1 : d == 1 ? -1 : 0);
+					int c2 = c + (d == 2 ? 1 : d == 3 ? -1 : 0);
+					if (ClobberMove.posOK(r2, c2)) {
+						all.add(new ClobberMove(r, c, r2, c2));
+					}
+				}
+			}
+			tried.add(all);
+		}
+
+		/** ClobberState **/
+		cases.add(new Case("ClobberState.makeMove") {
+			List<ClobberState> states = copies(corpus, null);
+			GameState.Undo undo = new GameState.Undo();
+
+			long run() {
+				long ops = 0;
+				for (int p = 0; p < states.size(); p++) {
+					ClobberState state = states.get(p);
+					for (ScoredClobberMove move : legal.get(p)) {
+						state.makeMove(move, undo);
+						sink += state.key;
+						state.unmakeMove(undo);
+						ops++;
+					}
+				}
+				return ops;
+			}
+		});
+
+		cases.add(new Case("ClobberState.makeMove+eval") {
+			List<ClobberState> states = copies(corpus, PatternTable.compile(ShillPlayer.HEURISTIC));
+			GameState.Undo undo = new GameState.Undo();
+
+			long run() {
+				long ops = 0;
+				for (int p = 0; p < states.size(); p++) {
+					ClobberState state = states.get(p);
+					for (ScoredClobberMove move : legal.get(p)) {
+						state.makeMove(move, undo);
+						sink += (long)state.homeEval();
+						state.unmakeMove(undo);
+						ops++;
+					}
+				}
+				return ops;
+			}
+		});
+
+		cases.add(new Case("ClobberState.moveOK") {
+			long run() {
+				long ops = 0;
+				for (int p = 0; p < corpus.size(); p++) {
+					ClobberState state = corpus.get(p);
+					for (ClobberMove move : tried.get(p)) {
+						sink += (state.moveOK(move) ? 1 : 0);
+						ops++;
+					}
+				}
+				return ops;
+			}
+		});
+
+		cases.add(new Case("ClobberState.getMoves") {
+			List<ScoredClobberMove> moves = new ArrayList<ScoredClobberMove>();
+
+			long run() {
+				for (ClobberState state : corpus) {
+					moves.clear();
+					state.getMoves(moves);
+					sink += moves.size();
+				}
+				return corpus.size();
+			}
+		});
+
+		/** The players **/
+		final AlphaBetaPlayer ab = new AlphaBetaPlayer("AB", depth, 1);
+		final AlphaBetaThreaded abt = new AlphaBetaThreaded("ABT", depth, threads, "messages");
+		final ShillPlayer shill = new ShillPlayer("Shill", depth, threads, "shill_library.txt", false);
+		final AlphaBeta_11_10 ab1110 = new AlphaBeta_11_10("AB_11_10", depth);
+
+		cases.add(new Case("AlphaBetaPlayer.getMoves") {
+			long run() {
+				for (ClobberState state : corpus) {
+					sink += ab.getMoves(state).size();
+				}
+				return corpus.size();
+			}
+		});
+
+		cases.add(new Case("AlphaBetaThreaded.getPossibleMoves") {
+			long run() {
+				for (ClobberState state : corpus) {
+					sink += abt.getPossibleMoves(state).size();
+				}
+				return corpus.size();
+			}
+		});
+
+		cases.add(new Case("ShillPlayer.getPossibleMoves") {
+			long run() {
+				for (ClobberState state : corpus) {
+					sink += shill.getPossibleMoves(state).size();
+				}
+				return corpus.size();
+			}
+		});
+
+		cases.add(new Case("AlphaBeta_11_10.getPossibleMoves") {
+			long run() {
+				for (ClobberState state : corpus) {
+					sink += ab1110.getPossibleMoves(state).size();
+				}
+				return corpus.size();
+			}
+		});
+
+		// Each player attaches its own evaluator to the states it scores, so each gets copies
+		cases.add(new Case("AlphaBetaPlayer.evaluateState") {
+			List<ClobberState> states = copies(corpus, null);
+
+			long run() {
+				for (ClobberState state : states) {
+					sink += ab.eval(state);
+				}
+				return states.size();
+			}
+		});
+
+		cases.add(new Case("AlphaBetaThreaded.evaluateState") {
+			List<ClobberState> states = copies(corpus, null);
+
+			long run() {
+				for (ClobberState state : states) {
+					sink += (long)abt.evaluateState(state);
+				}
+				return states.size();
+			}
+		});
+
+		cases.add(new Case("ShillPlayer.evaluateState") {
+			List<ClobberState> states = copies(corpus, null);
+
+			long run() {
+				for (ClobberState state : states) {
+					sink += (long)shill.evaluateState(state);
+				}
+				return states.size();
+			}
+		});
+
+		cases.add(new Case("AlphaBeta_11_10.evaluateState") {
+			List<ClobberState> states = copies(corpus, null);
+
+			long run() {
+				for (ClobberState state : states) {
+					sink += (long)ab1110.evaluateState(state);
+				}
+				return states.size();
+			}
+		});
+
+		cases.add(search("AlphaBetaPlayer.searchDepth", ab, corpus, depth, new Search() {
+			public ScoredClobberMove search(ClobberState state, int depth) {
+				return ab.searchDepth(state, depth);
+			}
+		}));
+		cases.add(search("AlphaBetaThreaded.searchDepth", abt, corpus, depth, new Search() {
+			public ScoredClobberMove search(ClobberState state, int depth) {
+				return abt.searchDepth(state, depth);
+			}
+		}));
+		cases.add(search("ShillPlayer.searchDepth", shill, corpus, depth, new Search() {
+			public ScoredClobberMove search(ClobberState state, int depth) {
+				return shill.searchDepth(state, depth);
+			}
+		}));
+
+		// AlphaBeta_11_10 has no clock and always searches to the depth it was made with, but
+		// solves to the end after its first moves, so every position starts a game
+		cases.add(search("AlphaBeta_11_10.getMove", ab1110, corpus, depth, new Search() {
+			public ScoredClobberMove search(ClobberState state, int depth) {
+				ab1110.startGame("Benchmark");
+				return (ScoredClobberMove)ab1110.getMove(state, "");
+			}
+		}));
+
+		return cases;
+	}
+
+	/**
+	 * Makes a benchmark of a player's search to a fixed depth.  The searches are untimed and
+	 * never play from the opening book, so every position is searched to the full depth.
+	 * Every pass starts the player afresh, so that no pass reuses what an earlier one stored.
+	 */
+	private static Case search(String name, final GamePlayer player, List<ClobberState> corpus,
+			final int depth, final Search search) {
+		final List<ClobberState> positions = corpus.subList(0, Math.min(SEARCHES, corpus.size()));
+
+		return new Case(name + "(" + depth + ")") {
+			void setUp() {
+				player.init();
+			}
+
+			long run() {
+				for (ClobberState position : positions) {
+					ScoredClobberMove move = search.search((ClobberState)position.clone(), depth);
+					sink += move.row1 + move.col1;
+				}
+				return positions.size();
+			}
+
+			void tearDown() {
+				player.done();
+			}
+		};
+	}
+
+	/**
+	 * Copies the positions, attaching an evaluator to each copy.
+	 */
+	private static List<ClobberState> copies(List<ClobberState> corpus, StoneEvaluator evaluator) {
+		List<ClobberState> states = new ArrayList<ClobberState>();
+
+		for (ClobberState state : corpus) {
+			ClobberState copy = (ClobberState)state.clone();
+			copy.setEvaluator(evaluator);
+			states.add(copy);
+		}
+
+		return states;
+	}
+}
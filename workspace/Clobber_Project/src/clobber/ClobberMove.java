@@ -18,12 +18,19 @@ public class ClobberMove extends GameMove {
 		row2 = m.row2;
 		col2 = m.col2;
 	}
+	/**
+	 * Checks a cell is on the board with a single test: any coordinate
+	 * out of range makes one of the four terms, and so their OR, negative.
+	 * @param r Row of the cell
+	 * @param c Column of the cell
+	 * @return true if the cell is on the board
+	 */
 	public static boolean posOK(int r, int c)
-	{ return Util.inrange(r, 0, ClobberState.ROWS-1) && Util.inrange(c, 0, ClobberState.COLS-1); }
+	{ return (r | c | (ClobberState.ROWS-1 - r) | (ClobberState.COLS-1 - c)) >= 0; }
 	public ClobberMove(int r1, int c1, int r2, int c2)
 	{
 		row1 = r1; col1 = c1; row2 = r2; col2 = c2;
-		if (!posOK(row1, col2) || !posOK(row2, col2)) {
+		if (!posOK(row1, col1) || !posOK(row2, col2)) {
 			System.err.printf("problem in Clobber ctor: %d %d %d %d", r1, c1, r2, c2);
 		}
 	}
@@ -31,6 +38,13 @@ public class ClobberMove extends GameMove {
     { return new ClobberMove(row1, col1, row2, col2); }
 	public String toString()
 	{ return row1 + " " + col1 + " " + row2 + " " + col2; }
+	/**
+	 * Compares the cells of two moves, ignoring anything else they carry
+	 * @param m Move to compare with
+	 * @return true if both moves take the same stone to the same cell
+	 */
+	public boolean sameAs(ClobberMove m)
+	{ return row1 == m.row1 && col1 == m.col1 && row2 == m.row2 && col2 == m.col2; }
 	public void parseMove(String s)
 	{
 		StringTokenizer toks = new StringTokenizer(s);
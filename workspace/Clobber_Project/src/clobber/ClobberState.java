@@ -1,5 +1,8 @@
 package clobber;
 
+import java.util.Arrays;
+import java.util.List;
+
 import game.*;
 
 public class ClobberState extends GameState {
@@ -10,7 +13,48 @@ public class ClobberState extends GameState {
 	public static final char awaySym = gameParams.character("AWAYSYM");
 	public static final char emptySym = gameParams.character("EMPTYSYM");
 
+	// Cell (r, c) is bit (r * WIDTH + c) of a mask. Every row carries one
+	// unused guard bit past the last column, so shifting a mask by one
+	// never carries a stone from the end of one row into the next.
+	public static final int WIDTH = COLS + 1;
+	public static final long CELLS = cellMask();
+
+	// Zobrist keys for a home or away stone on each cell
+	private static final long [] HOME_KEYS = zobristKeys(ROWS * WIDTH, 0xC10BBE8L);
+	private static final long [] AWAY_KEYS = zobristKeys(ROWS * WIDTH, 0xC10BBE9L);
+
+	// Directions, in the order a row-major moveOK scan tries them
+	public static final int DOWN = 0, UP = 1, LEFT = 2, RIGHT = 3;
+	public static final int [] DROW = { -1, +1, 0, 0 };
+	public static final int [] DCOL = { 0, 0, -1, +1 };
+
+	// Neighbours of each cell, as masks clipped to the board: the cells
+	// one step away orthogonally, diagonally, and the whole 3x3 block
+	// centred on the cell. Looking a neighbour up in these never needs
+	// a bounds check.
+	public static final long [] ADJACENT = neighbourMasks(false);
+	public static final long [] DIAGONAL = neighbourMasks(true);
+	public static final long [] AROUND = aroundMasks();
+	// Most cells a move rescores: the blocks around two neighbouring cells
+	private static final int RESCORED = 12;
+	// Most moves a side can have: one across each pair of neighbouring cells
+	public static final int MAX_MOVES = ROWS * (COLS - 1) + COLS * (ROWS - 1);
+
+	/**
+	 * Read-only character view of the board, kept in step with the masks.
+	 * Code that changes a cell must go through set() so the two agree.
+	 */
 	public char [][] board;
+	public long home, away;
+
+	// Running evaluation, kept while an evaluator is attached: the score of
+	// the stone on each cell, the totals for each side, and the scores a
+	// move replaced so that unmakeMove can put them back
+	private StoneEvaluator evaluator;
+	private float [] homeScores, awayScores;
+	private float homeEval, awayEval;
+	private float [] savedHome, savedAway, savedEval;
+	private int scoredFrom;			// Move number the saved scores start at
 
 	public ClobberState()
 	{
@@ -18,13 +62,171 @@ public class ClobberState extends GameState {
 		board = new char [ROWS][COLS];
 		reset();
 	}
+	private static long cellMask()
+	{
+		if (ROWS * WIDTH > Long.SIZE) {
+			System.err.printf("%d x %d board does not fit in a bitboard%n", ROWS, COLS);
+		}
+		long mask = 0;
+		for (int r=0; r<ROWS; r++) {
+			for (int c=0; c<COLS; c++) {
+				mask |= 1L << index(r, c);
+			}
+		}
+		return mask;
+	}
+	private static long [] neighbourMasks(boolean diagonal)
+	{
+		long [] masks = new long [ROWS * WIDTH];
+		for (long m = CELLS; m != 0; m &= m - 1) {
+			long bit = m & -m;
+			long side = (bit << 1) | (bit >>> 1);
+			masks[Long.numberOfTrailingZeros(m)] = diagonal ?
+				((side << WIDTH) | (side >>> WIDTH)) & CELLS : neighbours(bit);
+		}
+		return masks;
+	}
+	private static long [] aroundMasks()
+	{
+		long [] around = new long [ROWS * WIDTH];
+		for (long m = CELLS; m != 0; m &= m - 1) {
+			int i = Long.numberOfTrailingZeros(m);
+			around[i] = (1L << i) | ADJACENT[i] | DIAGONAL[i];
+		}
+		return around;
+	}
+	public static int index(int r, int c)
+	{ return r * WIDTH + c; }
+	public static int row(int index)
+	{ return index / WIDTH; }
+	public static int col(int index)
+	{ return index % WIDTH; }
 	public Object clone()
 	{
 		ClobberState res = new ClobberState();
-		res.copyInfo(this);
-		Util.copy(res.board, board);
+		res.copy(this);
 		return res;
 	}
+	/**
+	 * Overwrites this state with the contents of another one.
+	 * @param src State to be copied
+	 */
+	public void copy(ClobberState src)
+	{
+		copyInfo(src);
+		Util.copy(board, src.board);
+		home = src.home;
+		away = src.away;
+		if (src.evaluator != null) {
+			if (homeScores == null) {
+				allocateScores();
+			}
+			System.arraycopy(src.homeScores, 0, homeScores, 0, homeScores.length);
+			System.arraycopy(src.awayScores, 0, awayScores, 0, awayScores.length);
+			homeEval = src.homeEval;
+			awayEval = src.awayEval;
+		}
+		evaluator = src.evaluator;
+		scoredFrom = numMoves;
+	}
+	/**
+	 * Attaches an evaluator, whose stone scores are then kept as running
+	 * totals by makeMove, unmakeMove, reset and parseMsgString. Cells
+	 * changed with set() are not rescored; attach the evaluator again
+	 * after doing so.
+	 * @param e Evaluator to keep, or null to stop keeping totals
+	 */
+	public void setEvaluator(StoneEvaluator e)
+	{
+		if (e != null && homeScores == null) {
+			allocateScores();
+		}
+		evaluator = e;
+		scoredFrom = numMoves;
+		if (e != null) {
+			homeEval = awayEval = 0;
+			Arrays.fill(homeScores, 0);
+			Arrays.fill(awayScores, 0);
+			rescore(CELLS);
+		}
+	}
+	public StoneEvaluator getEvaluator()
+	{ return evaluator; }
+	/**
+	 * @return Sum of the home stones' scores under the attached evaluator
+	 */
+	public float homeEval()
+	{ return homeEval; }
+	/**
+	 * @return Sum of the away stones' scores under the attached evaluator
+	 */
+	public float awayEval()
+	{ return awayEval; }
+	/**
+	 * @param index Index of a cell
+	 * @return Score of the stone on the cell, 0 if it is empty
+	 */
+	public float stoneScore(int index)
+	{ return homeScores[index] + awayScores[index]; }
+	private void allocateScores()
+	{
+		homeScores = new float [ROWS * WIDTH];
+		awayScores = new float [ROWS * WIDTH];
+		savedHome = new float [(ROWS * COLS + 1) * RESCORED];
+		savedAway = new float [(ROWS * COLS + 1) * RESCORED];
+		savedEval = new float [(ROWS * COLS + 1) * 2];
+	}
+	/**
+	 * Scores the stones on a set of cells again, updating the totals.
+	 * @param cells Mask of the cells to rescore
+	 */
+	private void rescore(long cells)
+	{
+		for (long m = cells; m != 0; m &= m - 1) {
+			int i = Long.numberOfTrailingZeros(m);
+			long bit = 1L << i;
+			homeEval -= homeScores[i];
+			awayEval -= awayScores[i];
+			homeScores[i] = awayScores[i] = 0;
+			if ((home & bit) != 0) {
+				homeScores[i] = evaluator.score(this, row(i), col(i));
+				homeEval += homeScores[i];
+			} else if ((away & bit) != 0) {
+				awayScores[i] = evaluator.score(this, row(i), col(i));
+				awayEval += awayScores[i];
+			}
+		}
+	}
+	/**
+	 * Saves the scores a move is about to replace, under the move number.
+	 * @param cells Mask of the cells the move rescores
+	 */
+	private void saveScores(long cells)
+	{
+		int at = numMoves * RESCORED;
+		for (long m = cells; m != 0; m &= m - 1, at++) {
+			int i = Long.numberOfTrailingZeros(m);
+			savedHome[at] = homeScores[i];
+			savedAway[at] = awayScores[i];
+		}
+		savedEval[2 * numMoves] = homeEval;
+		savedEval[2 * numMoves + 1] = awayEval;
+	}
+	/**
+	 * Puts back the scores saved by saveScores.
+	 * @param cells Mask of the cells the move rescored
+	 */
+	private void restoreScores(long cells)
+	{
+		int at = numMoves * RESCORED;
+		for (long m = cells; m != 0; m &= m - 1, at++) {
+			int i = Long.numberOfTrailingZeros(m);
+			homeScores[i] = savedHome[at];
+			awayScores[i] = savedAway[at];
+		}
+		homeEval = savedEval[2 * numMoves];
+		awayEval = savedEval[2 * numMoves + 1];
+	}
 	public void reset()
 	{
 		clear();
@@ -36,66 +238,262 @@ public class ClobberState extends GameState {
 				which = (which + 1) % 2;
 			}
 		}
+		readBoard();
+		computeKey();
+		if (evaluator != null) {
+			setEvaluator(evaluator);
+		}
 	}
-	public boolean moveOK(GameMove m)
+	/**
+	 * Places a symbol on a cell, updating both the masks and the
+	 * character view.
+	 * @param r Row of the cell
+	 * @param c Column of the cell
+	 * @param sym homeSym, awaySym or emptySym
+	 */
+	public void set(int r, int c, char sym)
 	{
-		ClobberMove mv = (ClobberMove)m;
-		boolean OK = false;
-		char PLAYER = who == GameState.Who.HOME ? homeSym : awaySym;
-		char OPP = who == GameState.Who.HOME ? awaySym : homeSym;
-		int rowDiff = mv.row1 - mv.row2;
-		int colDiff = mv.col1 - mv.col2;
-		if (status == Status.GAME_ON && mv != null &&
-			Util.inrange(mv.row1, 0, ROWS-1) && Util.inrange(mv.row2, 0, ROWS-1) &&
-			Util.inrange(mv.col1, 0, COLS-1) && Util.inrange(mv.col2, 0, COLS-1) &&
-			((Math.abs(rowDiff) == 1 && Math.abs(colDiff) == 0) || 
-			 (Math.abs(rowDiff) == 0 && Math.abs(colDiff) == 1)) && 
-			board[mv.row1][mv.col1] == PLAYER &&
-			board[mv.row2][mv.col2] == OPP) {
-					OK = true;
+		int i = index(r, c);
+		long bit = 1L << i;
+		if ((home & bit) != 0) {
+			key ^= HOME_KEYS[i];
+		} else if ((away & bit) != 0) {
+			key ^= AWAY_KEYS[i];
 		}
-		return OK;
+		home &= ~bit;
+		away &= ~bit;
+		if (sym == homeSym) {
+			home |= bit;
+			key ^= HOME_KEYS[i];
+		} else if (sym == awaySym) {
+			away |= bit;
+			key ^= AWAY_KEYS[i];
+		}
+		board[r][c] = sym;
 	}
-	private boolean noMoves(char who, char opp)
+	/**
+	 * Rebuilds the masks from the character view.
+	 */
+	private void readBoard()
 	{
+		home = away = 0;
 		for (int r=0; r<ROWS; r++) {
 			for (int c=0; c<COLS; c++) {
-				char ch = board[r][c];
-				if (ch == opp) {
-					for (int j=-1; j<=+1; j+=2) {
-						if ((ClobberMove.posOK(r+j, c) && board[r+j][c] == who) ||
-							(ClobberMove.posOK(r, c+j) && board[r][c+j] == who)) {
-							return false;
-						}
-					}
+				if (board[r][c] == homeSym) {
+					home |= 1L << index(r, c);
+				} else if (board[r][c] == awaySym) {
+					away |= 1L << index(r, c);
 				}
 			}
 		}
-		return true;
+	}
+	/**
+	 * Rebuilds the Zobrist key from the masks and the side to move.
+	 */
+	private void computeKey()
+	{
+		key = who == Who.HOME ? 0 : AWAY_KEY;
+		for (long m = home; m != 0; m &= m - 1) {
+			key ^= HOME_KEYS[Long.numberOfTrailingZeros(m)];
+		}
+		for (long m = away; m != 0; m &= m - 1) {
+			key ^= AWAY_KEYS[Long.numberOfTrailingZeros(m)];
+		}
+	}
+	/**
+	 * Finds the stones of the side to move that can capture in a direction.
+	 * @param dir DOWN, UP, LEFT or RIGHT
+	 * @return Mask of the attacking stones
+	 */
+	public long capturers(int dir)
+	{
+		return who == Who.HOME ? capturers(home, away, dir) : capturers(away, home, dir);
+	}
+	/**
+	 * Finds the stones of one colour that can capture in a direction.
+	 * @param mine Mask of the capturing side's stones
+	 * @param opp Mask of the other side's stones
+	 * @param dir DOWN, UP, LEFT or RIGHT
+	 * @return Mask of the attacking stones
+	 */
+	public static long capturers(long mine, long opp, int dir)
+	{
+		switch (dir) {
+			case DOWN:	return mine & (opp << WIDTH);
+			case UP:	return mine & (opp >>> WIDTH);
+			case LEFT:	return mine & (opp << 1);
+			default:	return mine & (opp >>> 1);
+		}
+	}
+	/**
+	 * Finds the stones of the side to move that have any capture.
+	 * @return Mask of the movable stones
+	 */
+	public long movable()
+	{ return capturers(DOWN) | capturers(UP) | capturers(LEFT) | capturers(RIGHT); }
+	/**
+	 * @param m Mask of cells
+	 * @return Mask of the cells next to any cell of m
+	 */
+	public static long neighbours(long m)
+	{ return ((m << WIDTH) | (m >>> WIDTH) | (m << 1) | (m >>> 1)) & CELLS; }
+	/**
+	 * Grows a set of stones into the regions of connected stones that hold it.
+	 * @param stones Mask of all the stones
+	 * @param seed Mask of the stones to start from
+	 * @return Mask of every stone connected to the seed
+	 */
+	public static long region(long stones, long seed)
+	{
+		long grown = seed & stones;
+		for (long last = 0; grown != last; ) {
+			last = grown;
+			grown |= neighbours(grown) & stones;
+		}
+		return grown;
+	}
+	/**
+	 * Finds the stones that can still take part in the game. Stones only
+	 * ever move onto a neighbour, so regions of connected stones never
+	 * merge; a region of one colour has no moves and stays dead.
+	 * @return Mask of the stones in regions holding both colours
+	 */
+	public long liveStones()
+	{ return region(home | away, (home & neighbours(away)) | (away & neighbours(home))); }
+	/**
+	 * Appends every legal move for the side to move, in the same order
+	 * as a row-major scan of moveOK over all four directions.
+	 * @param list List the moves are added to
+	 */
+	public void getMoves(List<? super ScoredClobberMove> list)
+	{
+		if (status != Status.GAME_ON) {
+			return;
+		}
+		long down = capturers(DOWN), up = capturers(UP);
+		long left = capturers(LEFT), right = capturers(RIGHT);
+		long all = down | up | left | right;
+		while (all != 0) {
+			int i = Long.numberOfTrailingZeros(all);
+			long bit = 1L << i;
+			int r = row(i);
+			int c = col(i);
+			if ((down & bit) != 0) list.add(new ScoredClobberMove(r, c, r-1, c, 0));
+			if ((up & bit) != 0) list.add(new ScoredClobberMove(r, c, r+1, c, 0));
+			if ((left & bit) != 0) list.add(new ScoredClobberMove(r, c, r, c-1, 0));
+			if ((right & bit) != 0) list.add(new ScoredClobberMove(r, c, r, c+1, 0));
+			all &= all - 1;
+		}
+	}
+	/**
+	 * Fills in every legal move for the side to move, in the same order
+	 * as getMoves(list), reusing the moves already in the array.
+	 * @param moves Moves to overwrite, at least MAX_MOVES of them
+	 * @return Number of moves filled in
+	 */
+	public int getMoves(ScoredClobberMove [] moves)
+	{
+		if (status != Status.GAME_ON) {
+			return 0;
+		}
+		long down = capturers(DOWN), up = capturers(UP);
+		long left = capturers(LEFT), right = capturers(RIGHT);
+		long all = down | up | left | right;
+		int n = 0;
+		while (all != 0) {
+			int i = Long.numberOfTrailingZeros(all);
+			long bit = 1L << i;
+			int r = row(i);
+			int c = col(i);
+			if ((down & bit) != 0) moves[n++].set(r, c, r-1, c, 0);
+			if ((up & bit) != 0) moves[n++].set(r, c, r+1, c, 0);
+			if ((left & bit) != 0) moves[n++].set(r, c, r, c-1, 0);
+			if ((right & bit) != 0) moves[n++].set(r, c, r, c+1, 0);
+			all &= all - 1;
+		}
+		return n;
+	}
+	public boolean moveOK(GameMove m)
+	{
+		ClobberMove mv = (ClobberMove)m;
+		if (status != Status.GAME_ON || mv == null ||
+			!ClobberMove.posOK(mv.row1, mv.col1) || !ClobberMove.posOK(mv.row2, mv.col2)) {
+			return false;
+		}
+		int from = index(mv.row1, mv.col1);
+		long mine = who == Who.HOME ? home : away;
+		long opp = who == Who.HOME ? away : home;
+		return (mine & (1L << from)) != 0 &&
+			   (opp & ADJACENT[from] & (1L << index(mv.row2, mv.col2))) != 0;
+	}
+	/**
+	 * Determines whether any home stone is next to an away stone. When
+	 * none is, neither side has a move left.
+	 * @return true if no captures remain
+	 */
+	private boolean noMoves()
+	{
+		return (home & neighbours(away)) == 0;
 	}
 	public boolean makeMove(GameMove m)
 	{
 		ClobberMove mv = (ClobberMove)m;
 		boolean OK = false;
 		char PLAYER = who == GameState.Who.HOME ? homeSym : awaySym;
-		char OPP = who == GameState.Who.HOME ? awaySym : homeSym;
-		GameState.Status possibleStatus = 
+		GameState.Status possibleStatus =
 				who == GameState.Who.HOME ? GameState.Status.HOME_WIN: GameState.Status.AWAY_WIN;
 		if (moveOK(m)) {
-			board[mv.row1][mv.col1] = emptySym;
-			board[mv.row2][mv.col2] = PLAYER;
+			long changed = 0;
+			if (evaluator != null) {
+				changed = AROUND[index(mv.row1, mv.col1)] | AROUND[index(mv.row2, mv.col2)];
+				saveScores(changed);
+			}
+			set(mv.row1, mv.col1, emptySym);
+			set(mv.row2, mv.col2, PLAYER);
+			if (evaluator != null) {
+				rescore(changed);
+			}
 			OK = true;
 			super.newMove();
-			status = (noMoves(PLAYER, OPP)) ?
-					possibleStatus :  GameState.Status.GAME_ON;
+			status = noMoves() ? possibleStatus : GameState.Status.GAME_ON;
 		}
 		return OK;
 	}
+	public boolean makeMove(GameMove m, Undo undo)
+	{
+		ClobberMove mv = (ClobberMove)m;
+		undo.status = status;
+		undo.from = index(mv.row1, mv.col1);
+		undo.to = index(mv.row2, mv.col2);
+		return makeMove(m);
+	}
+	public void unmakeMove(Undo undo)
+	{
+		super.undoNewMove();
+		status = undo.status;
+		char PLAYER = who == GameState.Who.HOME ? homeSym : awaySym;
+		char OPP = who == GameState.Who.HOME ? awaySym : homeSym;
+		set(row(undo.from), col(undo.from), PLAYER);
+		set(row(undo.to), col(undo.to), OPP);
+		if (evaluator != null) {
+			if (numMoves >= scoredFrom) {
+				restoreScores(AROUND[undo.from] | AROUND[undo.to]);
+			} else {
+				// The move was made before the evaluator was attached
+				setEvaluator(evaluator);
+			}
+		}
+	}
 	public void parseMsgString(String s)
 	{
 		reset();
 		Util.parseMsgString(s, board, emptySym);
+		readBoard();
 		parseMsgSuffix(s.substring(s.indexOf('[')));
+		computeKey();
+		if (evaluator != null) {
+			setEvaluator(evaluator);
+		}
 	}
 	public String toString()
 	{ return Util.toString(board) + msgSuffix(); }
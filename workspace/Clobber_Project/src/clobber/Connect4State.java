@@ -11,6 +11,10 @@ public class Connect4State extends GameState {
 	public static final char awaySym = gameParams.character("AWAYSYM");
 	public static final char emptySym = gameParams.character("EMPTYSYM");
 
+	// Zobrist keys for a home or away piece on each spot
+	private static final long [] HOME_KEYS = zobristKeys(NUM_SPOTS, 0xC4C4C4L);
+	private static final long [] AWAY_KEYS = zobristKeys(NUM_SPOTS, 0xC4C4C5L);
+
 	public char [][] board = new char [NUM_ROWS][NUM_COLS];
 	public int [] numInCol = new int [NUM_COLS];
 
@@ -32,6 +36,11 @@ public class Connect4State extends GameState {
 		Util.clear(board, emptySym);
 		Arrays.fill(numInCol, 0);
 	}
+	/**
+	 * Key of the piece that sits (or would sit) at a spot.
+	 */
+	private static long pieceKey(int r, int c, char sym)
+	{ return (sym == homeSym ? HOME_KEYS : AWAY_KEYS)[r * NUM_COLS + c]; }
 	public boolean moveOK(GameMove mv)
 	{
 		Connect4Move c4mv = (Connect4Move)mv;
@@ -79,29 +88,76 @@ public class Connect4State extends GameState {
 			status = GameState.Status.GAME_ON;
 		}
 	}
+	/**
+	 * Counts the pieces matching the one at (r, c), walking away from it.
+	 */
+	private int run(int r, int c, int dr, int dc)
+	{
+		char ch = board[r][c];
+		int cnt = 0;
+		for (r+=dr, c+=dc; Util.inrange(r, NUM_ROWS-1) && Util.inrange(c, NUM_COLS-1) &&
+				board[r][c] == ch; r+=dr, c+=dc) {
+			cnt++;
+		}
+		return cnt;
+	}
+	/**
+	 * Updates the status after a piece lands on (r, c). Only lines through
+	 * the new piece can have changed, so the rest of the board is not scanned.
+	 */
+	private void computeStatus(int r, int c)
+	{
+		if (run(r, c, +1, 0) + run(r, c, -1, 0) >= 3 ||
+			run(r, c, 0, +1) + run(r, c, 0, -1) >= 3 ||
+			run(r, c, +1, +1) + run(r, c, -1, -1) >= 3 ||
+			run(r, c, +1, -1) + run(r, c, -1, +1) >= 3) {
+				status = board[r][c] == homeSym ? Status.HOME_WIN : Status.AWAY_WIN;
+		} else if (getNumMoves() == NUM_SPOTS) {
+			status = GameState.Status.DRAW;
+		} else {
+			status = GameState.Status.GAME_ON;
+		}
+	}
 	public boolean makeMove(GameMove mv)
 	{
 		Connect4Move move = (Connect4Move)mv;
 		if (Util.inrange(move.col, NUM_COLS-1) && Util.inrange(numInCol[move.col], NUM_ROWS-1)) {
 			int row = numInCol[move.col]++;
 			board[row][move.col] = (who == Who.HOME ? homeSym : awaySym);
+			key ^= pieceKey(row, move.col, board[row][move.col]);
 			super.newMove();
-			computeStatus();
+			computeStatus(row, move.col);
 			return true;
 		} else {
 			return false;
 		}
 	}
+	public boolean makeMove(GameMove mv, Undo undo)
+	{
+		undo.status = status;
+		undo.from = ((Connect4Move)mv).col;
+		return makeMove(mv);
+	}
+	public void unmakeMove(Undo undo)
+	{
+		int row = --numInCol[undo.from];
+		key ^= pieceKey(row, undo.from, board[row][undo.from]);
+		board[row][undo.from] = emptySym;
+		super.undoNewMove();
+		status = undo.status;
+	}
 	
 	public void parseMsgString(String s)
 	{
 		reset();
 		Util.parseMsgString(s, board, emptySym);
 		parseMsgSuffix(s.substring(s.indexOf('[')));
+		key = who == Who.HOME ? 0 : AWAY_KEY;
 		for (int r=0; r<NUM_ROWS; r++) {
 			for (int c=0; c<NUM_COLS; c++) {
 				if (board[r][c] != emptySym) {
 					numInCol[c]++;
+					key ^= pieceKey(r, c, board[r][c]);
 				}
 			}
 		}
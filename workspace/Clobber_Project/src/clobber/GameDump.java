@@ -0,0 +1,179 @@
+package clobber;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.*;
+
+import game.GameState;
+
+/**
+ * Reads the game records the tournament writes into Dumps.  A record lists each move as a
+ * line naming the player and the move, followed by the board after it, top row first, and
+ * a line such as [AWAY 5 GAME_ON] giving the side to move, the moves played and the status.
+ * The board lines and the status line together are the state's message string.
+ *
+ * Each game is copied to a record for both players, named from that player's side, such as
+ * "ABT(R) vs Shill(W) #2 WIN.txt", so the name gives the game's result.
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class GameDump {
+
+	public static final String DEFAULT_DIR = "Dumps";			// Where the tournament writes records
+
+	private static final Pattern NAME =
+			Pattern.compile("(.*)\\((.)\\) vs (.*)\\((.)\\) #(\\d+) +(WIN|LOSS|DRAW)\\.txt");
+	private static final Pattern PLAYED = Pattern.compile(" played (\\d+ \\d+ \\d+ \\d+)$");
+
+	/**
+	 * A game replayed from its record.
+	 */
+	public static class Game {
+
+		public final String id;							// Names the game, the same in both records
+		public final GameState.Status result;			// HOME_WIN, AWAY_WIN or DRAW
+		public final List<ClobberState> positions;		// The start, then the state after each move
+
+		Game(String id, GameState.Status result, List<ClobberState> positions) {
+			this.id = id;
+			this.result = result;
+			this.positions = positions;
+		}
+	}
+
+	/**
+	 * Finds every game record under a directory, in order of their paths, so that readers
+	 * see the records in the same order on every run.
+	 *
+	 * @param dir		: the directory to search
+	 * @return			: the record files
+	 */
+	public static List<File> find(File dir) {
+		List<File> files = new ArrayList<File>();
+		find(dir, files);
+		Collections.sort(files);
+		return files;
+	}
+
+	private static void find(File dir, List<File> files) {
+		File[] entries = dir.listFiles();
+		if (entries == null) {
+			return;
+		}
+
+		for (File entry : entries) {
+			if (entry.isDirectory()) {
+				find(entry, files);
+			}
+			else if (entry.getName().endsWith(".txt")) {
+				files.add(entry);
+			}
+		}
+	}
+
+	/**
+	 * Reads the positions of a game record, in the order they were played.
+	 *
+	 * @param file		: the record file
+	 * @return			: the state after each move
+	 */
+	public static List<ClobberState> positions(File file) throws IOException {
+		List<ClobberState> states = new ArrayList<ClobberState>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+
+		try {
+			String[] rows = new String[ClobberState.ROWS];
+			int count = 0;
+
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				// A status line completes the board read just before it
+				if (line.startsWith("[") && count >= ClobberState.ROWS) {
+					StringBuilder msg = new StringBuilder();
+					for (int i = 0; i < ClobberState.ROWS; i++) {
+						msg.append(rows[(count + i) % ClobberState.ROWS]);
+					}
+					msg.append(line);
+
+					ClobberState state = new ClobberState();
+					state.parseMsgString(msg.toString());
+					states.add(state);
+					count = 0;
+				}
+				else if (line.length() == ClobberState.COLS) {
+					rows[count++ % ClobberState.ROWS] = line;
+				}
+				else {
+					count = 0;
+				}
+			}
+		}
+		finally {
+			in.close();
+		}
+
+		return states;
+	}
+
+	/**
+	 * Replays a game record, playing each move on a Clobber state and checking the state
+	 * against the board the record shows after it.  The result comes from the record's name,
+	 * which holds it even for games that were decided by a disqualification.
+	 *
+	 * @param file		: the record file
+	 * @return			: the game
+	 * @throws IOException	if the file cannot be read, is not named as a record, or holds a move
+	 * 						that is illegal or leads to a board other than the one shown
+	 */
+	public static Game replay(File file) throws IOException {
+		Matcher name = NAME.matcher(file.getName());
+		if (!name.matches()) {
+			throw new IOException(file + " is not named as a game record");
+		}
+
+		// The record is named from the side of its first player
+		boolean firstIsHome = (name.group(2).charAt(0) == ClobberState.homeSym);
+		String home = (firstIsHome ? name.group(1) : name.group(3));
+		String away = (firstIsHome ? name.group(3) : name.group(1));
+		String outcome = name.group(6);
+		GameState.Status result = (outcome.equals("DRAW") ? GameState.Status.DRAW :
+				outcome.equals("WIN") == firstIsHome ? GameState.Status.HOME_WIN : GameState.Status.AWAY_WIN);
+
+		// A player that meets itself plays two games under one name, told apart by the result
+		String id = file.getParentFile().getParent() + " " + home + " vs " + away + " #" + name.group(5) +
+				" " + result;
+		List<ClobberState> positions = new ArrayList<ClobberState>();
+		ClobberState state = new ClobberState();
+		positions.add((ClobberState)state.clone());
+
+		List<ClobberState> shown = positions(file);
+		int next = 0;
+		BufferedReader in = new BufferedReader(new FileReader(file));
+
+		try {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				Matcher played = PLAYED.matcher(line);
+				if (!played.find()) {
+					continue;
+				}
+
+				ClobberMove move = new ClobberMove();
+				move.parseMove(played.group(1));
+				if (!state.makeMove(move)) {
+					throw new IOException(file + ": illegal move " + played.group(1));
+				}
+
+				ClobberState board = (next < shown.size() ? shown.get(next++) : null);
+				if (board == null || board.key != state.key || board.getWho() != state.getWho()) {
+					throw new IOException(file + ": the board after " + played.group(1) + " does not match");
+				}
+
+				positions.add((ClobberState)state.clone());
+			}
+		}
+		finally {
+			in.close();
+		}
+
+		return new Game(id, result, positions);
+	}
+}
@@ -0,0 +1,265 @@
+package clobber;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The value of a short combinatorial game, kept in canonical form.  Canonical forms are unique,
+ * so every value is interned and two equal values are always the same object.  Left is the
+ * home player and Right the away player; the player who cannot move loses.
+ *
+ * Values are built and compared without locking, so that the search threads of a player can
+ * add and compare region values at once.  The memo tables are concurrent maps; two threads
+ * working out the same entry at once both get the same answer, since forms are interned.
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public final class GameValue {
+
+	/** Outcome classes of a value **/
+	public static final int ZERO = 0;				// The player to move loses
+	public static final int POSITIVE = 1;			// Left wins whoever moves first
+	public static final int NEGATIVE = 2;			// Right wins whoever moves first
+	public static final int FUZZY = 3;				// The player to move wins
+
+	private static final ConcurrentMap<String, GameValue> forms = new ConcurrentHashMap<String, GameValue>();
+	private static final ConcurrentMap<Long, Boolean> leqMemo = new ConcurrentHashMap<Long, Boolean>();
+	private static final ConcurrentMap<Long, GameValue> sumMemo = new ConcurrentHashMap<Long, GameValue>();
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	public static final GameValue ZERO_VALUE = intern(new GameValue[0], new GameValue[0]);
+
+	private final GameValue[] left;				// Left's options
+	private final GameValue[] right;			// Right's options
+	private final int id;						// Position in the intern table
+	private volatile GameValue negative;		// Memo of the negated value
+
+	private GameValue(GameValue[] left, GameValue[] right, int id) {
+		this.left = left;
+		this.right = right;
+		this.id = id;
+	}
+
+	/**
+	 * Builds the canonical value of the game with the specified options.
+	 *
+	 * @param left		: the values Left can move to
+	 * @param right		: the values Right can move to
+	 * @return			: the canonical value
+	 */
+	public static GameValue of(Collection<GameValue> left, Collection<GameValue> right) {
+		List<GameValue> l = new ArrayList<GameValue>(new LinkedHashSet<GameValue>(left));
+		List<GameValue> r = new ArrayList<GameValue>(new LinkedHashSet<GameValue>(right));
+
+		while (true) {
+			removeDominated(l, true);
+			removeDominated(r, false);
+			GameValue g = intern(l.toArray(new GameValue[l.size()]), r.toArray(new GameValue[r.size()]));
+
+			// Bypass reversible options; the result is equal to g, so every option can be
+			// tested against g in the same pass
+			boolean changed = false;
+			LinkedHashSet<GameValue> newL = new LinkedHashSet<GameValue>();
+			LinkedHashSet<GameValue> newR = new LinkedHashSet<GameValue>();
+
+			for (GameValue a : l) {
+				GameValue reverse = null;
+				for (GameValue ar : a.right) {
+					if (ar.leq(g)) {
+						reverse = ar;
+						break;
+					}
+				}
+				if (reverse == null) newL.add(a);
+				else {
+					newL.addAll(Arrays.asList(reverse.left));
+					changed = true;
+				}
+			}
+
+			for (GameValue b : r) {
+				GameValue reverse = null;
+				for (GameValue bl : b.left) {
+					if (g.leq(bl)) {
+						reverse = bl;
+						break;
+					}
+				}
+				if (reverse == null) newR.add(b);
+				else {
+					newR.addAll(Arrays.asList(reverse.right));
+					changed = true;
+				}
+			}
+
+			if (!changed) {
+				return g;
+			}
+
+			l = new ArrayList<GameValue>(newL);
+			r = new ArrayList<GameValue>(newR);
+		}
+	}
+
+	/**
+	 * Rebuilds a value from options already known to form a canonical value, as when reading
+	 * values back from a file.
+	 */
+	static GameValue canonical(GameValue[] left, GameValue[] right) {
+		return intern(left.clone(), right.clone());
+	}
+
+	GameValue[] leftOptions() {
+		return left;
+	}
+
+	GameValue[] rightOptions() {
+		return right;
+	}
+
+	/**
+	 * Removes the options a player would never choose: Left's options that are no better than
+	 * another of Left's options, or Right's that are no better for Right than another.
+	 */
+	private static void removeDominated(List<GameValue> options, boolean forLeft) {
+		for (int i = options.size() - 1; i >= 0; i--) {
+			GameValue a = options.get(i);
+
+			for (int j = 0; j < options.size(); j++) {
+				GameValue b = options.get(j);
+
+				if (i != j && (forLeft ? a.leq(b) : b.leq(a))) {
+					options.remove(i);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds or creates the form with exactly the specified options.
+	 */
+	private static GameValue intern(GameValue[] left, GameValue[] right) {
+		Arrays.sort(left, BY_ID);
+		Arrays.sort(right, BY_ID);
+
+		StringBuilder key = new StringBuilder();
+		for (GameValue g : left) key.append(g.id).append(',');
+		key.append('|');
+		for (GameValue g : right) key.append(g.id).append(',');
+
+		GameValue form = forms.get(key.toString());
+
+		// A thread that loses the race to add the form uses the one that won
+		if (form == null) {
+			GameValue added = new GameValue(left, right, nextId.getAndIncrement());
+			form = forms.putIfAbsent(key.toString(), added);
+			form = (form != null ? form : added);
+		}
+
+		return form;
+	}
+
+	private static final Comparator<GameValue> BY_ID = new Comparator<GameValue>() {
+		public int compare(GameValue g, GameValue h) {
+			return g.id - h.id;
+		}
+	};
+
+	/**
+	 * Compares two values.  G <= H unless Left can move from G to something at least H, or
+	 * Right can move from H to something at most G.
+	 *
+	 * @param h			: the value to compare with
+	 * @return			: true if this value is less than or equal to h
+	 */
+	public boolean leq(GameValue h) {
+		Long key = ((long)id << 32) | h.id;
+		Boolean memo = leqMemo.get(key);
+
+		if (memo == null) {
+			boolean result = true;
+
+			for (int i = 0; result && i < left.length; i++) {
+				if (h.leq(left[i])) result = false;
+			}
+			for (int i = 0; result && i < h.right.length; i++) {
+				if (h.right[i].leq(this)) result = false;
+			}
+
+			memo = result;
+			leqMemo.put(key, memo);
+		}
+
+		return memo;
+	}
+
+	/**
+	 * Adds two values.  In the sum, a player moves in either one of the two games.
+	 *
+	 * @param h			: the value to add
+	 * @return			: the canonical value of the sum
+	 */
+	public GameValue add(GameValue h) {
+		if (this == ZERO_VALUE) return h;
+		if (h == ZERO_VALUE) return this;
+
+		Long key = (id < h.id ? ((long)id << 32) | h.id : ((long)h.id << 32) | id);
+		GameValue sum = sumMemo.get(key);
+
+		if (sum == null) {
+			List<GameValue> l = new ArrayList<GameValue>();
+			List<GameValue> r = new ArrayList<GameValue>();
+
+			for (GameValue g : left) l.add(g.add(h));
+			for (GameValue g : h.left) l.add(add(g));
+			for (GameValue g : right) r.add(g.add(h));
+			for (GameValue g : h.right) r.add(add(g));
+
+			sum = of(l, r);
+			sumMemo.put(key, sum);
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Negates the value, swapping the roles of Left and Right.
+	 *
+	 * @return			: the canonical value of the negated game
+	 */
+	public GameValue negate() {
+		GameValue result = negative;
+
+		if (result == null) {
+			List<GameValue> l = new ArrayList<GameValue>();
+			List<GameValue> r = new ArrayList<GameValue>();
+
+			for (GameValue g : right) l.add(g.negate());
+			for (GameValue g : left) r.add(g.negate());
+
+			result = of(l, r);
+			result.negative = this;
+			negative = result;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Determines who wins the game with best play.
+	 *
+	 * @return			: ZERO, POSITIVE, NEGATIVE or FUZZY
+	 */
+	public int outcome() {
+		boolean atLeastZero = ZERO_VALUE.leq(this);
+		boolean atMostZero = leq(ZERO_VALUE);
+
+		if (atLeastZero && atMostZero) return ZERO;
+		else if (atLeastZero) return POSITIVE;
+		else if (atMostZero) return NEGATIVE;
+		else return FUZZY;
+	}
+}
@@ -0,0 +1,447 @@
+package clobber;
+import game.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A Clobber player that searches with Monte Carlo Tree Search, choosing moves down the tree by
+ * UCT and scoring new leaves by random playouts to the end of the game.  Every worker thread
+ * grows the same tree.  A worker adds a virtual loss to each node on its way down, so that the
+ * other workers spread out over the tree instead of following it, and removes the loss when it
+ * backs up the playout's result.
+ *
+ * The tree lives in a pool of nodes held in parallel arrays, reset for every move, so the
+ * search allocates nothing once the player is initialized.  The children of a node are
+ * allocated together and only once the node has been visited EXPAND_VISITS times; when the
+ * pool is full, leaves are no longer expanded and playouts start from them instead.  Playouts
+ * run on a pair of bitboards and pick uniformly among the legal captures.
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class MCTSPlayer extends GamePlayer {
+
+	public static final int ROWS 			= ClobberState.ROWS;
+	public static final int COLS 			= ClobberState.COLS;
+	public static final int DEFAULT_NODES	= 1 << 21;	// Nodes in the pool if none configured
+	public static final double EXPLORATION	= 0.7;		// Weight of the UCT exploration term
+	public static final int VIRTUAL_LOSS	= 3;		// Lost visits added on the way down
+	public static final int EXPAND_VISITS	= 4;		// Visits a leaf needs to be expanded
+	public static final int CHECK_EVERY		= 64;		// Playouts between looks at the clock
+
+	private static final int LEAF = 0, EXPANDING = 1, EXPANDED = 2;
+
+	private int threadLimit;
+	private TimeManager timer = new TimeManager(ClobberState.gameParams);
+	private OpeningBook book;
+	private ExecutorService pool;
+	private Worker[] workers;
+
+	/** The node pool; the fields of node i are element i of each array **/
+	private int capacity;
+	private int[] move;							// Packed move into the node, from << 8 | to
+	private int[] firstChild;					// First of the node's children
+	private int[] childCount;					// Number of children, 0 if the game is over
+	private AtomicIntegerArray visits;			// Playouts through the node, plus virtual losses
+	private AtomicIntegerArray wins;			// Playouts won by the player who moved into it
+	private AtomicIntegerArray expansion;		// LEAF, EXPANDING or EXPANDED
+	private AtomicInteger used;					// Nodes handed out for this move
+	private volatile boolean full;				// Whether the pool has run out
+
+	/** The position being searched; node 0 is its root **/
+	private long rootHome, rootAway;
+	private boolean rootHomeToMove;
+	private volatile boolean stop;				// Set when the move's time is spent
+
+	/** Playout counts, for the playouts per second reported at the end of each game **/
+	private long gamePlayouts;
+	private double gameSecs;
+
+
+	/**
+	 * The main method of MCTSPlayer.  This method creates an instance of MCTSPlayer and has
+	 * it compete in a tournament against another Clobber player.
+	 *
+	 * @param args		: command line arguments
+	 */
+	public static void main(String [] args) {
+		GamePlayer p = new MCTSPlayer("MCTS");
+		p.compete(args, 1);
+	}
+
+	/**
+	 * Constructs an instance of MCTSPlayer that searches with every logical thread on this
+	 * machine.
+	 *
+	 * @param n				: the name of the player
+	 */
+	public MCTSPlayer(String n) {
+		this(n, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs an instance of MCTSPlayer that searches with a set number of threads.
+	 *
+	 * @param n				: the name of the player
+	 * @param threads		: the number of worker threads
+	 */
+	public MCTSPlayer(String n, int threads) {
+		super(n, new ClobberState(), false);
+		this.threadLimit = threads;
+		this.capacity = (ClobberState.gameParams.integer("MCTSNODES") > 0 ?
+				ClobberState.gameParams.integer("MCTSNODES") : DEFAULT_NODES);
+	}
+
+	/**
+	 * Overrides the init method from the parent GamePlayer.  This method allocates the node
+	 * pool and starts the worker threads once for the whole tournament.
+	 */
+	public void init() {
+		move = new int[capacity];
+		firstChild = new int[capacity];
+		childCount = new int[capacity];
+		visits = new AtomicIntegerArray(capacity);
+		wins = new AtomicIntegerArray(capacity);
+		expansion = new AtomicIntegerArray(capacity);
+		used = new AtomicInteger();
+
+		// Daemon threads, like those of a ForkJoinPool, never keep the player running
+		pool = Executors.newFixedThreadPool(threadLimit, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, nickname + " worker");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		workers = new Worker[threadLimit];
+		for (int i = 0; i < threadLimit; i++) {
+			workers[i] = new Worker(ThreadLocalRandom.current().nextLong() | 1);
+		}
+
+		book = OpeningBook.load();
+	}
+
+	public void done() {
+		pool.shutdown();
+	}
+
+	public void startGame(String opponent) {
+		timer.startGame();
+		gamePlayouts = 0;
+		gameSecs = 0;
+	}
+
+	public void timeOfLastMove(double secs) {
+		timer.endMove(secs);
+	}
+
+	public void endGame(int result) {
+		System.out.printf("%s: %d playouts, %.0f per second per thread%n", nickname, gamePlayouts,
+				playoutRate());
+	}
+
+	/**
+	 * @return				: the playouts per second of each thread over the game so far
+	 */
+	public double playoutRate() {
+		return gameSecs > 0 ? gamePlayouts / gameSecs / threadLimit : 0;
+	}
+
+	/**
+	 * Calculates the next move to be performed by the MCTSPlayer.  The workers grow the tree
+	 * for this move's share of the game clock, then the most visited move at the root is played.
+	 *
+	 * @param state			: the current Clobber state
+	 * @param lastMove		: String representation of the previous move
+	 * @return				: the next move for the MCTSPlayer
+	 */
+	public GameMove getMove(GameState state, String lastMove) {
+		ClobberState board = (ClobberState)state;
+
+		// Expect to move about once for every two of our stones that can still capture
+		timer.startMove(Long.bitCount(board.movable()) / 2 + 1);
+
+		// Play straight from the opening book when it holds the position
+		ScoredClobberMove booked = (book != null ? book.probe(board) : null);
+		if (booked != null) {
+			timer.stopMove();
+			return booked;
+		}
+
+		/** Start a new tree with the root expanded **/
+		rootHome = board.home;
+		rootAway = board.away;
+		rootHomeToMove = (board.getWho() == GameState.Who.HOME);
+		used.set(1);
+		full = false;
+		newNode(0, 0);
+		workers[0].reset();
+		workers[0].expand(0);
+
+		/** Search, unless there is no choice to make **/
+		if (childCount[0] > 1) {
+			stop = false;
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+			for (Worker worker : workers) {
+				results.add(pool.submit(worker));
+			}
+
+			for (Future<Integer> result : results) {
+				try {
+					gamePlayouts += result.get();
+				}
+				catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+
+			gameSecs += timer.elapsed();
+		}
+
+		/** Play the most visited move, which is the one the search trusts most **/
+		int best = firstChild[0];
+
+		for (int c = firstChild[0]; c < firstChild[0] + childCount[0]; c++) {
+			if (visits.get(c) > visits.get(best)) {
+				best = c;
+			}
+		}
+
+		int from = move[best] >>> 8;
+		int to = move[best] & 0xFF;
+		double score = (visits.get(best) > 0 ? (double)wins.get(best) / visits.get(best) : 0);
+
+		timer.stopMove();
+		return new ScoredClobberMove(ClobberState.row(from), ClobberState.col(from),
+				ClobberState.row(to), ClobberState.col(to), score);
+	}
+
+	/**
+	 * Clears a node taken from the pool.
+	 */
+	private void newNode(int node, int packedMove) {
+		move[node] = packedMove;
+		childCount[node] = 0;
+		visits.set(node, 0);
+		wins.set(node, 0);
+		expansion.set(node, LEAF);
+	}
+
+	/**
+	 * A search thread.  Each worker keeps its own copy of the board and its own path down
+	 * the tree, both allocated once.
+	 *
+	 * @author Lucy Jiang, Marshall Miller, Peter Simon
+	 */
+	private class Worker implements Callable<Integer> {
+
+		private final int[] path = new int[ROWS * COLS + 1];	// Nodes from the root down
+		private long home, away;								// The worker's board
+		private boolean homeToMove;
+		private long seed;										// xorshift random state
+
+		public Worker(long seed) {
+			this.seed = seed;
+		}
+
+		/**
+		 * Runs playouts until the move's time is spent.
+		 *
+		 * @return				: the number of playouts run
+		 */
+		public Integer call() {
+			int playouts = 0;
+
+			while (!stop) {
+				for (int i = 0; i < CHECK_EVERY; i++) {
+					iterate();
+				}
+				playouts += CHECK_EVERY;
+
+				if (timer.elapsed() >= timer.budget()) {
+					stop = true;
+				}
+			}
+
+			return playouts;
+		}
+
+		/**
+		 * Sets the worker's board to the root position.
+		 */
+		public void reset() {
+			home = rootHome;
+			away = rootAway;
+			homeToMove = rootHomeToMove;
+		}
+
+		/**
+		 * Runs one playout: down the tree by UCT, expanding the leaf reached if it has been
+		 * visited enough, then randomly to the end of the game, and back up the result.
+		 */
+		private void iterate() {
+			reset();
+			int node = 0;
+			int depth = 0;
+			path[depth++] = node;
+
+			while ((expansion.get(node) == EXPANDED || expand(node)) && childCount[node] > 0) {
+				node = select(node);
+				visits.addAndGet(node, VIRTUAL_LOSS);
+				path[depth++] = node;
+				play(move[node]);
+			}
+
+			boolean homeWon = playout();
+
+			// The player to move alternates down the path, starting with the root's
+			for (int i = depth - 1; i >= 0; i--) {
+				boolean movedByHome = (rootHomeToMove == (i % 2 == 1));
+
+				visits.addAndGet(path[i], i > 0 ? 1 - VIRTUAL_LOSS : 1);
+				if (movedByHome == homeWon) {
+					wins.incrementAndGet(path[i]);
+				}
+			}
+		}
+
+		/**
+		 * Gives a leaf its children, one for each legal move.  Only one worker expands a node;
+		 * the others play out from it meanwhile.
+		 *
+		 * @param node			: the leaf, whose position is on the worker's board
+		 * @return				: true if the node was expanded
+		 */
+		public boolean expand(int node) {
+			if (full || (node != 0 && visits.get(node) < EXPAND_VISITS) ||
+					!expansion.compareAndSet(node, LEAF, EXPANDING)) {
+				return false;
+			}
+
+			long mine = (homeToMove ? home : away);
+			long opp = (homeToMove ? away : home);
+			int count = 0;
+
+			for (int dir = 0; dir < 4; dir++) {
+				count += Long.bitCount(ClobberState.capturers(mine, opp, dir));
+			}
+
+			int first = used.getAndAdd(count);
+			if (first + count > capacity) {
+				full = true;
+				expansion.set(node, LEAF);
+				return false;
+			}
+
+			int child = first;
+			for (int dir = 0; dir < 4; dir++) {
+				int step = ClobberState.DROW[dir] * ClobberState.WIDTH + ClobberState.DCOL[dir];
+
+				for (long m = ClobberState.capturers(mine, opp, dir); m != 0; m &= m - 1) {
+					int from = Long.numberOfTrailingZeros(m);
+					newNode(child++, (from << 8) | (from + step));
+				}
+			}
+
+			firstChild[node] = first;
+			childCount[node] = count;
+			expansion.set(node, EXPANDED);
+			return true;
+		}
+
+		/**
+		 * Chooses the child with the best upper confidence bound, trying unvisited children
+		 * first.  Virtual losses count as visits that were lost.
+		 */
+		private int select(int node) {
+			int first = firstChild[node];
+			double logVisits = Math.log(Math.max(1, visits.get(node)));
+			int best = first;
+			double bestValue = Double.NEGATIVE_INFINITY;
+
+			for (int c = first; c < first + childCount[node]; c++) {
+				int v = visits.get(c);
+
+				if (v == 0) {
+					return c;
+				}
+
+				double value = (double)wins.get(c) / v + EXPLORATION * Math.sqrt(logVisits / v);
+				if (value > bestValue) {
+					bestValue = value;
+					best = c;
+				}
+			}
+
+			return best;
+		}
+
+		/**
+		 * Plays random captures on the worker's board until the player to move has none.
+		 *
+		 * @return				: true if home made the last capture, and so won
+		 */
+		private boolean playout() {
+			while (true) {
+				long mine = (homeToMove ? home : away);
+				long opp = (homeToMove ? away : home);
+				long down = ClobberState.capturers(mine, opp, ClobberState.DOWN);
+				long up = ClobberState.capturers(mine, opp, ClobberState.UP);
+				long left = ClobberState.capturers(mine, opp, ClobberState.LEFT);
+				long right = ClobberState.capturers(mine, opp, ClobberState.RIGHT);
+				int total = Long.bitCount(down) + Long.bitCount(up) + Long.bitCount(left) + Long.bitCount(right);
+
+				if (total == 0) {
+					return !homeToMove;
+				}
+
+				// Pick one of the captures, in direction order
+				int r = random(total);
+				int dir = ClobberState.DOWN;
+				long m = down;
+
+				if (r >= Long.bitCount(m)) { r -= Long.bitCount(m); m = up; dir = ClobberState.UP; }
+				if (r >= Long.bitCount(m)) { r -= Long.bitCount(m); m = left; dir = ClobberState.LEFT; }
+				if (r >= Long.bitCount(m)) { r -= Long.bitCount(m); m = right; dir = ClobberState.RIGHT; }
+
+				for (; r > 0; r--) {
+					m &= m - 1;
+				}
+
+				int from = Long.numberOfTrailingZeros(m);
+				play((from << 8) | (from + ClobberState.DROW[dir] * ClobberState.WIDTH + ClobberState.DCOL[dir]));
+			}
+		}
+
+		/**
+		 * Makes a packed move on the worker's board.
+		 */
+		private void play(int packed) {
+			long from = 1L << (packed >>> 8);
+			long to = 1L << (packed & 0xFF);
+
+			if (homeToMove) {
+				home = (home & ~from) | to;
+				away &= ~to;
+			}
+			else {
+				away = (away & ~from) | to;
+				home &= ~to;
+			}
+
+			homeToMove = !homeToMove;
+		}
+
+		/**
+		 * @return				: a random number from 0 to n - 1
+		 */
+		private int random(int n) {
+			seed ^= seed << 13;
+			seed ^= seed >>> 7;
+			seed ^= seed << 17;
+			return (int)((seed >>> 33) % n);
+		}
+	}
+}
@@ -11,6 +11,9 @@ public class MiniMaxConnect4Player extends BaseConnect4Player {
 	// (Not sure how much it improves things.)
 	protected ScoredConnect4Move [] mvStack;
 	
+	// undoStack[d] records how to take back the move tried at depth d.
+	protected GameState.Undo [] undoStack;
+	
 	 // A Connect4Move with a scored (how well it evaluates)
 	protected class ScoredConnect4Move extends Connect4Move {
 		public ScoredConnect4Move(int c, double s)
@@ -47,8 +50,10 @@ public class MiniMaxConnect4Player extends BaseConnect4Player {
 	public void init()
 	{
 		mvStack = new ScoredConnect4Move [MAX_DEPTH];
+		undoStack = new GameState.Undo [MAX_DEPTH];
 		for (int i=0; i<MAX_DEPTH; i++) {
 			mvStack[i] = new ScoredConnect4Move(0, 0);
+			undoStack[i] = new GameState.Undo();
 		}
 	}
 	/**
@@ -100,7 +105,7 @@ public class MiniMaxConnect4Player extends BaseConnect4Player {
 			ScoredConnect4Move nextMove = mvStack[currDepth+1];
 			
 			bestMove.set(0, bestScore);
-			GameState.Who currTurn = brd.getWho();
+			GameState.Undo undo = undoStack[currDepth];
 
 			int [] columns = new int [COLS];
 			for (int j=0; j<COLS; j++) {
@@ -112,18 +117,13 @@ public class MiniMaxConnect4Player extends BaseConnect4Player {
 				if (brd.numInCol[c] < Connect4State.NUM_ROWS) {
 					// Make move on board
 					tempMv.col = c;
-					brd.makeMove(tempMv);
+					brd.makeMove(tempMv, undo);
 					
 					// Check out worth of this move
 					minimax(brd, currDepth+1);
 					
 					// Undo the move
-					brd.numInCol[c]--;
-					int row = brd.numInCol[c]; 
-					brd.board[row][c] = Connect4State.emptySym;
-					brd.numMoves--;
-					brd.status = GameState.Status.GAME_ON;
-					brd.who = currTurn;
+					brd.unmakeMove(undo);
 					
 					// Check out the results, relative to what we've seen before
 					if (toMaximize && nextMove.score > bestMove.score) {
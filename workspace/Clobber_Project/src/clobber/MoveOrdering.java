@@ -0,0 +1,131 @@
+package clobber;
+
+import java.util.*;
+
+/**
+ * Orders the moves of a Clobber search so that the moves most likely to cause a cutoff are
+ * searched first: the move stored in the transposition table, then the killer moves of the
+ * ply, then the rest by their history score.  The sort is stable, so moves the heuristics
+ * cannot tell apart keep the (shuffled) order they came in.
+ *
+ * One instance is shared by all of a player's search threads.  Its tables are updated without
+ * locking, since a lost update only costs a little ordering quality.
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class MoveOrdering {
+
+	public static final int KILLERS = 2;				// Killer moves kept for each ply
+	private static final int TABLE_SCORE = 1 << 30;		// Order score of the stored move
+	private static final int KILLER_SCORE = 1 << 29;	// Order score of the first killer
+	private static final int HISTORY_MAX = 1 << 28;		// History is halved beyond this
+
+	private static final int CELLS = ClobberState.ROWS * ClobberState.WIDTH;
+
+	private static final Comparator<ScoredClobberMove> BY_ORDER = new ScoredClobberMove.SortOrderDes();
+
+	private final int[] killers;						// Packed moves, KILLERS per ply
+	private final int[] history;						// Cutoff credit of each packed move
+
+	/**
+	 * Constructs an instance of MoveOrdering for searches up to the whole board deep.
+	 */
+	public MoveOrdering() {
+		this.killers = new int[ClobberState.ROWS * ClobberState.COLS * KILLERS];
+		this.history = new int[CELLS * CELLS];
+	}
+
+	/**
+	 * Prepares for the search of a new move.  The killers belong to the plies of the last
+	 * search, so they are dropped, and the history is aged so that recent cutoffs count most.
+	 */
+	public void newSearch() {
+		Arrays.fill(killers, 0);
+
+		for (int i = 0; i < history.length; i++) {
+			history[i] >>= 1;
+		}
+	}
+
+	/**
+	 * Sorts moves so that the most promising come first.
+	 *
+	 * @param moves		: the moves to order
+	 * @param entry		: the position's transposition table entry, or 0 if it has none
+	 * @param ply		: the depth of the position in the search
+	 */
+	public void order(List<ScoredClobberMove> moves, long entry, int ply) {
+		int stored = (entry != 0 ? pack(TranspositionTable.from(entry), TranspositionTable.to(entry)) : 0);
+		int killer1 = killers[ply * KILLERS];
+		int killer2 = killers[ply * KILLERS + 1];
+
+		for (int i = 0; i < moves.size(); i++) {
+			ScoredClobberMove move = moves.get(i);
+			int packed = pack(move);
+
+			if (packed == stored) move.orderScore = TABLE_SCORE;
+			else if (packed == killer1) move.orderScore = KILLER_SCORE;
+			else if (packed == killer2) move.orderScore = KILLER_SCORE - 1;
+			else move.orderScore = history[packed];
+		}
+
+		sort(moves, BY_ORDER);
+	}
+
+	/**
+	 * Sorts moves in place, keeping moves that compare equal in the order they came in.  A
+	 * node has few moves, so an insertion sort does the job without the copying and merge
+	 * buffer of Collections.sort.
+	 *
+	 * @param moves		: the moves to sort, in a list with fast random access
+	 * @param order		: the order to sort them into
+	 */
+	public static void sort(List<ScoredClobberMove> moves, Comparator<ScoredClobberMove> order) {
+		for (int i = 1; i < moves.size(); i++) {
+			ScoredClobberMove move = moves.get(i);
+			int j = i;
+
+			for (; j > 0 && order.compare(moves.get(j - 1), move) > 0; j--) {
+				moves.set(j, moves.get(j - 1));
+			}
+			moves.set(j, move);
+		}
+	}
+
+	/**
+	 * Records a move that caused a cutoff.  The move becomes the first killer of its ply and
+	 * earns history credit that grows with the depth of the subtree it pruned.
+	 *
+	 * @param move		: the move that caused the cutoff
+	 * @param ply		: the depth of the position in the search
+	 * @param depthLeft	: the depth the position was being searched to
+	 */
+	public void cutoff(ClobberMove move, int ply, int depthLeft) {
+		int packed = pack(move);
+
+		if (killers[ply * KILLERS] != packed) {
+			killers[ply * KILLERS + 1] = killers[ply * KILLERS];
+			killers[ply * KILLERS] = packed;
+		}
+
+		history[packed] += depthLeft * depthLeft;
+
+		if (history[packed] > HISTORY_MAX) {
+			for (int i = 0; i < history.length; i++) {
+				history[i] >>= 1;
+			}
+		}
+	}
+
+	private static int pack(ClobberMove move) {
+		return pack(ClobberState.index(move.row1, move.col1), ClobberState.index(move.row2, move.col2));
+	}
+
+	/**
+	 * Packs a move into a single number.  A move never starts and ends on the same cell, so
+	 * no move packs to 0 and 0 can mark an empty killer slot.
+	 */
+	private static int pack(int from, int to) {
+		return from * CELLS + to;
+	}
+}
@@ -0,0 +1,286 @@
+package clobber;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+import game.GameState;
+
+/**
+ * A book of opening moves searched ahead of time.  The book is built offline by running this
+ * class, which searches every position reachable from the starting board in the first few
+ * plies with ShillPlayer, one position per core.  Players map the book into memory and probe
+ * it before searching, so a booked move costs one hash probe instead of a search.
+ *
+ * The file is written big-endian and holds a header (MAGIC, VERSION, the plies covered, the
+ * search depth and the number of table slots), then an open-addressed hash table keyed by
+ * Zobrist key.  Each slot holds the key (long), the move's attacking and target cells packed
+ * as from * 256 + to (int, 0 if the slot is empty) and the move's score (float).
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class OpeningBook {
+
+	public static final String DEFAULT_FILE = "book.bin";		// File name if none configured
+	public static final int DEFAULT_PLIES = 3;					// Plies covered by default
+	public static final int DEFAULT_DEPTH = 8;					// Search depth by default
+
+	private static final int MAGIC = 0x434C4F42;				// "CLOB"
+	private static final int VERSION = 1;
+	private static final int HEADER = 20;						// Bytes in the header
+	private static final int SLOT = 16;							// Bytes in a table slot
+
+	private static OpeningBook shared;							// The book all players use
+	private static boolean loaded;								// True once loading was tried
+
+	private final MappedByteBuffer buffer;
+	private final int slots;									// Table slots, a power of 2
+
+	private OpeningBook(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		this.slots = buffer.getInt(16);
+	}
+
+	/**
+	 * Maps the book named by BOOKFILE in the Clobber configuration.  Loading is done once,
+	 * however many players call it.
+	 *
+	 * @return			: the book, or null if there is none
+	 */
+	public static synchronized OpeningBook load() {
+		if (!loaded) {
+			String name = (ClobberState.gameParams.defined("BOOKFILE") ?
+					ClobberState.gameParams.string("BOOKFILE") : DEFAULT_FILE);
+			shared = open("config" + ClobberState.SEP + name);
+			loaded = true;
+		}
+
+		return shared;
+	}
+
+	/**
+	 * Maps an opening book into memory.
+	 *
+	 * @param fname		: the name of the book file
+	 * @return			: the book, or null if the file is missing or unreadable
+	 */
+	public static OpeningBook open(String fname) {
+		File file = new File(fname);
+
+		if (!file.exists()) {
+			System.err.println("No opening book " + fname + "; openings will be searched");
+			return null;
+		}
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			raf.close();
+
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				System.err.println("Opening book " + fname + " has the wrong format");
+				return null;
+			}
+
+			return new OpeningBook(buffer);
+		}
+		catch (IOException e) {
+			System.err.println("Could not map opening book " + fname);
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Looks up the move to play in a position.
+	 *
+	 * @param state		: the current Clobber state
+	 * @return			: the booked move, or null if the book does not hold the position
+	 */
+	public ScoredClobberMove probe(ClobberState state) {
+		int mask = slots - 1;
+
+		for (int i = (int)state.key & mask; ; i = (i + 1) & mask) {
+			int at = HEADER + i * SLOT;
+			int move = buffer.getInt(at + 8);
+
+			if (move == 0) {
+				return null;
+			}
+			if (buffer.getLong(at) == state.key) {
+				int from = move >>> 8;
+				int to = move & 0xFF;
+				ScoredClobberMove booked = new ScoredClobberMove(ClobberState.row(from), ClobberState.col(from),
+						ClobberState.row(to), ClobberState.col(to), buffer.getFloat(at + 12));
+
+				// A different position that shares the key would have a move that is not legal here
+				return state.moveOK(booked) ? booked : null;
+			}
+		}
+	}
+
+	/**
+	 * Searches the opening positions and writes the opening book.
+	 *
+	 * @param args		: the plies to cover, the search depth, then the file name; all optional
+	 */
+	public static void main(String[] args) {
+		int plies = (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PLIES);
+		int depth = (args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DEPTH);
+		String fname = (args.length > 2 ? args[2] : "config" + ClobberState.SEP +
+				(ClobberState.gameParams.defined("BOOKFILE") ?
+						ClobberState.gameParams.string("BOOKFILE") : DEFAULT_FILE));
+		long start = System.nanoTime();
+
+		List<ClobberState> positions = openings(plies);
+		System.out.printf("Searching %d positions to depth %d%n", positions.size(), depth);
+
+		Map<Long, ScoredClobberMove> moves = search(positions, depth);
+
+		try {
+			write(fname, plies, depth, moves);
+		}
+		catch (IOException e) {
+			System.err.println("Could not write opening book " + fname);
+			e.printStackTrace();
+			return;
+		}
+
+		System.out.printf("%d positions written to %s in %.1f secs%n", moves.size(), fname,
+				(System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * Finds every distinct position reached from the starting board in fewer than a number of
+	 * plies, where the game is still on.
+	 */
+	private static List<ClobberState> openings(int plies) {
+		Map<Long, ClobberState> found = new LinkedHashMap<Long, ClobberState>();
+		List<ClobberState> frontier = new ArrayList<ClobberState>();
+		frontier.add(new ClobberState());
+
+		for (int ply = 0; ply < plies; ply++) {
+			List<ClobberState> next = new ArrayList<ClobberState>();
+
+			for (ClobberState state : frontier) {
+				if (state.getStatus() != GameState.Status.GAME_ON || found.containsKey(state.key)) {
+					continue;
+				}
+
+				found.put(state.key, state);
+
+				List<ScoredClobberMove> moves = new ArrayList<ScoredClobberMove>();
+				state.getMoves(moves);
+
+				for (ScoredClobberMove move : moves) {
+					ClobberState child = (ClobberState)state.clone();
+					child.makeMove(move);
+					next.add(child);
+				}
+			}
+
+			frontier = next;
+		}
+
+		return new ArrayList<ClobberState>(found.values());
+	}
+
+	/**
+	 * Searches each position to the full depth on its own core, with a single-threaded player
+	 * per core.  The search is untimed, so every booked move was searched to the depth the
+	 * header records.
+	 */
+	private static Map<Long, ScoredClobberMove> search(List<ClobberState> positions, final int depth) {
+		final int threads = Runtime.getRuntime().availableProcessors();
+		final int total = positions.size();
+		final Map<Long, ScoredClobberMove> moves = new ConcurrentHashMap<Long, ScoredClobberMove>();
+		final List<ShillPlayer> players = Collections.synchronizedList(new ArrayList<ShillPlayer>());
+
+		final ThreadLocal<ShillPlayer> player = new ThreadLocal<ShillPlayer>() {
+			protected ShillPlayer initialValue() {
+				// Search afresh even if an older book exists, which is about to be overwritten
+				ShillPlayer p = new ShillPlayer("Book", depth, 1, "shill_library.txt", false);
+				p.init();
+				players.add(p);
+				return p;
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+
+		for (final ClobberState position : positions) {
+			results.add(executor.submit(new Runnable() {
+				public void run() {
+					ShillPlayer p = player.get();
+					p.startGame("Book");
+					ScoredClobberMove move = p.searchDepth((ClobberState)position.clone(), depth);
+					moves.put(position.key, move);
+
+					if (moves.size() % 100 == 0) {
+						System.out.printf("%d of %d positions searched%n", moves.size(), total);
+					}
+				}
+			}));
+		}
+
+		for (Future<?> result : results) {
+			try {
+				result.get();
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+
+		executor.shutdown();
+
+		for (ShillPlayer p : players) {
+			p.done();
+		}
+
+		return moves;
+	}
+
+	/**
+	 * Writes the booked moves to a file in the format described above.
+	 */
+	private static void write(String fname, int plies, int depth, Map<Long, ScoredClobberMove> moves)
+			throws IOException {
+		int slots = Integer.highestOneBit(Math.max(1, moves.size() * 2 - 1)) << 1;
+		long[] keys = new long[slots];
+		int[] packed = new int[slots];
+		float[] scores = new float[slots];
+
+		for (Map.Entry<Long, ScoredClobberMove> entry : moves.entrySet()) {
+			long key = entry.getKey();
+			ScoredClobberMove move = entry.getValue();
+			int i = (int)key & (slots - 1);
+
+			while (packed[i] != 0) {
+				i = (i + 1) & (slots - 1);
+			}
+
+			keys[i] = key;
+			packed[i] = (ClobberState.index(move.row1, move.col1) << 8) | ClobberState.index(move.row2, move.col2);
+			scores[i] = (float)move.score;
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(plies);
+		out.writeInt(depth);
+		out.writeInt(slots);
+
+		for (int i = 0; i < slots; i++) {
+			out.writeLong(keys[i]);
+			out.writeInt(packed[i]);
+			out.writeFloat(scores[i]);
+		}
+
+		out.close();
+	}
+}
@@ -0,0 +1,367 @@
+package clobber;
+
+import java.io.*;
+import java.util.*;
+
+import game.GameState;
+
+/**
+ * A stone evaluation driven by a table of 3x3 patterns.  The eight cells around a stone are
+ * read straight from the bitboards into a pattern number, the owner's stones in the low byte
+ * and the other side's in the high byte, and the stone's score is the table entry for that
+ * pattern.  Cells off the board read as empty, as they do in the hand-written heuristics.
+ *
+ * A player compiles its hand-written heuristic into a table when it starts, unless its
+ * configuration names a table file, so the heuristic can be retuned without changing code.
+ * Running this class writes table files:
+ * 		compile shill|abt [file]					- the named heuristic as a table
+ * 		tune shill|table [games] [file]				- a table tuned on the results of games
+ * AlphaBetaThreaded scores a position by the ratio of the two sides' totals, not by their
+ * difference, so a table tuned here does not fit it and "tune abt" is refused.
+ *
+ * The file is written big-endian and holds MAGIC, VERSION and the number of entries (ints),
+ * then one weight (float) for each pattern.
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class PatternTable implements StoneEvaluator {
+
+	public static final int PATTERNS = 1 << 16;					// Patterns of 8 cells, 2 colours
+	public static final int DEFAULT_GAMES = 20000;				// Games tuned on by default
+	public static final int EPOCHS = 10;						// Passes over the tuning positions
+	public static final double RATE = 0.01;						// Step size while tuning
+	public static final double SCALE = 0.3;						// Score difference to log-odds
+
+	private static final int MAGIC = 0x434C5054;				// "CLPT"
+	private static final int VERSION = 1;
+
+	private final float[] weights;
+
+	private PatternTable(float[] weights) {
+		this.weights = weights;
+	}
+
+	/**
+	 * Finds the pattern of the cells around a stone.
+	 *
+	 * @param mine		: the stones of the stone's owner
+	 * @param opp		: the stones of the other side
+	 * @param index		: the index of the stone's cell
+	 * @return			: the pattern number
+	 */
+	public static int pattern(long mine, long opp, int index) {
+		return block(mine, index) | (block(opp, index) << 8);
+	}
+
+	/**
+	 * Gathers the 3x3 block around a cell into 8 bits, row by row, leaving out the centre.
+	 * Shifting the mask up by a row and a column first means the block never starts below
+	 * bit 0; the guard column supplies the empty cells past either side of the board.
+	 */
+	private static int block(long stones, int index) {
+		final int W = ClobberState.WIDTH;
+		long padded = (stones << (W + 1)) >>> index;
+		int bits = (int)(padded & 7) | (int)((padded >>> W) & 7) << 3 | (int)((padded >>> (2 * W)) & 7) << 6;
+
+		return (bits & 0xF) | ((bits >>> 1) & 0xF0);
+	}
+
+	public float score(ClobberState state, int row, int col) {
+		int i = ClobberState.index(row, col);
+
+		return ((state.home & (1L << i)) != 0 ?
+				weights[pattern(state.home, state.away, i)] : weights[pattern(state.away, state.home, i)]);
+	}
+
+	/**
+	 * Adds up the scores of one side's stones.
+	 *
+	 * @param mine		: the side's stones
+	 * @param opp		: the other side's stones
+	 * @return			: the total score
+	 */
+	public float sum(long mine, long opp) {
+		float total = 0;
+
+		for (long m = mine; m != 0; m &= m - 1) {
+			total += weights[pattern(mine, opp, Long.numberOfTrailingZeros(m))];
+		}
+
+		return total;
+	}
+
+	/**
+	 * Finds the table a player should evaluate with: the file named by a configuration key,
+	 * or else its hand-written heuristic compiled into a table.
+	 *
+	 * @param key		: the configuration key naming the table file
+	 * @param heuristic	: the heuristic to compile when no file is configured
+	 * @return			: the table
+	 */
+	public static PatternTable load(String key, StoneEvaluator heuristic) {
+		if (ClobberState.gameParams.defined(key)) {
+			PatternTable table = open("config" + ClobberState.SEP + ClobberState.gameParams.string(key));
+
+			if (table != null) {
+				return table;
+			}
+		}
+
+		return compile(heuristic);
+	}
+
+	/**
+	 * Reads a pattern table.
+	 *
+	 * @param fname		: the name of the table file
+	 * @return			: the table, or null if the file is missing or unreadable
+	 */
+	public static PatternTable open(String fname) {
+		File file = new File(fname);
+
+		if (!file.exists()) {
+			System.err.println("No pattern table " + fname + "; the built-in heuristic will be used");
+			return null;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != PATTERNS) {
+					System.err.println("Pattern table " + fname + " has the wrong format");
+					return null;
+				}
+
+				float[] weights = new float[PATTERNS];
+				for (int p = 0; p < PATTERNS; p++) {
+					weights[p] = in.readFloat();
+				}
+
+				return new PatternTable(weights);
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			System.err.println("Could not read pattern table " + fname);
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the table in the format described above.
+	 *
+	 * @param fname		: the name of the table file
+	 */
+	public void write(String fname) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(PATTERNS);
+
+		for (int p = 0; p < PATTERNS; p++) {
+			out.writeFloat(weights[p]);
+		}
+
+		out.close();
+	}
+
+	/**
+	 * Builds the table for a heuristic by scoring a stone surrounded by each pattern in turn.
+	 * The heuristic must only look at the 3x3 block around the stone, and score both colours
+	 * alike.
+	 *
+	 * @param heuristic	: the heuristic to compile
+	 * @return			: the table
+	 */
+	public static PatternTable compile(StoneEvaluator heuristic) {
+		float[] weights = new float[PATTERNS];
+		ClobberState state = new ClobberState();
+
+		for (int r = 0; r < ClobberState.ROWS; r++) {
+			for (int c = 0; c < ClobberState.COLS; c++) {
+				state.set(r, c, ClobberState.emptySym);
+			}
+		}
+		state.set(1, 1, ClobberState.homeSym);
+
+		for (int p = 0; p < PATTERNS; p++) {
+			// A cell cannot hold both colours
+			if ((p & (p >>> 8) & 0xFF) != 0) {
+				continue;
+			}
+
+			for (int k = 0; k < 8; k++) {
+				int cell = (k < 4 ? k : k + 1);
+				char sym = ((p >>> k) & 1) != 0 ? ClobberState.homeSym :
+						((p >>> (k + 8)) & 1) != 0 ? ClobberState.awaySym : ClobberState.emptySym;
+				state.set(cell / 3, cell % 3, sym);
+			}
+
+			weights[p] = heuristic.score(state, 1, 1);
+		}
+
+		return new PatternTable(weights);
+	}
+
+	/**
+	 * Compiles or tunes a pattern table and writes it to a file.
+	 *
+	 * @param args		: "compile" and the heuristic, or "tune", the starting heuristic or
+	 * 					  table file and the number of games; then the output file
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2 || !(args[0].equals("compile") || args[0].equals("tune"))) {
+			System.err.println("usage: PatternTable compile shill|abt [file]");
+			System.err.println("       PatternTable tune shill|table [games] [file]");
+			return;
+		}
+		if (args[0].equals("tune") && args[1].equals("abt")) {
+			System.err.println("AlphaBetaThreaded divides one side's total by the other's; " +
+					"tuning fits their difference, so its table cannot be tuned");
+			return;
+		}
+
+		boolean tune = args[0].equals("tune");
+		PatternTable table = (args[1].equals("shill") ? compile(ShillPlayer.HEURISTIC) :
+				args[1].equals("abt") ? compile(AlphaBetaThreaded.HEURISTIC) : open(args[1]));
+		if (table == null) {
+			return;
+		}
+
+		int games = (tune && args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_GAMES);
+		String fname = (args.length > (tune ? 3 : 2) ? args[tune ? 3 : 2] : "patterns.bin");
+		long start = System.nanoTime();
+
+		if (tune) {
+			table = tune(table, games);
+		}
+
+		try {
+			table.write(fname);
+		}
+		catch (IOException e) {
+			System.err.println("Could not write pattern table " + fname);
+			e.printStackTrace();
+			return;
+		}
+
+		System.out.printf("Pattern table written to %s in %.1f secs%n", fname, (System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * Tunes a table so that the difference between the two sides' totals predicts who wins.
+	 * The positions come from games of random moves, each labelled with its game's winner,
+	 * and the weights are fitted by logistic regression.  Patterns that are reflections or
+	 * rotations of one another share a weight, so rare patterns learn from common ones.
+	 */
+	private static PatternTable tune(PatternTable start, int games) {
+		int[] canon = canonicalPatterns();
+		double[] w = new double[PATTERNS];
+		for (int p = 0; p < PATTERNS; p++) {
+			w[p] = start.weights[canon[p]];
+		}
+
+		// Play the games, keeping every position and the game's result for home
+		List<long[]> positions = new ArrayList<long[]>();
+		Random random = new Random(1);
+		List<ScoredClobberMove> moves = new ArrayList<ScoredClobberMove>();
+
+		for (int g = 0; g < games; g++) {
+			ClobberState state = new ClobberState();
+			int first = positions.size();
+
+			while (state.getStatus() == GameState.Status.GAME_ON) {
+				positions.add(new long[] { state.home, state.away, 0 });
+				moves.clear();
+				state.getMoves(moves);
+				state.makeMove(moves.get(random.nextInt(moves.size())));
+			}
+
+			long result = (state.getStatus() == GameState.Status.HOME_WIN ? 1 : 0);
+			for (int i = first; i < positions.size(); i++) {
+				positions.get(i)[2] = result;
+			}
+		}
+
+		System.out.printf("Tuning on %d positions from %d games%n", positions.size(), games);
+
+		for (int epoch = 0; epoch < EPOCHS; epoch++) {
+			Collections.shuffle(positions, random);
+			double loss = 0;
+
+			for (long[] pos : positions) {
+				long home = pos[0], away = pos[1];
+				double score = 0;
+
+				for (long m = home; m != 0; m &= m - 1) {
+					score += w[canon[pattern(home, away, Long.numberOfTrailingZeros(m))]];
+				}
+				for (long m = away; m != 0; m &= m - 1) {
+					score -= w[canon[pattern(away, home, Long.numberOfTrailingZeros(m))]];
+				}
+
+				double predicted = 1 / (1 + Math.exp(-SCALE * score));
+				double error = pos[2] - predicted;
+				loss += error * error;
+
+				double step = RATE * SCALE * error;
+				for (long m = home; m != 0; m &= m - 1) {
+					w[canon[pattern(home, away, Long.numberOfTrailingZeros(m))]] += step;
+				}
+				for (long m = away; m != 0; m &= m - 1) {
+					w[canon[pattern(away, home, Long.numberOfTrailingZeros(m))]] -= step;
+				}
+			}
+
+			System.out.printf("Epoch %d: mean squared error %.5f%n", epoch + 1, loss / positions.size());
+		}
+
+		float[] weights = new float[PATTERNS];
+		for (int p = 0; p < PATTERNS; p++) {
+			weights[p] = (float)w[canon[p]];
+		}
+
+		return new PatternTable(weights);
+	}
+
+	/**
+	 * Maps every pattern to the smallest pattern among its reflections and rotations.
+	 */
+	private static int[] canonicalPatterns() {
+		// Where each of the 8 cells goes under each isometry of the 3x3 block
+		int[][] moves = new int[8][8];
+		for (int t = 0; t < 8; t++) {
+			for (int k = 0; k < 8; k++) {
+				int cell = (k < 4 ? k : k + 1);
+				int dr = cell / 3 - 1, dc = cell % 3 - 1;
+				if ((t & 4) != 0) { int x = dr; dr = dc; dc = x; }
+				if ((t & 2) != 0) dr = -dr;
+				if ((t & 1) != 0) dc = -dc;
+				int to = (dr + 1) * 3 + dc + 1;
+				moves[t][k] = (to < 4 ? to : to - 1);
+			}
+		}
+
+		int[] canon = new int[PATTERNS];
+		for (int p = 0; p < PATTERNS; p++) {
+			int least = p;
+
+			for (int t = 1; t < 8; t++) {
+				int q = 0;
+				for (int k = 0; k < 8; k++) {
+					q |= ((p >>> k) & 1) << moves[t][k];
+					q |= ((p >>> (k + 8)) & 1) << (moves[t][k] + 8);
+				}
+				least = Math.min(least, q);
+			}
+
+			canon[p] = least;
+		}
+
+		return canon;
+	}
+}
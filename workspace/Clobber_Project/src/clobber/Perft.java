@@ -0,0 +1,301 @@
+package clobber;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+import game.GameState;
+import game.Util;
+
+/**
+ * Counts the positions reached by every line of play to a fixed depth from a position, to
+ * measure how fast moves are generated and made, and to check a move generator against
+ * another.  Running this class:
+ * 		perft depth [threads] [position ...]		- counts from each position, the starting
+ * 													  board if none is given
+ * 		check depth [positions] [seed]				- compares the generators on positions from
+ * 													  real games, then times each of them
+ * A position is given as its message string, such as "RWRWR...W[HOME 0 GAME_ON]".  With more
+ * than one thread, the moves from the root are counted in parallel.
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class Perft {
+
+	public static final int DEFAULT_POSITIONS = 200;			// Positions checked by default
+
+	/**
+	 * Generates the legal moves of a position, in the order of a row-major scan.
+	 */
+	public interface Generator {
+
+		/**
+		 * @param state		: the position
+		 * @param list		: receives the moves
+		 */
+		void moves(ClobberState state, List<ScoredClobberMove> list);
+	}
+
+	/**
+	 * The reference generator: tries every direction from every cell, checking each move on
+	 * the character board as ClobberState did before it kept bitboards
+	 */
+	public static final Generator SCAN = new Generator() {
+		public void moves(ClobberState state, List<ScoredClobberMove> list) {
+			ClobberMove move = new ClobberMove();
+
+			for (int r = 0; r < ClobberState.ROWS; r++) {
+				for (int c = 0; c < ClobberState.COLS; c++) {
+					for (int d = 0; d < ClobberState.DROW.length; d++) {
+						move.row1 = r;
+						move.col1 = c;
+						move.row2 = r + ClobberState.DROW[d];
+						move.col2 = c + ClobberState.DCOL[d];
+
+						if (moveOK(state, move)) {
+							list.add(new ScoredClobberMove(r, c, move.row2, move.col2, 0));
+						}
+					}
+				}
+			}
+		}
+	};
+
+	/**
+	 * The check ClobberState.moveOK made on the character board before the bitboards, kept
+	 * here so that the bitboard generator is compared against code it does not share.
+	 *
+	 * @param state		: the position
+	 * @param mv		: the move
+	 * @return			: whether the side to move can make the move
+	 */
+	private static boolean moveOK(ClobberState state, ClobberMove mv) {
+		char PLAYER = state.who == GameState.Who.HOME ? ClobberState.homeSym : ClobberState.awaySym;
+		char OPP = state.who == GameState.Who.HOME ? ClobberState.awaySym : ClobberState.homeSym;
+		int rowDiff = mv.row1 - mv.row2;
+		int colDiff = mv.col1 - mv.col2;
+		return state.status == GameState.Status.GAME_ON &&
+			Util.inrange(mv.row1, 0, ClobberState.ROWS-1) && Util.inrange(mv.row2, 0, ClobberState.ROWS-1) &&
+			Util.inrange(mv.col1, 0, ClobberState.COLS-1) && Util.inrange(mv.col2, 0, ClobberState.COLS-1) &&
+			((Math.abs(rowDiff) == 1 && Math.abs(colDiff) == 0) ||
+			 (Math.abs(rowDiff) == 0 && Math.abs(colDiff) == 1)) &&
+			state.board[mv.row1][mv.col1] == PLAYER &&
+			state.board[mv.row2][mv.col2] == OPP;
+	}
+
+	/** The generator the players use, which reads the moves off the bitboards **/
+	public static final Generator BITBOARD = new Generator() {
+		public void moves(ClobberState state, List<ScoredClobberMove> list) {
+			state.getMoves(list);
+		}
+	};
+
+	private final Generator generator;
+	private final List<List<ScoredClobberMove>> lists = new ArrayList<List<ScoredClobberMove>>();
+	private final List<GameState.Undo> undos = new ArrayList<GameState.Undo>();
+
+	/**
+	 * Constructs a counter.  A counter keeps a move list and an undo record for each depth,
+	 * so it must only be used by one thread.
+	 *
+	 * @param generator		: the move generator to count with
+	 */
+	public Perft(Generator generator) {
+		this.generator = generator;
+	}
+
+	/**
+	 * Counts the positions at a depth below a position.
+	 *
+	 * @param state		: the position, which is left as it was
+	 * @param depth		: the depth
+	 * @return			: the number of positions at the depth
+	 */
+	public long count(ClobberState state, int depth) {
+		return count(state, depth, 0);
+	}
+
+	private long count(ClobberState state, int depth, int ply) {
+		if (depth == 0) {
+			return 1;
+		}
+
+		if (lists.size() == ply) {
+			lists.add(new ArrayList<ScoredClobberMove>());
+			undos.add(new GameState.Undo());
+		}
+		List<ScoredClobberMove> moves = lists.get(ply);
+		GameState.Undo undo = undos.get(ply);
+		moves.clear();
+		generator.moves(state, moves);
+
+		// The moves from the last ply are the positions at the depth
+		if (depth == 1) {
+			return moves.size();
+		}
+
+		long nodes = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			state.makeMove(moves.get(i), undo);
+			nodes += count(state, depth - 1, ply + 1);
+			state.unmakeMove(undo);
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * Counts the positions at a depth below a position, counting below each move from the
+	 * position on its own thread.
+	 *
+	 * @param state		: the position
+	 * @param depth		: the depth
+	 * @param generator	: the move generator to count with
+	 * @param executor	: runs the counts below the moves
+	 * @return			: the number of positions at the depth
+	 */
+	public static long count(ClobberState state, final int depth, final Generator generator,
+			ExecutorService executor) throws InterruptedException, ExecutionException {
+		if (depth <= 1) {
+			return new Perft(generator).count(state, depth);
+		}
+
+		List<ScoredClobberMove> moves = new ArrayList<ScoredClobberMove>();
+		generator.moves(state, moves);
+		List<Future<Long>> results = new ArrayList<Future<Long>>();
+
+		for (ScoredClobberMove move : moves) {
+			final ClobberState child = (ClobberState)state.clone();
+			child.makeMove(move);
+
+			results.add(executor.submit(new Callable<Long>() {
+				public Long call() {
+					return new Perft(generator).count(child, depth - 1);
+				}
+			}));
+		}
+
+		long nodes = 0;
+		for (Future<Long> result : results) {
+			nodes += result.get();
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * Runs perft or the generator check.
+	 *
+	 * @param args		: "perft" or "check", then their arguments as described above
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2 || !(args[0].equals("perft") || args[0].equals("check"))) {
+			System.err.println("usage: Perft perft depth [threads] [position ...]");
+			System.err.println("       Perft check depth [positions] [seed]");
+			return;
+		}
+
+		int depth = Integer.parseInt(args[1]);
+
+		if (args[0].equals("perft")) {
+			int threads = (args.length > 2 ? Integer.parseInt(args[2]) : 1);
+			List<ClobberState> positions = new ArrayList<ClobberState>();
+
+			for (int i = 3; i < args.length; i++) {
+				ClobberState state = new ClobberState();
+				state.parseMsgString(args[i]);
+				positions.add(state);
+			}
+			if (positions.isEmpty()) {
+				positions.add(new ClobberState());
+			}
+
+			perft(positions, depth, threads);
+		}
+		else {
+			int count = (args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_POSITIONS);
+			long seed = (args.length > 3 ? Long.parseLong(args[3]) : Benchmark.DEFAULT_SEED);
+
+			check(Benchmark.corpus(new File(GameDump.DEFAULT_DIR), count, seed), depth);
+		}
+	}
+
+	/**
+	 * Counts from each position, printing the count and the rate for each depth up to the one
+	 * specified.
+	 */
+	private static void perft(List<ClobberState> positions, int depth, int threads) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		for (ClobberState state : positions) {
+			System.out.println(state);
+
+			for (int d = 1; d <= depth; d++) {
+				long start = System.nanoTime();
+				long nodes = (threads > 1 ? count(state, d, BITBOARD, executor) :
+						new Perft(BITBOARD).count(state, d));
+				double secs = (System.nanoTime() - start) / 1e9;
+
+				System.out.printf("perft(%d) = %d in %.3f secs, %.0f nodes/sec%n", d, nodes, secs, nodes / secs);
+			}
+		}
+
+		executor.shutdown();
+	}
+
+	/**
+	 * Checks that the generators give the same moves in the same order at every position
+	 * below each position, then times each generator over the same counts.
+	 */
+	private static void check(List<ClobberState> positions, int depth) {
+		final List<ScoredClobberMove> expected = new ArrayList<ScoredClobberMove>();
+		final int[] mismatches = new int[1];
+
+		Generator compared = new Generator() {
+			public void moves(ClobberState state, List<ScoredClobberMove> list) {
+				expected.clear();
+				SCAN.moves(state, expected);
+				BITBOARD.moves(state, list);
+
+				boolean same = (expected.size() == list.size());
+				for (int i = 0; same && i < list.size(); i++) {
+					same = expected.get(i).sameAs(list.get(i));
+				}
+
+				if (!same && mismatches[0]++ < 10) {
+					System.err.println("Generators differ at " + state.msgString());
+					System.err.println("  scan:     " + expected);
+					System.err.println("  bitboard: " + list);
+				}
+			}
+		};
+
+		long nodes = 0;
+		for (ClobberState state : positions) {
+			nodes += new Perft(compared).count(state, depth);
+		}
+		System.out.printf("Checked %d positions to depth %d, %d nodes: %d mismatches%n",
+				positions.size(), depth, nodes, mismatches[0]);
+
+		// Time each generator twice, keeping the second run once the JIT has compiled it
+		double[] rates = new double[2];
+		Generator[] generators = { SCAN, BITBOARD };
+
+		for (int g = 0; g < generators.length; g++) {
+			for (int run = 0; run < 2; run++) {
+				Perft perft = new Perft(generators[g]);
+				long start = System.nanoTime();
+				long counted = 0;
+
+				for (ClobberState state : positions) {
+					counted += perft.count(state, depth);
+				}
+
+				rates[g] = counted / ((System.nanoTime() - start) / 1e9);
+			}
+		}
+
+		System.out.printf("scan %.0f nodes/sec, bitboard %.0f nodes/sec, %.2fx%n",
+				rates[0], rates[1], rates[1] / rates[0]);
+	}
+}
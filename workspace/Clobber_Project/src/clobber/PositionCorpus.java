@@ -0,0 +1,246 @@
+package clobber;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import game.GameState;
+
+/**
+ * A corpus of positions from real games, each labelled with how the games through it ended.
+ * The corpus is built offline by running this class, which replays every game record in Dumps,
+ * one record per core, and keeps each distinct position where the game is still on.  A game
+ * is recorded once for each of its players; only the first record of a game is counted.
+ *
+ * The file is written big-endian and holds MAGIC, VERSION and the number of positions (ints),
+ * then for each position the home and away stones (longs), the number of moves played times 2
+ * plus 1 if away is to move (byte), and the number of games through the position that home
+ * won and that away won (ints).
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class PositionCorpus {
+
+	public static final String DEFAULT_FILE = "corpus.bin";		// File name if none configured
+
+	private static final int MAGIC = 0x434C5043;				// "CLPC"
+	private static final int VERSION = 1;
+
+	/**
+	 * A position and the results of the games that reached it.
+	 */
+	public static class Entry {
+
+		public final ClobberState state;
+		public int homeWins;
+		public int awayWins;
+
+		Entry(ClobberState state) {
+			this.state = state;
+		}
+
+		/**
+		 * @return			: the share of the games through the position that home won, or
+		 * 					  one half if none of them was won
+		 */
+		public double homeScore() {
+			int games = homeWins + awayWins;
+			return (games > 0 ? (double)homeWins / games : 0.5);
+		}
+	}
+
+	/**
+	 * Reads the corpus named by CORPUSFILE in the Clobber configuration.
+	 *
+	 * @return			: the positions, or null if there is no corpus
+	 */
+	public static List<Entry> load() {
+		return read("config" + ClobberState.SEP + (ClobberState.gameParams.defined("CORPUSFILE") ?
+				ClobberState.gameParams.string("CORPUSFILE") : DEFAULT_FILE));
+	}
+
+	/**
+	 * Reads a corpus file.
+	 *
+	 * @param fname		: the name of the corpus file
+	 * @return			: the positions, or null if the file is missing or unreadable
+	 */
+	public static List<Entry> read(String fname) {
+		File file = new File(fname);
+
+		if (!file.exists()) {
+			return null;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					System.err.println("Position corpus " + fname + " has the wrong format");
+					return null;
+				}
+
+				int count = in.readInt();
+				List<Entry> entries = new ArrayList<Entry>(count);
+
+				for (int i = 0; i < count; i++) {
+					long home = in.readLong();
+					long away = in.readLong();
+					int moves = in.readByte();
+					Entry entry = new Entry(state(home, away, moves >> 1, (moves & 1) == 0));
+					entry.homeWins = in.readInt();
+					entry.awayWins = in.readInt();
+					entries.add(entry);
+				}
+
+				return entries;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			System.err.println("Could not read position corpus " + fname);
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Rebuilds a state from its stones through its message string.
+	 */
+	private static ClobberState state(long home, long away, int numMoves, boolean homeToMove) {
+		StringBuilder msg = new StringBuilder();
+
+		for (int r = ClobberState.ROWS - 1; r >= 0; r--) {
+			for (int c = 0; c < ClobberState.COLS; c++) {
+				long bit = 1L << ClobberState.index(r, c);
+				msg.append((home & bit) != 0 ? ClobberState.homeSym :
+						(away & bit) != 0 ? ClobberState.awaySym : ClobberState.emptySym);
+			}
+		}
+		msg.append("[" + (homeToMove ? "HOME" : "AWAY") + " " + numMoves + " GAME_ON]");
+
+		ClobberState state = new ClobberState();
+		state.parseMsgString(msg.toString());
+		return state;
+	}
+
+	/**
+	 * Replays the game records and writes the corpus.
+	 *
+	 * @param args		: the directory of game records, then the file name; both optional
+	 */
+	public static void main(String[] args) {
+		File dir = new File(args.length > 0 ? args[0] : GameDump.DEFAULT_DIR);
+		String fname = (args.length > 1 ? args[1] : "config" + ClobberState.SEP +
+				(ClobberState.gameParams.defined("CORPUSFILE") ?
+						ClobberState.gameParams.string("CORPUSFILE") : DEFAULT_FILE));
+		long start = System.nanoTime();
+
+		List<File> files = GameDump.find(dir);
+		System.out.printf("Replaying %d game records from %s%n", files.size(), dir);
+
+		Collection<Entry> entries = replay(files);
+
+		try {
+			write(fname, entries);
+		}
+		catch (IOException e) {
+			System.err.println("Could not write position corpus " + fname);
+			e.printStackTrace();
+			return;
+		}
+
+		System.out.printf("%d positions written to %s in %.1f secs%n", entries.size(), fname,
+				(System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * Replays each record on its own core, then merges the games in the order of their records
+	 * so that the corpus is the same on every run.
+	 */
+	private static Collection<Entry> replay(List<File> files) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<GameDump.Game>> results = new ArrayList<Future<GameDump.Game>>();
+
+		for (final File file : files) {
+			results.add(executor.submit(new Callable<GameDump.Game>() {
+				public GameDump.Game call() throws IOException {
+					return GameDump.replay(file);
+				}
+			}));
+		}
+
+		Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>();
+		Set<String> seen = new HashSet<String>();
+		int games = 0, bad = 0;
+
+		for (int i = 0; i < results.size(); i++) {
+			GameDump.Game game;
+
+			try {
+				game = results.get(i).get();
+			}
+			catch (ExecutionException e) {
+				System.err.println("Skipping " + files.get(i) + ": " + e.getCause().getMessage());
+				bad++;
+				continue;
+			}
+			catch (InterruptedException e) {
+				System.err.println("Interrupted while replaying " + files.get(i));
+				Thread.currentThread().interrupt();
+				break;
+			}
+
+			// The other player's record of the same game adds nothing
+			if (!seen.add(game.id)) {
+				continue;
+			}
+			games++;
+
+			for (ClobberState state : game.positions) {
+				if (state.getStatus() != GameState.Status.GAME_ON) {
+					continue;
+				}
+
+				Entry entry = entries.get(state.key);
+				if (entry == null) {
+					entry = new Entry(state);
+					entries.put(state.key, entry);
+				}
+
+				if (game.result == GameState.Status.HOME_WIN) entry.homeWins++;
+				else if (game.result == GameState.Status.AWAY_WIN) entry.awayWins++;
+			}
+		}
+
+		executor.shutdown();
+		System.out.printf("%d games replayed, %d records skipped%n", games, bad);
+
+		return entries.values();
+	}
+
+	/**
+	 * Writes the positions to a file in the format described above.
+	 */
+	private static void write(String fname, Collection<Entry> entries) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(entries.size());
+
+		for (Entry entry : entries) {
+			ClobberState state = entry.state;
+			out.writeLong(state.home);
+			out.writeLong(state.away);
+			out.writeByte(state.getNumMoves() * 2 + (state.getWho() == GameState.Who.HOME ? 0 : 1));
+			out.writeInt(entry.homeWins);
+			out.writeInt(entry.awayWins);
+		}
+
+		out.close();
+	}
+}
@@ -13,33 +13,7 @@ public class RandomClobberPlayer extends GamePlayer {
 	{
 		ClobberState board = (ClobberState)state;
 		ArrayList<ClobberMove> list = new ArrayList<ClobberMove>();  
-		ClobberMove mv = new ClobberMove();
-		for (int r=0; r<ClobberState.ROWS; r++) {
-			for (int c=0; c<ClobberState.COLS; c++) {
-				mv.row1 = r;
-				mv.col1 = c;
-				mv.row2 = r-1;
-				mv.col2 = c;
-				if (board.moveOK(mv)) {
-					list.add((ClobberMove)mv.clone());
-				}
-				mv.row2 = r+1;
-				mv.col2 = c;
-				if (board.moveOK(mv)) {
-					list.add((ClobberMove)mv.clone());
-				}
-				mv.row2 = r;
-				mv.col2 = c-1;
-				if (board.moveOK(mv)) {
-					list.add((ClobberMove)mv.clone());
-				}
-				mv.row2 = r;
-				mv.col2 = c+1;
-				if (board.moveOK(mv)) {
-					list.add((ClobberMove)mv.clone());
-				}
-			}
-		}
+		board.getMoves(list);
 		int which = Util.randInt(0, list.size()-1);
 		return list.get(which);
 	}
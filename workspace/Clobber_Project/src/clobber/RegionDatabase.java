@@ -0,0 +1,302 @@
+package clobber;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A file of region values solved ahead of time, so that a player never has to solve the
+ * regions it holds during a game.  The file is built offline by running this class, which
+ * solves every region that fits on the configured board up to a given number of stones.
+ * Players map the file into memory; looking up a region costs one hash probe, and the values
+ * it refers to are rebuilt only when first used.
+ *
+ * The file is written big-endian and holds, in order:
+ * 		- a header: MAGIC, VERSION, the largest region in stones, the number of values and
+ * 		  the number of table slots
+ * 		- the canonical values, each as the numbers of its Left and Right options (shorts)
+ * 		  followed by the options themselves, as the numbers of earlier values (ints); an
+ * 		  index of where each value starts comes first
+ * 		- an open-addressed hash table of region shapes, each slot holding the shape's box
+ * 		  (int), home and away stones (longs) and its value number (int, -1 if empty)
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class RegionDatabase {
+
+	public static final String DEFAULT_FILE = "regions.bin";	// File name if none configured
+	public static final int DEFAULT_STONES = Regions.MAX_STONES;	// Largest region built by default
+
+	private static final int MAGIC = 0x434C5256;				// "CLRV"
+	private static final int VERSION = 1;
+	private static final int HEADER = 20;						// Bytes in the header
+	private static final int SLOT = 24;							// Bytes in a table slot
+
+	private final MappedByteBuffer buffer;
+	private final int stones;									// Largest region held
+	private final int slots;									// Table slots, a power of 2
+	private final int tableStart;								// Offset of the hash table
+	private final AtomicReferenceArray<GameValue> values;		// Values rebuilt so far
+
+	private RegionDatabase(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		this.stones = buffer.getInt(8);
+		int count = buffer.getInt(12);
+		this.slots = buffer.getInt(16);
+		this.tableStart = buffer.capacity() - slots * SLOT;
+		this.values = new AtomicReferenceArray<GameValue>(count);
+	}
+
+	/**
+	 * Maps a region database into memory.
+	 *
+	 * @param fname		: the name of the database file
+	 * @return			: the database, or null if the file is missing or unreadable
+	 */
+	public static RegionDatabase open(String fname) {
+		File file = new File(fname);
+
+		if (!file.exists()) {
+			System.err.println("No region database " + fname + "; only small regions will be solved");
+			return null;
+		}
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			raf.close();
+
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+				System.err.println("Region database " + fname + " has the wrong format");
+				return null;
+			}
+
+			return new RegionDatabase(buffer);
+		}
+		catch (IOException e) {
+			System.err.println("Could not map region database " + fname);
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @return			: the number of stones in the largest regions the database holds
+	 */
+	int stones() {
+		return stones;
+	}
+
+	/**
+	 * Looks up the value of a region shape.
+	 *
+	 * @param shape		: the canonical shape of the region
+	 * @return			: the value of the shape, or null if the database does not hold it
+	 */
+	GameValue lookup(Regions.Shape shape) {
+		int mask = slots - 1;
+
+		for (int i = shape.hashCode() & mask; ; i = (i + 1) & mask) {
+			int at = tableStart + i * SLOT;
+			int number = buffer.getInt(at + 20);
+
+			if (number < 0) {
+				return null;
+			}
+			if (buffer.getInt(at) == shape.dims && buffer.getLong(at + 4) == shape.home &&
+					buffer.getLong(at + 12) == shape.away) {
+				return value(number);
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds a stored value, and the values of its options, on first use.  Search threads
+	 * look values up at once without locking; threads that rebuild the same value together
+	 * get the same interned GameValue.
+	 */
+	private GameValue value(int number) {
+		GameValue value = values.get(number);
+
+		if (value == null) {
+			int at = buffer.getInt(HEADER + 4 * number);
+			GameValue[] left = new GameValue[buffer.getShort(at)];
+			GameValue[] right = new GameValue[buffer.getShort(at + 2)];
+			at += 4;
+
+			for (int i = 0; i < left.length; i++, at += 4) {
+				left[i] = value(buffer.getInt(at));
+			}
+			for (int i = 0; i < right.length; i++, at += 4) {
+				right[i] = value(buffer.getInt(at));
+			}
+
+			value = GameValue.canonical(left, right);
+			values.set(number, value);
+		}
+
+		return value;
+	}
+
+	/**
+	 * Solves every region on the configured board up to a number of stones and writes the
+	 * values to a region database.
+	 *
+	 * @param args		: the largest region in stones, then the file name; both are optional
+	 */
+	public static void main(String[] args) {
+		int stones = (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_STONES);
+		String fname = (args.length > 1 ? args[1] : "config" + ClobberState.SEP +
+				(ClobberState.gameParams.defined("REGIONFILE") ?
+						ClobberState.gameParams.string("REGIONFILE") : DEFAULT_FILE));
+		long start = System.nanoTime();
+
+		solveAll(stones, true);
+
+		try {
+			write(fname, stones, Regions.solved());
+		}
+		catch (IOException e) {
+			System.err.println("Could not write region database " + fname);
+			e.printStackTrace();
+			return;
+		}
+
+		System.out.printf("%d region shapes up to %d stones written to %s in %.1f secs%n",
+				Regions.solved().size(), stones, fname, (System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * Solves every colouring of every connected set of cells up to a size.  The sets are
+	 * grown one neighbouring cell at a time over every placement on the board, so that a
+	 * shape which only fits the board one way round is still found.
+	 *
+	 * @param stones	: the largest region in stones
+	 * @param report	: whether to print the shapes solved at each size
+	 */
+	static void solveAll(int stones, boolean report) {
+		Set<Long> placements = new HashSet<Long>();
+
+		for (long m = ClobberState.CELLS; m != 0; m &= m - 1) {
+			placements.add(m & -m);
+		}
+
+		for (int size = 1; size <= stones && !placements.isEmpty(); size++) {
+			Set<Regions.Shape> seen = new HashSet<Regions.Shape>();
+			Set<Long> grown = new HashSet<Long>();
+
+			for (long cells : placements) {
+				// Colour each shape once, whichever placement of it comes first
+				if (seen.add(new Regions.Shape(cells, 0))) {
+					for (int colours = 1; colours < (1 << size) - 1; colours++) {
+						long home = deposit(colours, cells);
+						Regions.value(home, cells & ~home);
+					}
+				}
+
+				if (size < stones) {
+					for (long m = ClobberState.neighbours(cells) & ~cells; m != 0; m &= m - 1) {
+						grown.add(cells | (m & -m));
+					}
+				}
+			}
+
+			if (report) {
+				System.out.printf("%d stones: %d shapes, %d solved so far%n", size, seen.size(),
+						Regions.solved().size());
+			}
+			placements = grown;
+		}
+	}
+
+	/**
+	 * Spreads the low bits of a number over the set bits of a mask, lowest first.
+	 */
+	private static long deposit(int bits, long mask) {
+		long result = 0;
+
+		for (long m = mask; m != 0 && bits != 0; m &= m - 1, bits >>>= 1) {
+			if ((bits & 1) != 0) {
+				result |= m & -m;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Writes region values to a file in the format described above.
+	 */
+	private static void write(String fname, int stones, Map<Regions.Shape, GameValue> solved)
+			throws IOException {
+
+		// Number the values so that options come before the values that use them
+		Map<GameValue, Integer> numbers = new IdentityHashMap<GameValue, Integer>();
+		List<GameValue> order = new ArrayList<GameValue>();
+
+		for (GameValue value : solved.values()) {
+			number(value, numbers, order);
+		}
+
+		int slots = Integer.highestOneBit(Math.max(1, solved.size() * 2 - 1)) << 1;
+		int[] dims = new int[slots];
+		long[] home = new long[slots];
+		long[] away = new long[slots];
+		int[] value = new int[slots];
+		Arrays.fill(value, -1);
+
+		for (Map.Entry<Regions.Shape, GameValue> entry : solved.entrySet()) {
+			Regions.Shape shape = entry.getKey();
+			int i = shape.hashCode() & (slots - 1);
+
+			while (value[i] >= 0) {
+				i = (i + 1) & (slots - 1);
+			}
+
+			dims[i] = shape.dims;
+			home[i] = shape.home;
+			away[i] = shape.away;
+			value[i] = numbers.get(entry.getValue());
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fname)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(stones);
+		out.writeInt(order.size());
+		out.writeInt(slots);
+
+		int at = HEADER + 4 * order.size();
+		for (GameValue g : order) {
+			out.writeInt(at);
+			at += 4 + 4 * (g.leftOptions().length + g.rightOptions().length);
+		}
+
+		for (GameValue g : order) {
+			out.writeShort(g.leftOptions().length);
+			out.writeShort(g.rightOptions().length);
+			for (GameValue option : g.leftOptions()) out.writeInt(numbers.get(option));
+			for (GameValue option : g.rightOptions()) out.writeInt(numbers.get(option));
+		}
+
+		for (int i = 0; i < slots; i++) {
+			out.writeInt(dims[i]);
+			out.writeLong(home[i]);
+			out.writeLong(away[i]);
+			out.writeInt(value[i]);
+		}
+
+		out.close();
+	}
+
+	private static void number(GameValue g, Map<GameValue, Integer> numbers, List<GameValue> order) {
+		if (!numbers.containsKey(g)) {
+			for (GameValue option : g.leftOptions()) number(option, numbers, order);
+			for (GameValue option : g.rightOptions()) number(option, numbers, order);
+			numbers.put(g, order.size());
+			order.add(g);
+		}
+	}
+}
@@ -0,0 +1,319 @@
+package clobber;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import game.GameState;
+
+/**
+ * Splits Clobber positions into independent regions and solves them as sums of games.
+ *
+ * A stone only ever moves onto a neighbouring stone, so regions of connected stones never
+ * merge and a move in one region cannot change another.  A position is therefore the sum of
+ * its regions: each turn the player to move picks one region and moves in it.  Regions of one
+ * colour have no moves and are dropped.  The value of every other region is worked out
+ * exactly as a GameValue and cached by the region's shape, which is independent of where the
+ * region sits on the board, of rotations and reflections, and of swapping the colours (which
+ * negates the value).  Adding the values of the regions tells who wins the whole position.
+ *
+ * Solving a region costs time exponential in its size, so regions are never solved during a
+ * search.  Their values come from the region database, which holds every region up to
+ * REGIONSTONES stones, or if there is no database from the small regions solved as the
+ * database is loaded; a position with any other live region is left to the search.
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class Regions {
+
+	public static final int DEFAULT_STONES = 10;		// Largest region solved if none configured
+	public static final int FALLBACK_STONES = 8;		// Largest region solved at load without a database
+
+	/** The largest region, in stones, that is solved exactly **/
+	public static final int MAX_STONES = (ClobberState.gameParams.integer("REGIONSTONES") > 0 ?
+			ClobberState.gameParams.integer("REGIONSTONES") : DEFAULT_STONES);
+
+	private static final Map<Shape, GameValue> values = new ConcurrentHashMap<Shape, GameValue>();
+	private static volatile RegionDatabase database;	// Values solved offline, if loaded
+	private static volatile int known;					// Largest region whose value is known
+
+	/**
+	 * Maps the region database named by REGIONFILE in the Clobber configuration, so that the
+	 * regions it holds never have to be solved during a game.  Loading is done once, however
+	 * many players call it; if there is no database, every region up to FALLBACK_STONES is
+	 * solved now instead, which takes a few seconds.
+	 */
+	public static synchronized void load() {
+		if (known == 0) {
+			String name = (ClobberState.gameParams.defined("REGIONFILE") ?
+					ClobberState.gameParams.string("REGIONFILE") : RegionDatabase.DEFAULT_FILE);
+			database = RegionDatabase.open("config" + ClobberState.SEP + name);
+
+			if (database != null) {
+				known = Math.min(MAX_STONES, database.stones());
+			}
+			else {
+				RegionDatabase.solveAll(Math.min(MAX_STONES, FALLBACK_STONES), false);
+				known = Math.min(MAX_STONES, FALLBACK_STONES);
+			}
+		}
+	}
+
+	/**
+	 * Solves a position exactly if every live region in it has a known value.  Nothing is
+	 * solved here and no lock is taken, so the search threads can call it at once; regions
+	 * larger than those loaded are never looked up.
+	 *
+	 * @param state		: the position to solve; its game must still be on
+	 * @return			: the player who wins with best play, or null if some value is not known
+	 */
+	public static GameState.Who winner(ClobberState state) {
+		long home = state.home;
+		long away = state.away;
+		long stones = home | away;
+		int limit = known;
+
+		// Check every region is small before looking any of them up
+		for (long rest = stones; rest != 0; ) {
+			long region = ClobberState.region(stones, rest & -rest);
+			rest &= ~region;
+
+			if (Long.bitCount(region) > limit && live(home, away, region)) {
+				return null;
+			}
+		}
+
+		GameValue sum = GameValue.ZERO_VALUE;
+
+		for (long rest = stones; rest != 0; ) {
+			long region = ClobberState.region(stones, rest & -rest);
+			rest &= ~region;
+
+			if (live(home, away, region)) {
+				GameValue value = known(home & region, away & region);
+				if (value == null) {
+					return null;
+				}
+				sum = sum.add(value);
+			}
+		}
+
+		switch (sum.outcome()) {
+			case GameValue.POSITIVE:	return GameState.Who.HOME;
+			case GameValue.NEGATIVE:	return GameState.Who.AWAY;
+			case GameValue.FUZZY:		return state.who;
+			default:					return state.who == GameState.Who.HOME ? GameState.Who.AWAY : GameState.Who.HOME;
+		}
+	}
+
+	/**
+	 * Works out the value of a position as the sum of its live regions.
+	 *
+	 * @param home		: mask of the home stones
+	 * @param away		: mask of the away stones
+	 * @return			: the value of the position, home being Left
+	 */
+	public static GameValue sum(long home, long away) {
+		long stones = home | away;
+		GameValue sum = GameValue.ZERO_VALUE;
+
+		for (long rest = stones; rest != 0; ) {
+			long region = ClobberState.region(stones, rest & -rest);
+			rest &= ~region;
+
+			if (live(home, away, region)) {
+				sum = sum.add(value(home & region, away & region));
+			}
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Looks up the value of a single region, working it out if its shape has not been seen.
+	 *
+	 * @param home		: mask of the region's home stones
+	 * @param away		: mask of the region's away stones
+	 * @return			: the value of the region, home being Left
+	 */
+	public static GameValue value(long home, long away) {
+		Shape shape = new Shape(home, away);
+		GameValue value = values.get(shape);
+
+		if (value == null) {
+			synchronized (values) {
+				value = values.get(shape);
+
+				if (value == null && database != null) {
+					value = database.lookup(shape);
+				}
+
+				if (value == null) {
+					value = solve(home, away);
+					value = (shape.negated ? value.negate() : value);
+				}
+
+				values.put(shape, value);
+			}
+		}
+
+		return shape.negated ? value.negate() : value;
+	}
+
+	/**
+	 * Looks up the value of a single region without solving it.  A value read from the
+	 * database is cached with the regions solved so far.
+	 *
+	 * @param home		: mask of the region's home stones
+	 * @param away		: mask of the region's away stones
+	 * @return			: the value of the region, home being Left, or null if it is not known
+	 */
+	private static GameValue known(long home, long away) {
+		Shape shape = new Shape(home, away);
+		GameValue value = values.get(shape);
+
+		if (value == null && database != null) {
+			value = database.lookup(shape);
+			if (value != null) {
+				values.put(shape, value);
+			}
+		}
+		if (value == null) {
+			return null;
+		}
+
+		return shape.negated ? value.negate() : value;
+	}
+
+	/**
+	 * @return			: the number of region shapes solved so far
+	 */
+	public static int cached() {
+		return values.size();
+	}
+
+	/**
+	 * @return			: every region value known so far, by shape
+	 */
+	static Map<Shape, GameValue> solved() {
+		return values;
+	}
+
+	/**
+	 * Works out the value of a region from the values of the positions each player can move
+	 * it to.  A capture can split the region, so each of those is a sum again.
+	 */
+	private static GameValue solve(long home, long away) {
+		List<GameValue> left = new ArrayList<GameValue>();
+		List<GameValue> right = new ArrayList<GameValue>();
+
+		for (int dir = 0; dir < 4; dir++) {
+			int step = ClobberState.DROW[dir] * ClobberState.WIDTH + ClobberState.DCOL[dir];
+
+			for (long m = ClobberState.capturers(home, away, dir); m != 0; m &= m - 1) {
+				long from = m & -m;
+				long to = (step > 0 ? from << step : from >>> -step);
+				left.add(sum((home & ~from) | to, away & ~to));
+			}
+
+			for (long m = ClobberState.capturers(away, home, dir); m != 0; m &= m - 1) {
+				long from = m & -m;
+				long to = (step > 0 ? from << step : from >>> -step);
+				right.add(sum(home & ~to, (away & ~from) | to));
+			}
+		}
+
+		return GameValue.of(left, right);
+	}
+
+	/**
+	 * A region holding both colours always has a move for each player, since somewhere along
+	 * it a home stone must touch an away stone.
+	 */
+	private static boolean live(long home, long away, long region) {
+		return (home & region) != 0 && (away & region) != 0;
+	}
+
+	/**
+	 * The shape of a region, in a form shared by every placement, rotation, reflection and
+	 * colour swap of it.  Cells are renumbered row by row inside the region's bounding box, and
+	 * of the sixteen variants the one with the smallest numbers is kept.
+	 */
+	static final class Shape {
+		int dims;									// Rows and columns of the bounding box
+		long home, away;							// Stones, numbered inside the box
+		boolean negated;							// True if the colours were swapped
+
+		Shape(long homeMask, long awayMask) {
+			int n = Long.bitCount(homeMask | awayMask);
+			int[] rows = new int[n], cols = new int[n];
+			boolean[] isHome = new boolean[n];
+			int i = 0;
+
+			for (long m = homeMask | awayMask; m != 0; m &= m - 1, i++) {
+				int index = Long.numberOfTrailingZeros(m);
+				rows[i] = ClobberState.row(index);
+				cols[i] = ClobberState.col(index);
+				isHome[i] = (homeMask & (1L << index)) != 0;
+			}
+
+			boolean first = true;
+
+			for (int t = 0; t < 8; t++) {
+				int minR = Integer.MAX_VALUE, minC = Integer.MAX_VALUE;
+				int maxR = Integer.MIN_VALUE, maxC = Integer.MIN_VALUE;
+				int[] r = new int[n], c = new int[n];
+
+				for (i = 0; i < n; i++) {
+					int a = ((t & 4) != 0 ? cols[i] : rows[i]);
+					int b = ((t & 4) != 0 ? rows[i] : cols[i]);
+					r[i] = ((t & 1) != 0 ? -a : a);
+					c[i] = ((t & 2) != 0 ? -b : b);
+					minR = Math.min(minR, r[i]);
+					minC = Math.min(minC, c[i]);
+					maxR = Math.max(maxR, r[i]);
+					maxC = Math.max(maxC, c[i]);
+				}
+
+				int width = maxC - minC + 1;
+				int d = ((maxR - minR + 1) << 8) | width;
+				long h = 0, a = 0;
+
+				for (i = 0; i < n; i++) {
+					long bit = 1L << ((r[i] - minR) * width + (c[i] - minC));
+					if (isHome[i]) h |= bit;
+					else a |= bit;
+				}
+
+				if (first || smaller(d, h, a)) {
+					set(d, h, a, false);
+					first = false;
+				}
+				if (smaller(d, a, h)) {
+					set(d, a, h, true);
+				}
+			}
+		}
+
+		private boolean smaller(int d, long h, long a) {
+			if (d != dims) return d < dims;
+			if (h != home) return h < home;
+			return a < away;
+		}
+
+		private void set(int d, long h, long a, boolean swapped) {
+			dims = d;
+			home = h;
+			away = a;
+			negated = swapped;
+		}
+
+		public boolean equals(Object o) {
+			Shape s = (Shape)o;
+			return dims == s.dims && home == s.home && away == s.away;
+		}
+
+		public int hashCode() {
+			return (int)(home * 0x9E3779B97F4A7C15L + away * 0xC2B2AE3D27D4EB4FL >>> 32) ^ dims;
+		}
+	}
+}
@@ -6,6 +6,7 @@ public class ScoredClobberMove extends ClobberMove {
 	
 	public double score;
 	public int distanceScore;
+	public int orderScore;
 	
 	
 	public static class SortMoveAsc implements Comparator<ScoredClobberMove>{
@@ -24,6 +25,14 @@ public class ScoredClobberMove extends ClobberMove {
 		}
 	}
 	
+	public static class SortOrderDes implements Comparator<ScoredClobberMove>{
+		public int compare(ScoredClobberMove scm1, ScoredClobberMove scm2){
+			if(scm1.orderScore > scm2.orderScore) return -1;
+			else if (scm1.orderScore == scm2.orderScore) return 0;
+			else return 1;
+		}
+	}
+	
 	/**
 	 * Constructs a default instance of ScoredClobberPlayer.  This constructor uses the super-
 	 * constructor to create a standard ClobberMove, then sets default score value.
@@ -0,0 +1,144 @@
+package clobber;
+
+/**
+ * Counts of what an alpha-beta search did.  Each search thread counts into its own instance,
+ * so counting costs no synchronization; the player adds the threads' counts up once the pool
+ * is idle.  A move's counts are added into the game's, and the game's into the tournament's.
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class SearchStats {
+
+	public static final int ORDERS = 8;			// Move indexes cutoffs are counted by; later moves share the last
+
+	public long nodes;							// Positions visited
+	public long evals;							// Positions scored by the evaluation function
+	public long probes;							// Transposition table lookups
+	public long hits;							// Lookups whose stored result settled the position
+	public final long[] cutoffs = new long[ORDERS];	// Cutoffs, by the index of the move causing them
+	public int moves;							// Moves searched
+	public int depth;							// Depths reached, added over the moves
+	public int deepest;							// Deepest depth reached by a move
+	public long nanos;							// Time spent searching
+	public double logBranching;					// Logs of the moves' branching factors, added
+
+	/**
+	 * Counts a cutoff.
+	 *
+	 * @param index		: the index of the move that caused it, 0 for the move searched first
+	 */
+	public void cutoff(int index) {
+		cutoffs[Math.min(index, ORDERS - 1)]++;
+	}
+
+	/**
+	 * Records a finished move: the depth of the deepest iteration it completed and its time.
+	 *
+	 * @param reached	: the depth reached
+	 * @param time		: the time searched, in nanoseconds
+	 */
+	public void endMove(int reached, long time) {
+		if (reached > 0 && nodes > 0) {
+			logBranching += Math.log(nodes) / reached;
+		}
+		moves++;
+		depth += reached;
+		deepest = Math.max(deepest, reached);
+		nanos += time;
+	}
+
+	/**
+	 * Adds another set of counts to these.
+	 *
+	 * @param other		: the counts to add
+	 */
+	public void add(SearchStats other) {
+		nodes += other.nodes;
+		evals += other.evals;
+		probes += other.probes;
+		hits += other.hits;
+		for (int i = 0; i < ORDERS; i++) {
+			cutoffs[i] += other.cutoffs[i];
+		}
+		moves += other.moves;
+		depth += other.depth;
+		deepest = Math.max(deepest, other.deepest);
+		nanos += other.nanos;
+		logBranching += other.logBranching;
+	}
+
+	/**
+	 * Sets every count back to zero.
+	 */
+	public void clear() {
+		nodes = evals = probes = hits = nanos = 0;
+		for (int i = 0; i < ORDERS; i++) {
+			cutoffs[i] = 0;
+		}
+		moves = depth = deepest = 0;
+		logBranching = 0;
+	}
+
+	/**
+	 * @return			: the nodes searched per second
+	 */
+	public double nodesPerSecond() {
+		return (nanos > 0 ? nodes * 1e9 / nanos : 0);
+	}
+
+	/**
+	 * @return			: the average depth reached per move
+	 */
+	public double averageDepth() {
+		return (moves > 0 ? (double)depth / moves : 0);
+	}
+
+	/**
+	 * Finds the effective branching factor, the b for which b^depth is the nodes of a move.
+	 * Over several moves this is the geometric mean of the moves' factors.
+	 *
+	 * @return			: the effective branching factor, or 0 if nothing was searched
+	 */
+	public double branching() {
+		return (moves > 0 && logBranching > 0 ? Math.exp(logBranching / moves) : 0);
+	}
+
+	/**
+	 * @return			: the share of lookups in the transposition table that settled a position
+	 */
+	public double hitRate() {
+		return (probes > 0 ? (double)hits / probes : 0);
+	}
+
+	/**
+	 * @return			: the number of cutoffs
+	 */
+	public long totalCutoffs() {
+		long total = 0;
+		for (int i = 0; i < ORDERS; i++) {
+			total += cutoffs[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Describes the counts on one line.
+	 *
+	 * @return			: the description
+	 */
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append(String.format("%d moves, depth %.1f (max %d), %d nodes, %d evals in %.3f secs, " +
+				"%.0f nodes/sec, branching %.2f, TT hits %.1f%%, cutoffs at move",
+				moves, averageDepth(), deepest, nodes, evals, nanos / 1e9,
+				nodesPerSecond(), branching(), 100 * hitRate()));
+
+		long total = totalCutoffs();
+		for (int i = 0; i < ORDERS; i++) {
+			s.append(String.format(" %d%s:%.1f%%", i + 1, i == ORDERS - 1 ? "+" : "",
+					(total > 0 ? 100.0 * cutoffs[i] / total : 0)));
+		}
+
+		return s.toString();
+	}
+}
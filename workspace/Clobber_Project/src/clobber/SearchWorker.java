@@ -0,0 +1,180 @@
+package clobber;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import game.GameState;
+
+/**
+ * A thread of a player's search pool.  The pool is started once in init() and its threads
+ * live for the whole tournament, each keeping what a search needs so that nodes are searched
+ * without allocating: a move stack, an undo stack and a move list at each depth for sequential
+ * alpha-beta, and a stack of frames for the parallel nodes the thread is running.  A node
+ * running on a thread can start another one while it waits for a join, possibly at the same
+ * depth, so frames are taken and given back in LIFO order rather than by depth.
+ * Each thread also counts what its searches do, for the player to gather after each move.
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class SearchWorker extends ForkJoinWorkerThread {
+
+	/**
+	 * What one node needs to search: the moves to try, made on reused move objects, the undo
+	 * for the move being tried and, for a node that is not searched on its parent's board, a
+	 * board of its own.
+	 */
+	public static class Frame {
+
+		public final GameState.Undo undo;				// Takes back the move being tried
+		public final List<ScoredClobberMove> moves;		// The moves made by generate()
+
+		private final ScoredClobberMove[] slots;		// Reused for the moves
+		private ClobberState board;						// Made the first time it is needed
+
+		private Frame() {
+			undo = new GameState.Undo();
+			moves = new ArrayList<ScoredClobberMove>(ClobberState.MAX_MOVES);
+			slots = new ScoredClobberMove[ClobberState.MAX_MOVES];
+			for (int i = 0; i < slots.length; i++) {
+				slots[i] = new ScoredClobberMove(0, 0, 0, 0, 0);
+			}
+		}
+
+		/**
+		 * Fills the frame's move list with the legal moves of a state, replacing what it held.
+		 *
+		 * @param state		: the state to move from
+		 * @return			: the frame's move list
+		 */
+		public List<ScoredClobberMove> generate(ClobberState state) {
+			int n = state.getMoves(slots);
+			moves.clear();
+			for (int i = 0; i < n; i++) {
+				moves.add(slots[i]);
+			}
+			return moves;
+		}
+
+		/**
+		 * @return			: the frame's board, holding whatever it held last
+		 */
+		public ClobberState board() {
+			if (board == null) {
+				board = new ClobberState();
+			}
+			return board;
+		}
+	}
+
+	/**
+	 * Makes the threads of one search pool, keeping track of them so that their counts can
+	 * be gathered.
+	 */
+	public static class Factory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+		private final List<SearchWorker> workers = new CopyOnWriteArrayList<SearchWorker>();
+
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			SearchWorker worker = new SearchWorker(pool, this);
+			workers.add(worker);
+			return worker;
+		}
+
+		/**
+		 * Adds up the counts of the pool's threads and starts them counting afresh.  The pool
+		 * must be idle, so that every count was made by a task that has been joined.
+		 *
+		 * @param total		: receives the counts
+		 */
+		public void collect(SearchStats total) {
+			for (SearchWorker worker : workers) {
+				total.add(worker.stats);
+				worker.stats.clear();
+			}
+		}
+	}
+
+	public final ScoredClobberMove[] mvStack;		// Best move at each depth
+	public final GameState.Undo[] undoStack;		// Takes back the move tried at each depth
+	public final SearchStats stats;					// What this thread's searches have done
+
+	private final Factory factory;					// Made this thread
+
+	private final Frame[] plies;					// Moves tried at each depth
+	private Frame[] frames;							// Frames of the parallel nodes running here
+	private int used;								// Frames taken
+
+	private SearchWorker(ForkJoinPool pool, Factory factory) {
+		super(pool);
+		this.factory = factory;
+		this.stats = new SearchStats();
+
+		int depth = ClobberState.ROWS * ClobberState.COLS + 1;
+		mvStack = new ScoredClobberMove[depth];
+		undoStack = new GameState.Undo[depth];
+		plies = new Frame[depth];
+		for (int i = 0; i < depth; i++) {
+			mvStack[i] = new ScoredClobberMove(0, 0, 0, 0, 0);
+			undoStack[i] = new GameState.Undo();
+			plies[i] = new Frame();
+		}
+
+		frames = new Frame[depth];
+	}
+
+	/**
+	 * Forgets this thread once the pool retires it.  A pool only retires idle threads, whose
+	 * counts have been gathered.
+	 */
+	protected void onTermination(Throwable exception) {
+		factory.workers.remove(this);
+		super.onTermination(exception);
+	}
+
+	/**
+	 * @return			: the worker running the calling code
+	 */
+	public static SearchWorker current() {
+		return (SearchWorker)Thread.currentThread();
+	}
+
+	/**
+	 * Generates the moves of a state searched sequentially.  A sequential search never waits
+	 * on a join, so the list at a depth is only used by one node at a time.
+	 *
+	 * @param state		: the state to move from
+	 * @param ply		: the depth of the state in the search
+	 * @return			: the moves, valid until moves are next generated at this depth
+	 */
+	public List<ScoredClobberMove> moves(ClobberState state, int ply) {
+		return plies[ply].generate(state);
+	}
+
+	/**
+	 * Takes a frame for a parallel node to search with.
+	 *
+	 * @return			: a frame, holding whatever it held last
+	 */
+	public Frame takeFrame() {
+		if (used == frames.length) {
+			Frame[] more = new Frame[2 * frames.length];
+			System.arraycopy(frames, 0, more, 0, frames.length);
+			frames = more;
+		}
+		if (frames[used] == null) {
+			frames[used] = new Frame();
+		}
+
+		return frames[used++];
+	}
+
+	/**
+	 * Gives back the frame taken last.
+	 */
+	public void giveFrame() {
+		used--;
+	}
+}
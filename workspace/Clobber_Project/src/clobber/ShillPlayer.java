@@ -1,6 +1,5 @@
 package clobber;
 import game.*;
-import game.GameState.Who;
 
 import java.util.*;
 import java.io.*;
@@ -16,20 +15,34 @@ public class ShillPlayer extends GamePlayer {
 
 	public static final int ROWS 			= ClobberState.ROWS;
 	public static final int COLS 			= ClobberState.COLS;
-	public static final double MAX_SCORE 	= COLS + ROWS;
-	public static final int MAX_DEPTH 		= 5;
+	public static final double MAX_SCORE 	= 1000000; //a game won at once; the search takes a point off per ply
+	public static final int MAX_DEPTH 		= ROWS * COLS;
 	
 	private int threadLimit; //set in constructor based on number of logical processors
-	private int depthLimit; //passed to constructor, set above by changing MAX_DEPTH
-	private int movesTaken = 0; 
-	private int evalCutoff = 9;
+	private int maxDepth; //passed to constructor, set above by changing MAX_DEPTH
 	
 	private double gametime = 0; //used to track how much time we've used
+	private TimeManager timer = new TimeManager(ClobberState.gameParams);
 	private boolean useOrdering = true;
+	private boolean useBook; //whether to play from the opening book, set in constructor
 	
 	private String[] lines = new String[0];
 	private String[] products = new String[0];
 	
+	private AlphaBetaSearch search; //the parallel search, started once for the whole tournament
+	private OpeningBook book; //moves searched offline, null if there is no book or it is not used
+	private boolean ponder = ClobberState.gameParams.bool("PONDER"); //search on the opponent's time
+
+	/** The hand-written stone heuristic, which the pattern table is compiled from **/
+	static final StoneEvaluator HEURISTIC = new StoneEvaluator() {
+		public float score(ClobberState state, int row, int col) {
+			return evaluateStone(state, row, col);
+		}
+	};
+	
+	/** Scores stones for the running evaluation each searched state keeps **/
+	private static final StoneEvaluator STONES = PatternTable.load("SHILLPATTERNS", HEURISTIC);
+	
 	
 	/**
 	 * The main method of ShillPlayer.  This method creates an instance of ShillPlayer and
@@ -44,20 +57,47 @@ public class ShillPlayer extends GamePlayer {
 	
 	/**
 	 * Constructs an instance of ShillPlayer.  This constructor allows developers to specify
-	 * the initial depth of the alpha-beta search and a reference text file to create a library
+	 * the maximum depth of the alpha-beta search and a reference text file to create a library
 	 * of tournament messages.
 	 * 
 	 * @param n				: the name of the player
-	 * @param depth			: the depth of the alpha-beta search
+	 * @param depth			: the maximum depth of the alpha-beta search
 	 * @param mesFileName	: the file name of the reference text
 	 */
 	public ShillPlayer(String n, int depth, String libraryFileName) {
+		// Search with every logical thread on this machine
+		this(n, depth, Runtime.getRuntime().availableProcessors(), libraryFileName);
+	}
+	
+	/**
+	 * Constructs an instance of ShillPlayer that searches with a set number of threads.
+	 * 
+	 * @param n				: the name of the player
+	 * @param depth			: the maximum depth of the alpha-beta search
+	 * @param threads		: the number of threads searching each move
+	 * @param mesFileName	: the file name of the reference text
+	 */
+	public ShillPlayer(String n, int depth, int threads, String libraryFileName) {
+		this(n, depth, threads, libraryFileName, true);
+	}
+	
+	/**
+	 * Constructs an instance of ShillPlayer that searches with a set number of threads, and
+	 * may leave the opening book out.  A player that is building the book must search every
+	 * opening itself, and must not hold the old book's file open while writing it.
+	 * 
+	 * @param n				: the name of the player
+	 * @param depth			: the maximum depth of the alpha-beta search
+	 * @param threads		: the number of threads searching each move
+	 * @param mesFileName	: the file name of the reference text
+	 * @param useBook		: whether init() loads the opening book
+	 */
+	public ShillPlayer(String n, int depth, int threads, String libraryFileName, boolean useBook) {
 		// Use the super-constructor and set the depth
 		super(n, new ClobberState(), false);
-		this.depthLimit = depth;
-		
-		// Get the number of logical threads on this machine
-		this.threadLimit = Runtime.getRuntime().availableProcessors();
+		this.maxDepth = depth;
+		this.threadLimit = threads;
+		this.useBook = useBook;
 		
 		try {
 			ArrayList<String> lines = new ArrayList<String>();
@@ -114,243 +154,115 @@ public class ShillPlayer extends GamePlayer {
 		return message;
 	}
 	
+	/**
+	 * Overrides the init method from the parent GamePlayer.  This method starts the search,
+	 * with its transposition table and pool of threads, once for the whole tournament.
+	 */
+	public void init() {
+		AlphaBetaSearch.Evaluator evaluator = new AlphaBetaSearch.Evaluator() {
+			public float evaluate(ClobberState state) {
+				return evaluateState(state);
+			}
+		};
+		search = new AlphaBetaSearch(nickname, threadLimit, maxDepth, evaluator, MAX_SCORE, useOrdering);
+		book = (useBook ? OpeningBook.load() : null);
+		Regions.load();
+	}
+	
+	/**
+	 * Overrides the done method from the parent GamePlayer.  This method stops the search pool
+	 * and reports what it searched over the tournament.
+	 */
+	public void done() {
+		search.shutdown();
+	}
+	
+	public void startGame(String opponent) {
+		timer.startGame();
+		search.startGame();
+	}
+	
 	public void timeOfLastMove(double secs) { 
 		gametime += secs; //update our gametime based on how long our last move took
+		timer.endMove(secs);
 	}
 	
 	public void endGame(int result) { 
 		//System.out.println("Game took: " + gametime); //debug print to show how long it took us to play a game
+		search.endGame();
 	}
 	
 	/**
-	 * Populates and return a list of possible Clobber moves based on the current state of the
-	 * Clobber game.  This method iterates over the Clobber board to find possible moves.
+	 * Returns the counts of the search of the last move: nodes, evaluations, cutoffs, table
+	 * hits, the depth reached and the time taken.
 	 * 
-	 * @param state		: the current game state
-	 * @return			: all possible Clobber moves
+	 * @return				: the counts of the last move
 	 */
-	public List<ScoredClobberMove> getPossibleMoves(GameState state) {
-		ClobberState board = (ClobberState) state;
-		
-		List<ScoredClobberMove> list = new ArrayList<ScoredClobberMove>();
-		ScoredClobberMove move = new ScoredClobberMove();
-		
-		// Iterate over the board to determine which moves are possible
-		for (int r = 0; r < ROWS; r++) {
-			for (int c = 0; c < COLS; c++) {
-				move.row1 = r;
-				move.col1 = c;
-				move.row2 = r-1;
-				move.col2 = c;
-				if (board.moveOK(move)) list.add((ScoredClobberMove)move.clone());
-				
-				move.row2 = r+1;
-				move.col2 = c;
-				if (board.moveOK(move)) list.add((ScoredClobberMove)move.clone());
-				
-				move.row2 = r;
-				move.col2 = c-1;
-				if (board.moveOK(move)) list.add((ScoredClobberMove)move.clone());
-				
-				move.row2 = r;
-				move.col2 = c+1;
-				if (board.moveOK(move)) list.add((ScoredClobberMove)move.clone());
-			}
-		}
-		
-		return list;
+	public SearchStats getMoveStats() {
+		return search.getMoveStats();
 	}
 	
 	/**
-	 * Determines whether the specified Clobber state represents a completed game.  If the
-	 * game is complete, then the winning score is recorded in the move based on which of
-	 * the players in moving.
+	 * Returns the counts of the searches of the game so far, added up over its moves.
 	 * 
-	 * @param state		: the Clobber state to evaluate
-	 * @param move		: the move that creates the specified state
-	 * @return			: true if the board is terminal, false otherwise
+	 * @return				: the counts of the game
 	 */
-	protected boolean terminalValue(GameState state, ScoredClobberMove move) {
-		GameState.Status status = state.getStatus();
-		boolean isTerminal = true;
-		
-		if (status == GameState.Status.HOME_WIN) {
-			move.score = MAX_SCORE;
-		}
-		else if (status == GameState.Status.AWAY_WIN) {
-			move.score = -MAX_SCORE;
-		}
-		else {
-			isTerminal = false;
-		}
-		
-		return isTerminal;
+	public SearchStats getGameStats() {
+		return search.getGameStats();
 	}
 	
 	/**
-	 * Recursively performs an alpha-beta search to determine the best move to make.  This
-	 * method runs to a maximum Clobber depth, then allows a scored move to propagate to the
-	 * top of the specified move stack.
-	 * 
-	 * @param state			: the current Clobber state
-	 * @param mvStack		: stores the best move at any arbitrary depth
-	 * @param currDepth		: the current depth of the recursive search
-	 * @param a				: alpha, the best maximum score
-	 * @param b				: beta, the best minimum score
-	 */
-	private void alphaBeta(ClobberState state, ScoredClobberMove[] mvStack, int currDepth, 
-			double a, double b) {
-		
-		boolean toMaximize = (state.getWho() == GameState.Who.HOME);
-		boolean isTerminal = terminalValue(state, mvStack[currDepth]);
-		
-		/** If the move is terminal, allow the score to propagate up **/
-		if (isTerminal) {
-			return;
-		}
-		
-		/** If the depth limit is reached, use the evaluation function **/
-		// After the cutoff point, we will no longer search to a defined depth
-		// We will search to all terminal leaves
-		else if (movesTaken < evalCutoff && currDepth == depthLimit) {
-			mvStack[currDepth].score = evaluateState(state);
-		}
-		
-		/** Otherwise continue alpha beta recursion **/
-		else {
-			double bestScore = (toMaximize ? 
-					Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
-			
-			ScoredClobberMove bestMove = mvStack[currDepth];
-			ScoredClobberMove nextMove = mvStack[currDepth + 1];
-			
-			bestMove.score = bestScore;
-			
-			// Get possible moves
-			List<ScoredClobberMove> moves = getPossibleMoves(state);
-			
-			// Use move ordering
-			if (useOrdering) {
-				for (int i = 0; i < moves.size(); i++) {
-					moves.get(i).calculateDistanceScore();
-				}
-				
-				if (toMaximize) Collections.sort(moves, new ScoredClobberMove.SortMoveDes());
-				else Collections.sort(moves, new ScoredClobberMove.SortMoveAsc());
-			}
-			// Otherwise shuffle moves randomly
-			else {
-				Collections.shuffle(moves);
-			}
-			
-			for (int i = 0; i < moves.size(); i++) {
-				// Create and make move
-				ScoredClobberMove tempMove = new ScoredClobberMove(moves.get(i));
-				state.makeMove(tempMove);
-				
-				// Recurse over the new state
-				alphaBeta(state, mvStack, currDepth + 1, a, b);
-				
-				// Undo the previous move
-				undoMove(state, tempMove);
-				
-				// Examine the move relative to what we have seen
-				if (toMaximize && nextMove.score > bestMove.score) {
-					bestMove.set(tempMove, nextMove.score);
-				}
-				else if (!toMaximize && nextMove.score < bestMove.score) {
-					bestMove.set(tempMove, nextMove.score);
-				}
-				
-				// Update alpha and beta, then perform pruning
-				if (!toMaximize) {
-					b = Math.min(bestMove.score, b);
-					if (bestMove.score <= a || bestMove.score == -MAX_SCORE) {
-						return;
-					}
-				}
-				else {
-					a = Math.max(bestMove.score, a);
-					if (bestMove.score >= b || bestMove.score == MAX_SCORE) {
-						return;
-					}
-				}
-			}
-		}
-	}
-	
-	/**
-	 * Undoes the specified Clobber move by reverting to the original game status and swapping
-	 * pieces back to their original board positions.  This method is used during recursion.
+	 * Populates and return a list of possible Clobber moves based on the current state of the
+	 * Clobber game.  This method reads the possible moves off the state's bitboards.
 	 * 
-	 * @param state		: the current Clobber state
-	 * @param move		: the move to revert
+	 * @param state		: the current game state
+	 * @return			: all possible Clobber moves
 	 */
-	private void undoMove(ClobberState state, ScoredClobberMove move) {
-		// Revert the status and turn
-		state.status = GameState.Status.GAME_ON;
-		state.who = (state.who == Who.HOME) ? Who.AWAY : Who.HOME;
-		state.numMoves--;
+	public List<ScoredClobberMove> getPossibleMoves(GameState state) {
+		ClobberState board = (ClobberState) state;
 		
-		// Swap pieces back to their original positions
-		state.board[move.row1][move.col1] = 
-				(state.getWho() == GameState.Who.HOME ? 
-						ClobberState.homeSym : ClobberState.awaySym);
+		List<ScoredClobberMove> list = new ArrayList<ScoredClobberMove>();
+		board.getMoves(list);
 		
-		state.board[move.row2][move.col2] = 
-				(state.getWho() == GameState.Who.HOME ? 
-						ClobberState.awaySym : ClobberState.homeSym);
+		return list;
 	}
 	
-	private float evaluateState(ClobberState state) {
-		float homeScore = 0;
-		float awayScore = 0;
+	float evaluateState(ClobberState state) {
+		// The state keeps the stone scores as running totals, updated by every move
+		if (state.getEvaluator() != STONES) {
+			state.setEvaluator(STONES);
+		}
+		float homeScore = state.homeEval();
+		float awayScore = state.awayEval();
 		
-		for (int row = 0; row < ClobberState.ROWS; row++) {
-			for (int col = 0; col < ClobberState.COLS; col++) {
-				
-				// If the stone is a home symbol
-				if (state.board[row][col] == ClobberState.homeSym) {
-					homeScore += evaluateStone(state, row, col);
-				}
-				
-				// If the stone is an away symbol
-				else if (state.board[row][col] == ClobberState.awaySym) {
-					awayScore += evaluateStone(state, row, col);
-				}
-			}
+		// Stones in regions of one colour can never move again
+		long dead = ~state.liveStones();
+		for (long m = state.home & dead; m != 0; m &= m - 1) {
+			homeScore -= state.stoneScore(Long.numberOfTrailingZeros(m));
+		}
+		for (long m = state.away & dead; m != 0; m &= m - 1) {
+			awayScore -= state.stoneScore(Long.numberOfTrailingZeros(m));
 		}
 		
 		// Return the heuristic
 		return homeScore - awayScore;
 	}
 	
-	private float evaluateStone(ClobberState state, int row, int col) {
-		float score = 0;
-		char friend = state.board[row][col];
+	private static float evaluateStone(ClobberState state, int row, int col) {
+		int i = ClobberState.index(row, col);
+		long bit = 1L << i;
 		
-		// Check if the symbol is empty
-		if (friend == ClobberState.emptySym) {
-			return score;
+		// Check if the cell is empty
+		if (((state.home | state.away) & bit) == 0) {
+			return 0;
 		}
 		
-		char opponent = (friend == ClobberState.homeSym) ? 
-				ClobberState.awaySym : ClobberState.homeSym;
+		long friends = ((state.home & bit) != 0) ? state.home : state.away;
+		long opponents = ((state.home & bit) != 0) ? state.away : state.home;
 		
-		int oppNeighbors = 0;
-		int friNeighbors = 0;
-		
-		for (int disRow = -1; disRow <= 1; disRow++) {
-			for (int disCol = -1; disCol <= 1; disCol++) {
-				int newRow = row + disRow;
-				int newCol = col + disCol;
-				
-				if (ClobberMove.posOK(newRow, newCol)) {
-					if (state.board[newRow][newCol] == opponent) oppNeighbors++;
-					else if (state.board[newRow][newCol] == friend) friNeighbors++;
-				}
-			}
-		}
+		// Count the stones in the 3x3 block around this one, itself included
+		int oppNeighbors = Long.bitCount(opponents & ClobberState.AROUND[i]);
+		int friNeighbors = Long.bitCount(friends & ClobberState.AROUND[i]);
 		
 		if (oppNeighbors > 0 && friNeighbors > oppNeighbors) {
 			return 1;
@@ -359,139 +271,73 @@ public class ShillPlayer extends GamePlayer {
 	}
 	
 	/**
-	 * Calculates the next move to be performed by the ShillPlayer.  This method creates a
-	 * number of alpha-beta threads based on the maximum number of threads that the running
-	 * machine can support.  The number of moves given to each threads is balanced i.e. not
-	 * all possible threads are necessarily used.
+	 * Calculates the next move to be performed by the ShillPlayer.  This method plays from the
+	 * opening book when it can, and otherwise deepens the alpha-beta search one ply at a time,
+	 * for as long as the time manager expects the next iteration to fit in this move's share of
+	 * the game clock.  The best move found by the last completed iteration is played.
 	 * 
 	 * @param state			: the current Clobber state
 	 * @param lastMove		: String representation of the previous move
 	 * @return				: the next move for the ShillPlayer
 	 */
 	public GameMove getMove(GameState state, String lastMove) {
-		// Update the number of moves taken
-		movesTaken = state.numMoves;
-		
-		List<ScoredClobberMove> allMoves = getPossibleMoves((ClobberState)state);
+		ClobberState board = (ClobberState)state;
 		
-		// Determine how many threads should be created
-		int movesPerThread = Math.max(1, (int)Math.ceil(allMoves.size() / threadLimit));
+		// Score every stone once; moves made during the search rescore only the stones they touch
+		board.setEvaluator(STONES);
 		
-		// Figure out how many threads to use, up to threadLimit
-		int numThreads = Math.min((int)Math.ceil(allMoves.size() / movesPerThread), threadLimit);
-		AlphaBetaThread[] threads = new AlphaBetaThread[numThreads];
+		// Expect to move about once for every two of our stones that can still capture
+		timer.startMove(Long.bitCount(board.movable()) / 2 + 1);
 		
-		/** Create and run each of the threads **/
-		for (int i = 0; i < threads.length; i++) {
-			
-			// This if block is hit for the last thread which potentially has fewer moves to
-			// calculate than the other threads
-			if (i == threads.length - 1) {
-				threads[i] = new AlphaBetaThread((ClobberState)state,
-						allMoves.subList(i * movesPerThread, allMoves.size()));
-			}
-			else {
-				threads[i] = new AlphaBetaThread((ClobberState)state,
-						allMoves.subList(i * movesPerThread, (i + 1) * movesPerThread));
-			}
-			
-			threads[i].start();
+		// Play straight from the opening book when it holds the position
+		ScoredClobberMove booked = (book != null ? book.probe(board) : null);
+		if (booked != null) {
+			timer.stopMove();
+			return booked;
 		}
 		
-		/** Wait for the threads to complete **/
-		for (int i = 0; i < threads.length; i++) {
-			try {
-				threads[i].join();
-			}
-			catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-		
-		ScoredClobberMove best = threads[0].bestMove;
-		// Loop through the best move for each thread, and calculate the best move overall
-		/** Determine which move is best **/
-		for (int i = 1; i < threads.length; i++) {
-			ScoredClobberMove temp = threads[i].bestMove;
-			
-			if (state.who == GameState.Who.HOME && temp.score > best.score) best = temp;
-			else if (state.who == GameState.Who.AWAY && temp.score < best.score) best = temp;
-		}
+		ScoredClobberMove best = search.deepen(board, timer);
+		timer.stopMove();
 		
 		// Return the best move
 		return best;
 	}
 	
 	/**
+	 * Searches a position to a fixed depth, whatever the clock says and without the opening
+	 * book.  This is for work done offline, such as building the book, where the depth of the
+	 * search must be the one asked for.
 	 * 
+	 * @param state			: the current Clobber state
+	 * @param depth			: the depth to search to
+	 * @return				: the best move, with its score
+	 */
+	public ScoredClobberMove searchDepth(ClobberState state, int depth) {
+		state.setEvaluator(STONES);
+		return search.searchDepth(state, depth);
+	}
+	
+	/**
+	 * Overrides the startPondering method from the parent GamePlayer.  When PONDER is set in
+	 * the Clobber configuration, this method starts searching the position the opponent's
+	 * expected reply leads to while the opponent thinks.
 	 * 
-	 * @author Lucy Jiang, Marshall Miller, Peter Simon
+	 * @param state			: the Clobber state the ShillPlayer moved from
+	 * @param mv			: the move the ShillPlayer sent
 	 */
-	private class AlphaBetaThread extends Thread {
-		
-		private ClobberState state;					// The state of the board
-		private ScoredClobberMove[] mvStack;		// Stores the best move at any depth
-		private List<ScoredClobberMove> moves;		// The moves to evaluate
-		public ScoredClobberMove bestMove;			// The best move
-		
-		/**
-		 * Constructs an instance of AlphaBetaThread.  This constructor initializes and assigns
-		 * moves to the stack of Clobber moves.  It also copies the Clobber state into a local
-		 * variable to avoid access violation during threading.
-		 * 
-		 * @param state		: the current Clobber state
-		 * @param moves		: a list of possible moves
-		 */
-		public AlphaBetaThread(ClobberState state, List<ScoredClobberMove> moves) {
-			this.moves = moves;
-			this.bestMove = moves.get(0);
-			
-			this.mvStack = new ScoredClobberMove[31];
-			this.state = new ClobberState();
-			
-			// Initialize the move stack
-			for (int i=0; i < this.mvStack.length; i++) {
-				this.mvStack[i] = new ScoredClobberMove(0, 0, 0, 0, 0);
-			}
-			
-			// Copy the board state
-			for (int row = 0; row < ShillPlayer.ROWS; row++) {
-				for (int col = 0; col < ShillPlayer.COLS; col++) {
-					this.state.board[row][col] = state.board[row][col];
-				}
-			}
-			this.state.who = state.getWho();
-			this.state.status = state.getStatus();
-			this.state.numMoves = state.getNumMoves();
+	public void startPondering(GameState state, GameMove mv) {
+		if (ponder) {
+			search.startPondering((ClobberState)state, mv);
 		}
-		
-		/**
-		 * Overrides the run method from the parent Thread class.  This method is used for
-		 * threaded procedures, performing an alpha-beta search over the assigned moves to
-		 * determine which move is the best.
-		 */
-		public void run() {
-			for (int i = 0; i < moves.size(); i++) {
-				// Make the move
-				state.makeMove(moves.get(i));
-				
-				// Perform the recursive alpha beta search
-				ShillPlayer.this.alphaBeta(state, mvStack, 0,
-						Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
-				
-				// Undo the move
-				ShillPlayer.this.undoMove(state, moves.get(i));
-				
-				// Update the score of the original move
-				moves.get(i).score = mvStack[0].score;
-				
-				// Check if the move is better than the best move
-				if (i == 0) bestMove = new ScoredClobberMove(moves.get(0));
-				else if (this.state.who == GameState.Who.HOME && 
-						moves.get(i).score > bestMove.score) bestMove = new ScoredClobberMove(moves.get(i));
-				else if (this.state.who == GameState.Who.AWAY && 
-						moves.get(i).score < bestMove.score) bestMove = new ScoredClobberMove(moves.get(i));
-			}
+	}
+	
+	/**
+	 * Overrides the stopPondering method from the parent GamePlayer.  This method stops the
+	 * search of the predicted position, keeping what it found in case the prediction was right.
+	 */
+	public void stopPondering() {
+		if (search != null) {
+			search.stopPondering();
 		}
 	}
-}
\ No newline at end of file
+}
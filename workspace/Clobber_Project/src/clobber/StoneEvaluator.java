@@ -0,0 +1,21 @@
+package clobber;
+
+/**
+ * Scores single stones for the running evaluation a ClobberState keeps.  A stone's score may
+ * only depend on the 3x3 block of cells centred on it, since a move only rescores the stones
+ * around the two cells it changes.
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public interface StoneEvaluator {
+
+	/**
+	 * Scores the stone on a cell.
+	 *
+	 * @param state		: the state, holding a stone at (row, col)
+	 * @param row		: the row of the stone
+	 * @param col		: the column of the stone
+	 * @return			: the stone's score, counted for the player who owns it
+	 */
+	float score(ClobberState state, int row, int col);
+}
@@ -0,0 +1,111 @@
+package clobber;
+
+/**
+ * A fixed-size table of search results keyed by Zobrist key, shared by every search thread
+ * of a player.  Each entry takes two longs: the packed result, and the key XORed with that
+ * result.  Threads write entries without locking; a reader only trusts an entry whose two
+ * halves XOR back to the key being probed, so an entry torn by two simultaneous writers
+ * reads as a miss instead of as a wrong result.
+ *
+ * A packed result holds, from the low bits up: the source cell of the best move (8 bits),
+ * its target cell (8 bits), the bound type (2 bits), the remaining search depth (8 bits)
+ * and the score as a float (32 bits).  The bound type is never zero, so a packed result of
+ * zero is free to mean "no entry".
+ *
+ * @author Lucy Jiang, Marshall Miller, Peter Simon
+ */
+public class TranspositionTable {
+
+	public static final int EXACT = 1;				// The score is the value of the position
+	public static final int LOWER = 2;				// The value is at least the score
+	public static final int UPPER = 3;				// The value is at most the score
+	public static final int DEFAULT_BITS = 20;		// log2 of the entries if none configured
+	public static final int PROVEN = 0xFF;			// Depth stored with a proven result, deeper than any search
+
+	private final long[] slots;						// Key ^ data, then data, for each entry
+	private final int mask;							// Entries - 1
+
+	/**
+	 * Constructs a table using the size given by TTBITS in the Clobber configuration file.
+	 */
+	public TranspositionTable() {
+		this(ClobberState.gameParams.integer("TTBITS") > 0 ?
+				ClobberState.gameParams.integer("TTBITS") : DEFAULT_BITS);
+	}
+
+	/**
+	 * Constructs a table with 2^bits entries.
+	 *
+	 * @param bits		: log2 of the number of entries
+	 */
+	public TranspositionTable(int bits) {
+		this.slots = new long[2 << bits];
+		this.mask = (1 << bits) - 1;
+	}
+
+	/**
+	 * Looks up a position.
+	 *
+	 * @param key		: the Zobrist key of the position
+	 * @return			: the packed result, or 0 if the position is not in the table
+	 */
+	public long probe(long key) {
+		int i = ((int)key & mask) << 1;
+		long data = slots[i + 1];
+
+		return (slots[i] ^ data) == key ? data : 0;
+	}
+
+	/**
+	 * Records the result of searching a position.  A result replaces whatever is in its
+	 * slot unless the slot already holds a deeper search of the same position.
+	 *
+	 * @param key		: the Zobrist key of the position
+	 * @param depth		: the remaining depth the position was searched to
+	 * @param bound		: EXACT, LOWER or UPPER
+	 * @param score		: the score of the position
+	 * @param from		: the cell index of the best move's attacking stone
+	 * @param to		: the cell index of the best move's target stone
+	 */
+	public void store(long key, int depth, int bound, double score, int from, int to) {
+		int i = ((int)key & mask) << 1;
+		long old = slots[i + 1];
+
+		if ((slots[i] ^ old) == key && depth(old) > depth) {
+			return;
+		}
+
+		long data = ((long)Float.floatToRawIntBits((float)score) << 32) |
+				((long)depth << 18) | ((long)bound << 16) | (to << 8) | from;
+
+		slots[i] = key ^ data;
+		slots[i + 1] = data;
+	}
+
+	/**
+	 * Empties the table.
+	 */
+	public void clear() {
+		java.util.Arrays.fill(slots, 0);
+	}
+
+	public static double score(long data) {
+		return Float.intBitsToFloat((int)(data >>> 32));
+	}
+
+	public static int depth(long data) {
+		return (int)(data >>> 18) & 0xFF;
+	}
+
+	public static int bound(long data) {
+		return (int)(data >>> 16) & 0x3;
+	}
+
+	public static int from(long data) {
+		return (int)data & 0xFF;
+	}
+
+	public static int to(long data) {
+		return (int)(data >>> 8) & 0xFF;
+	}
+}
@@ -1,16 +1,15 @@
 package game;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Client {
-	public Socket sock;
 	public String name;
-	public PrintWriter output;
-	public BufferedReader input;
 	public boolean DQd;
 	public boolean busy;
 	public int moveLimit;
@@ -19,14 +18,45 @@ public class Client {
 	public int maxWarnings;
 	public boolean deterministic;
 	public static final boolean DUMP = false;
-	public Client(ServerSocket mainSocket, int initTimeLimit,
+
+	final SocketChannel channel;
+	private final Server server;
+	private final long connected;		// When the client connected, in nanoseconds
+
+	// Lines read by the server's thread, waiting for the game to take them
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition arrived = lock.newCondition();
+	private final ArrayDeque<String> lines = new ArrayDeque<String>();
+	private final ArrayDeque<Long> times = new ArrayDeque<Long>();	// When each line arrived
+	private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+	private boolean closed;
+	private int wait;					// Counts the waits, so a late timeout can tell it is stale
+	private boolean expired;
+	private long lastArrival;			// When the line last read arrived
+
+	// Output the socket could not take yet
+	private final ArrayDeque<ByteBuffer> unsent = new ArrayDeque<ByteBuffer>();
+
+	/**
+	 * Made by the server as the client connects
+	 */
+	Client(Server server, SocketChannel channel)
+	{
+		this.server = server;
+		this.channel = channel;
+		connected = System.nanoTime();
+	}
+	/**
+	 * Reads the client's name and whether it plays deterministically. The
+	 * name must arrive within the initialization time of the client
+	 * connecting, so clients that connect together are given their time
+	 * together.
+	 */
+	public void handshake(int initTimeLimit,
 					int pLimit, int fLimit,
-					int gLimit, int nWarnings) throws Exception
+					int gLimit, int nWarnings)
 	{
-		sock = mainSocket.accept();
-		output = new PrintWriter(sock.getOutputStream(), true);
-		input = new BufferedReader(new InputStreamReader(sock.getInputStream()));
-		name = hardLimitResponse(initTimeLimit);
+		name = response(connected + initTimeLimit * 1000000000L, initTimeLimit);
 		if (name == null) {
 			DQd = true;
 			name = "DQd on initialization";
@@ -49,7 +79,7 @@ public class Client {
 	public void simpleMsg(String s)
 	{
 		if (DUMP) System.err.println("SDUMP1/1: " + s);
-		output.println(s);
+		send(s);
 		if (DUMP) System.err.println("EDUMP");
 	}
 	public void simpleMsg(String s1, String s2)
@@ -58,8 +88,7 @@ public class Client {
 			System.err.println("DUMP1/2: " + s1);
 			System.err.println("DUMP2/2: " + s2);
 		}
-		output.println(s1);
-		output.println(s2);
+		send(s1, s2);
 		if (DUMP) System.err.println("EDUMP");
 	}
 	public void simpleMsg(String s1, String s2, String s3)
@@ -69,40 +98,38 @@ public class Client {
 			System.err.println("DUMP2/3: " + s2);
 			System.err.println("DUMP3/3: " + s3);
 		}
-		output.println(s1);
-		output.println(s2);
-		output.println(s3);
+		send(s1, s2, s3);
 		if (DUMP) System.err.println("EDUMP");
 	}
 	public String hardLimitResponse(int seconds)
+	{ return response(System.nanoTime() + seconds * 1000000000L, seconds); }
+	private String response(long deadline, int seconds)
 	{
-		String name = null;
-		try {
-			sock.setSoTimeout(seconds * 1000);
-			name = input.readLine();
-		}
-		catch (Exception e) {
-			System.err.printf("init timeout %s %d%n", e.toString(), seconds);
+		String line = readLine(deadline);
+		if (line == null) {
+			System.err.printf("init timeout %s %d%n", closed ? "closed" : "timed out", seconds);
 			System.err.flush();
 		}
-		return name;
+		return line;
 	}
 	public double timedResponse(double seconds, GameMove move)
 	{
-		long start = System.currentTimeMillis();
+		long start = System.nanoTime();
 		try {
-			sock.setSoTimeout((int)(seconds * 1000));
 			if (DUMP) {
 				System.err.println("Timed response: " + seconds);
 			}
-			String mvStr = input.readLine();
+			String mvStr = readLine(start + (long)(seconds * 1e9));
+			if (mvStr == null) {
+				throw new IOException(closed ? "connection closed" : "timed out");
+			}
 			if (DUMP) {
 				System.err.println("RESPONSE: " + mvStr);
 			}
-			long diff = System.currentTimeMillis() - start;
-			
-			output.println("TIME");
-			output.println(diff/1000.0);
+			// Charge the move to when it arrived, not to when this thread woke up
+			long diff = Math.max(0, lastArrival - start) / 1000000L;
+
+			send("TIME", Double.toString(diff/1000.0));
 			move.parseMove(mvStr);
 
 			double elapsedTime = diff / 1000.0;
@@ -111,9 +138,170 @@ public class Client {
 		catch (Exception e) {
 			//System.err.printf("timeout %s%n", name);
 			System.err.println("error " + e.getMessage());
-			output.println("TIME");
-			output.println(seconds + 10.0);
-			return -1; 
+			send("TIME", Double.toString(seconds + 10.0));
+			return -1;
+		}
+	}
+	/**
+	 * Skips what the client sends until a given line
+	 * @param line The line to wait for
+	 * @param seconds Longest wait for it
+	 * @return true if the line came
+	 */
+	public boolean skipTo(String line, int seconds)
+	{
+		long deadline = System.nanoTime() + seconds * 1000000000L;
+		for (String s = readLine(deadline); s != null; s = readLine(deadline)) {
+			if (s.equals(line))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Waits for the client's next line. The wait is ended at the deadline by
+	 * the server's timer wheel.
+	 * @param deadline Latest time to wait until, as given by System.nanoTime
+	 * @return The line, or null if it did not come in time or the client left
+	 */
+	private String readLine(long deadline)
+	{
+		lock.lock();
+		try {
+			if (lines.isEmpty() && !closed) {
+				final int thisWait = ++wait;
+				expired = false;
+				TimerWheel.Timeout timeout = server.timers.schedule(deadline, new Runnable() {
+					public void run()
+					{ expire(thisWait); }
+				});
+				try {
+					while (lines.isEmpty() && !closed && !expired) {
+						arrived.await();
+					}
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				finally {
+					timeout.cancel();
+				}
+			}
+			if (lines.isEmpty()) {
+				return null;
+			}
+			lastArrival = times.poll();
+			return lines.poll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	private void expire(int thisWait)
+	{
+		lock.lock();
+		try {
+			if (thisWait == wait) {
+				expired = true;
+				arrived.signalAll();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Splits bytes read by the server into lines. Called on the server's thread.
+	 */
+	void received(ByteBuffer data)
+	{
+		long now = System.nanoTime();
+		lock.lock();
+		try {
+			boolean any = false;
+			while (data.hasRemaining()) {
+				byte b = data.get();
+				if (b == '\n') {
+					String line = partial.toString();
+					partial.reset();
+					if (line.endsWith("\r")) {
+						line = line.substring(0, line.length() - 1);
+					}
+					lines.add(line);
+					times.add(now);
+					any = true;
+				} else {
+					partial.write(b);
+				}
+			}
+			if (any) {
+				arrived.signalAll();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Marks the connection closed and wakes any wait for a line
+	 */
+	void disconnected()
+	{
+		lock.lock();
+		try {
+			closed = true;
+			arrived.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Writes lines to the client. What the socket cannot take at once is
+	 * left for the server's thread to write.
+	 */
+	private void send(String... msg)
+	{
+		StringBuilder s = new StringBuilder();
+		for (String line : msg) {
+			s.append(line).append(System.lineSeparator());
+		}
+		ByteBuffer data = ByteBuffer.wrap(s.toString().getBytes());
+
+		synchronized (unsent) {
+			try {
+				if (unsent.isEmpty()) {
+					channel.write(data);
+				}
+				if (data.hasRemaining()) {
+					boolean first = unsent.isEmpty();
+					unsent.add(data);
+					if (first) {
+						server.wantWrite(this);
+					}
+				}
+			}
+			catch (IOException e) {
+				disconnected();
+			}
+		}
+	}
+	/**
+	 * Writes what is waiting to be sent. Called on the server's thread.
+	 * @return true once nothing is left
+	 */
+	boolean flush() throws IOException
+	{
+		synchronized (unsent) {
+			while (!unsent.isEmpty()) {
+				ByteBuffer data = unsent.peek();
+				channel.write(data);
+				if (data.hasRemaining()) {
+					return false;
+				}
+				unsent.poll();
+			}
+			return true;
 		}
 	}
 }
@@ -59,6 +59,23 @@ public abstract class GamePlayer {
 	 */
 	public void timeOfLastMove(double secs)
 	{ }
+	/**
+	 * Called after the player's move has been sent, while the opponent is
+	 * thinking. A player that ponders starts searching the reply it expects
+	 * in the background and returns at once. Default behavior is to do
+	 * nothing, so pondering is opt-in.
+	 * @param state State the player moved from
+	 * @param mv Move the player sent
+	 */
+	public void startPondering(GameState state, GameMove mv)
+	{ }
+	/**
+	 * Called as soon as the server's next command arrives, before it is
+	 * acted on. Any background search must have stopped when this returns.
+	 * Default behavior is to do nothing.
+	 */
+	public void stopPondering()
+	{ }
 	/**
 	 * Called when the game has ended. Default behavior is to do nothing. 
 	 * @param result -1 if loss, 0 if draw, +1 if 
@@ -105,6 +122,7 @@ public abstract class GamePlayer {
 
 			while (true) {
 				String cmd = input.readLine();
+				stopPondering();
 				if (cmd.equals("DONE")) {
 					if (dumpLevel > 0)
 						System.out.println(nickname + "is done playing");
@@ -162,6 +180,7 @@ public abstract class GamePlayer {
 					if (dumpLevel > 1)
 						System.out.printf("%f secs%n", time);
 					timeOfLastMove(time);
+					startPondering(gameState, mv);
 				} else {
 					System.err.println("bad command from server: " + cmd);
 				}
@@ -9,6 +9,20 @@ public abstract class GameState implements Cloneable {
 	public Status status;			// status of current game
 	public Who who;					// side that has next move
 	public int numMoves;
+	public long key;				// Zobrist key of the position
+
+	// Toggled into the key whenever the side to move changes
+	protected static final long AWAY_KEY = zobristKeys(1, 0x5EED)[0];
+
+	/**
+	 * What a call to makeMove(GameMove, Undo) changed. The status is saved
+	 * so that unmakeMove never has to rescan the board; the two cells
+	 * are whatever the particular game needs to restore the board.
+	 */
+	public static class Undo {
+		public Status status;
+		public int from, to;
+	}
 
 	/**
 	 * Constructs a generic game state.
@@ -44,6 +58,30 @@ public abstract class GameState implements Cloneable {
 	 */
 	public int getNumMoves()
 	{ return numMoves; }
+	/**
+	 * Get the Zobrist key of the position. Equal positions (board and side
+	 * to move) have equal keys; unequal ones almost never do.
+	 * @return 64-bit key
+	 */
+	public long getKey()
+	{ return key; }
+	/**
+	 * Generates the random numbers a game uses to build its Zobrist keys.
+	 * The seed is fixed so that keys stay the same from run to run and can
+	 * be written to files.
+	 * @param n Number of keys
+	 * @param seed Seed for the generator
+	 * @return Array of n random keys
+	 */
+	protected static long [] zobristKeys(int n, long seed)
+	{
+		Random rand = new Random(seed);
+		long [] keys = new long [n];
+		for (int i=0; i<n; i++) {
+			keys[i] = rand.nextLong();
+		}
+		return keys;
+	}
 	/**
 	 * Whose turn is next
 	 * @return side that gets to move next
@@ -59,23 +97,31 @@ public abstract class GameState implements Cloneable {
 	public void togglePlayer()
 	{
 		who = (who == Who.HOME ? Who.AWAY : Who.HOME);
+		key ^= AWAY_KEY;
 	}
 	protected void newMove()
 	{
 		numMoves++;
 		togglePlayer();
 	}
+	protected void undoNewMove()
+	{
+		numMoves--;
+		togglePlayer();
+	}
 	protected void clear()
 	{
 		who = Who.HOME;
 		numMoves = 0;
 		status = Status.GAME_ON;
+		key = 0;
 	}
 	protected void copyInfo(GameState src)
 	{
 		who = src.who;
 		numMoves = src.numMoves;
 		status = src.status;
+		key = src.key;
 	}
 	/**
 	 * Create a deep copy of the State
@@ -91,12 +137,28 @@ public abstract class GameState implements Cloneable {
 	 * @return true if move was successfully performed
 	 */
 	public abstract boolean makeMove(GameMove mv);
+	/**
+	 * Updates the game based on a particular move, and records in undo
+	 * what is needed to take the move back. Search code keeps one Undo
+	 * per ply, so making and unmaking moves never allocates or clones.
+	 * @param mv Move to be made
+	 * @param undo Record to be filled in for unmakeMove
+	 * @return true if move was successfully performed
+	 */
+	public abstract boolean makeMove(GameMove mv, Undo undo);
+	/**
+	 * Takes back the move that filled in undo. Moves must be taken back
+	 * in the reverse order they were made.
+	 * @param undo Record filled in by makeMove
+	 */
+	public abstract void unmakeMove(Undo undo);
 	/**
 	 * Recreates the board game's state from a string representation.
 	 * In particular, the string is a string generated as a "message"
 	 * string (i.e., one without newlines). This method must be able
 	 * to fill in the "board", who's next, number of moves performed,
-	 * and whether or not the game ends with this move.
+	 * and whether or not the game ends with this move. It must also
+	 * rebuild the Zobrist key from scratch.
 	 * @param s Message string representation of the state.
 	 */
 	public abstract void parseMsgString(String s);
@@ -1,18 +1,19 @@
 package game;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.PrintStream;
 import java.util.Scanner;
+import java.util.concurrent.BlockingQueue;
 
 // import breakthrough.*;
 
 import clobber.*;
 
-public class GameThread extends Thread {
+public class GameThread implements Runnable {
 	public static char SEP = File.separatorChar;
 	public static String dir;
 	public GameState.Status result;
 	public int homeID, awayID;
+	public BlockingQueue<GameThread> finished;	// Told when the game is over, if set
 	private int gameNum;
 	private Client home, away;
 	private GameMove mv;
@@ -71,17 +72,6 @@ public class GameThread extends Thread {
 		copy(src, dir, getFname(names[1], Tournament.gameParams.character("AWAYSYM"),
 								names[0], Tournament.gameParams.character("HOMESYM"), gameNum, awayResult)); 
 	}
-    private static void flushSocket(BufferedReader in)
-    {
-    	try {
-	    	String cmd = in.readLine();
-	    	while (!cmd.equals("OVER")) {
-	    		cmd = in.readLine();
-	    	}
-    	}
-    	catch (Exception e) {
-    	}
-    }
     public static GamePlayer getSystematicPlayer(int id)
     {
     	switch (id) {
@@ -98,7 +88,21 @@ public class GameThread extends Thread {
     	}
     	return null;
     }
+	/**
+	 * Plays the game, then puts this thread on the finished queue so the
+	 * tournament can free its clients at once, however the game ended
+	 */
 	public void run()
+	{
+		try {
+			play();
+		}
+		finally {
+			if (finished != null)
+				finished.add(this);
+		}
+	}
+	private void play()
 	{
 		boolean systematicPlay = (home == null || away == null);
 		boolean homeIsSystematic = systematicPlay && home == null;
@@ -164,15 +168,6 @@ public class GameThread extends Thread {
 			return;
 		}
 		
-		try {
-			if (!homeIsSystematic) players[0].sock.setSoTimeout(0);
-			if (!awayIsSystematic) players[1].sock.setSoTimeout(0);
-		}
-		catch (Exception e) {
-			System.err.println("Error setting infinte timeout:" + e);
-			System.err.flush();
-		}
-	
 		String m0 = "", m1 = "";
 		if (!homeIsSystematic) players[0].simpleMsg("START", "HOME", names[1]);
 		if (!awayIsSystematic) players[1].simpleMsg("START", "AWAY", names[0]);
@@ -256,7 +251,7 @@ public class GameThread extends Thread {
 			if (i == 0 && !homeIsSystematic || i == 1 && !awayIsSystematic) {
 				players[i].simpleMsg("OVER", winner);
 				if (!players[i].DQd)
-					flushSocket(players[i].input);
+					players[i].skipTo("OVER", 10);
 			}
 		}
 		if (winner.equals("HOME")) {
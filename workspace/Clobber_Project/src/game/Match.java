@@ -0,0 +1,326 @@
+package game;
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import clobber.*;
+
+/**
+ * Plays a match between two players inside one JVM, without the tournament
+ * server or its sockets. The players are driven through the same calls
+ * GamePlayer.compete makes for the server's commands, and each game keeps
+ * the server's clocks: a move that runs past MAXMOVETIME or the remaining
+ * GAMETIME loses, as does one past MOVETIME once NUMWARNINGS are used up.
+ * A move cannot be cut off in process, so an overlong move is only judged
+ * once it returns.
+ *
+ * Games are played at several tables at once, one thread per table. Each
+ * table has its own instance of both players, initialized once and then
+ * kept for every game it plays, as a client is for a whole tournament.
+ * The players swap sides from one game to the next.
+ */
+public class Match {
+	public static final char SEP = File.separatorChar;
+
+	/**
+	 * Makes new instances of a player, one for each table.
+	 */
+	public interface Entrant {
+		GamePlayer newPlayer();
+	}
+
+	/**
+	 * How a game of the match went.
+	 */
+	public static class Result {
+		public int gameNum;
+		public boolean firstIsHome;			// Whether the first entrant played HOME
+		public GameState.Status status;
+		public String reason;				// How the game was decided
+		public int moves;
+		public double [] remaining = new double [2];	// Game time left, HOME then AWAY
+
+		/**
+		 * @return +1 if the first entrant won, -1 if it lost, 0 for a draw
+		 */
+		public int firstResult()
+		{
+			if (status == GameState.Status.DRAW)
+				return 0;
+			return (status == GameState.Status.HOME_WIN) == firstIsHome ? +1 : -1;
+		}
+	}
+
+	private final GameState prototype;
+	private final double moveLimit, gameLimit, finalPlayLimit;
+	private final int maxWarnings;
+
+	/**
+	 * Creates a match for a game
+	 * @param gameParams Parameters holding the game's timing limits
+	 * @param prototype A state of the game, copied for each game played
+	 */
+	public Match(Params gameParams, GameState prototype)
+	{
+		this.prototype = prototype;
+		moveLimit = gameParams.integer("MOVETIME");
+		gameLimit = gameParams.integer("GAMETIME");
+		finalPlayLimit = gameParams.integer("MAXMOVETIME");
+		maxWarnings = gameParams.integer("NUMWARNINGS");
+	}
+
+	/**
+	 * Plays the match. Games are printed as they finish.
+	 * @param first The first entrant, HOME in the even numbered games
+	 * @param second The second entrant
+	 * @param numGames Number of games to play
+	 * @param tables Number of games played at once
+	 * @return The games, in the order they were numbered
+	 */
+	public List<Result> play(final Entrant first, final Entrant second, final int numGames, int tables)
+			throws InterruptedException, ExecutionException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(tables);
+		final AtomicInteger next = new AtomicInteger();
+		List<Future<List<Result>>> futures = new ArrayList<Future<List<Result>>>();
+		Result [] results = new Result [numGames];
+
+		// The pool's threads keep the JVM alive, so it is shut down even if a table fails
+		try {
+			for (int t=0; t<Math.min(tables, numGames); t++) {
+				futures.add(executor.submit(new Callable<List<Result>>() {
+					public List<Result> call()
+					{
+						List<Result> results = new ArrayList<Result>();
+						GamePlayer [] players = { first.newPlayer(), second.newPlayer() };
+						players[0].init();
+						players[1].init();
+
+						for (int n = next.getAndIncrement(); n < numGames; n = next.getAndIncrement()) {
+							Result result = (n % 2 == 0) ? playGame(players[0], players[1], n) :
+															playGame(players[1], players[0], n);
+							result.firstIsHome = (n % 2 == 0);
+							results.add(result);
+							System.out.printf("#%d %s vs %s: %s, %s in %d moves%n", n,
+									players[result.firstIsHome ? 0 : 1].nickname,
+									players[result.firstIsHome ? 1 : 0].nickname,
+									result.status, result.reason, result.moves);
+						}
+
+						players[0].done();
+						players[1].done();
+						return results;
+					}
+				}));
+			}
+
+			for (Future<List<Result>> future : futures) {
+				for (Result result : future.get()) {
+					results[result.gameNum] = result;
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Plays one game, making the calls the server's START, MOVE, TIME and
+	 * OVER commands lead to in GamePlayer.compete.
+	 * @param home Player moving first
+	 * @param away Player moving second
+	 * @param gameNum Number of the game in the match
+	 * @return How the game went
+	 */
+	public Result playGame(GamePlayer home, GamePlayer away, int gameNum)
+	{
+		GamePlayer [] players = { home, away };
+		GameState board = (GameState)prototype.clone();
+		board.reset();
+
+		Result result = new Result();
+		result.gameNum = gameNum;
+		result.reason = "played out";
+		int [] warnings = {0, 0};
+
+		// START: each player's message goes to the other before the game starts
+		home.stopPondering();
+		away.stopPondering();
+		home.side = GameState.Who.HOME;
+		away.side = GameState.Who.AWAY;
+		String homeMsg = home.messageForOpponent(away.nickname);
+		String awayMsg = away.messageForOpponent(home.nickname);
+		home.messageFromOpponent(awayMsg);
+		away.messageFromOpponent(homeMsg);
+		home.startGame(away.nickname);
+		away.startGame(home.nickname);
+		result.remaining[0] = result.remaining[1] = gameLimit;
+
+		int who = 0;
+		String lastMove = "--";
+		GameState.Status status = board.getStatus();
+
+		while (status == GameState.Status.GAME_ON) {
+			GamePlayer player = players[who];
+			double limit = Math.min(result.remaining[who], finalPlayLimit);
+			GameMove mv;
+
+			// MOVE: the player reads the board into its own state, as it would from the server
+			player.stopPondering();
+			long start = System.nanoTime();
+			try {
+				player.gameState.parseMsgString(board.msgString());
+				mv = player.getMove(player.gameState, lastMove);
+			}
+			catch (Exception e) {
+				System.err.println("Problem in " + player.nickname + " " + e);
+				e.printStackTrace();
+				System.err.flush();
+				result.reason = player.nickname + " crashed";
+				break;
+			}
+			double time = (System.nanoTime() - start) / 1e9;
+			result.remaining[who] -= time;
+
+			if (time > limit) {
+				result.reason = String.format("%s ran out of time (%.3f secs)", player.nickname, time);
+				break;
+			} else if (time > moveLimit) {
+				warnings[who]++;
+				System.err.printf("warning %s %f%n", player.nickname, time);
+				System.err.flush();
+				if (warnings[who] > maxWarnings) {
+					result.reason = player.nickname + " had too many timeouts";
+					break;
+				}
+			}
+			if (mv == null || !board.makeMove(mv)) {
+				result.reason = player.nickname + " made bad move " + mv;
+				break;
+			}
+
+			// TIME: the player learns what the move cost and may ponder the reply
+			player.timeOfLastMove(time);
+			player.startPondering(player.gameState, mv);
+
+			lastMove = mv.toString();
+			result.moves++;
+			status = board.getStatus();
+			who = (who + 1) % 2;
+		}
+
+		// A game cut short is lost by the player to move
+		if (status == GameState.Status.GAME_ON) {
+			status = (who == 0) ? GameState.Status.AWAY_WIN : GameState.Status.HOME_WIN;
+		}
+		result.status = status;
+
+		// OVER
+		int homeResult = (status == GameState.Status.HOME_WIN) ? +1 :
+						 (status == GameState.Status.AWAY_WIN) ? -1 : 0;
+		home.stopPondering();
+		away.stopPondering();
+		home.endGame(homeResult);
+		away.endGame(-homeResult);
+
+		return result;
+	}
+
+	/**
+	 * Makes a Clobber player from its name
+	 * @param name Shill, ABT, AB_11_10, AB, MCTS, Random or Systematic
+	 * @param threads Threads Shill, ABT and MCTS search each move with; the
+	 * others, AB_11_10 included, search on the calling thread
+	 * @return The entrant, or null if the name is unknown
+	 */
+	public static Entrant entrant(final String name, final int threads)
+	{
+		if (!Arrays.asList("Shill", "ABT", "AB_11_10", "AB", "MCTS", "Random", "Systematic").contains(name))
+			return null;
+
+		return new Entrant() {
+			public GamePlayer newPlayer()
+			{
+				if (name.equals("Shill"))
+					return new ShillPlayer("Shill", ShillPlayer.MAX_DEPTH, threads, "shill_library.txt");
+				else if (name.equals("ABT"))
+					return new AlphaBetaThreaded("ABT", AlphaBetaThreaded.MAX_DEPTH, threads, "messages");
+				else if (name.equals("AB_11_10"))
+					return new AlphaBeta_11_10("AB_11_10", AlphaBeta_11_10.MAX_DEPTH - 1);
+				else if (name.equals("AB"))
+					return new AlphaBetaPlayer("AB_1", AlphaBetaPlayer.MAX_DEPTH, 1);
+				else if (name.equals("MCTS"))
+					return new MCTSPlayer("MCTS", threads);
+				else if (name.equals("Random"))
+					return new RandomClobberPlayer("Random+");
+				else
+					return new SystematicClobberPlayer("systematic");
+			}
+		};
+	}
+
+	/**
+	 * Prints the first entrant's record over the match, overall and by side
+	 * @param name Name of the first entrant
+	 * @param results The games of the match
+	 */
+	public static void displaySummary(String name, List<Result> results)
+	{
+		int [][] record = new int [3][3];	// All, as HOME, as AWAY; then wins, losses, draws
+		for (Result result : results) {
+			int r = result.firstResult();
+			int col = r > 0 ? 0 : r < 0 ? 1 : 2;
+			record[0][col]++;
+			record[result.firstIsHome ? 1 : 2][col]++;
+		}
+
+		String [] labels = { "total", "as HOME", "as AWAY" };
+		for (int i=0; i<3; i++) {
+			int games = record[i][0] + record[i][1] + record[i][2];
+			double score = games > 0 ? (record[i][0] + 0.5 * record[i][2]) / games : 0.5;
+			System.out.printf("%s %-8s %3d wins %3d losses %3d draws  %5.1f%%", name, labels[i],
+					record[i][0], record[i][1], record[i][2], 100 * score);
+			if (score > 0 && score < 1)
+				System.out.printf("  %+.0f Elo", 400 * Math.log10(score / (1 - score)));
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Plays a Clobber match
+	 * @param args first second [games] [tables] [threads]: the two players'
+	 * names, the number of games (10), the games played at once (one per
+	 * core) and the threads each player searches with (1)
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length < 2) {
+			System.err.println("usage: Match first second [games] [tables] [threads]");
+			return;
+		}
+		int numGames = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+		int tables = args.length > 3 ? Integer.parseInt(args[3]) :
+						Math.max(1, Runtime.getRuntime().availableProcessors() / threads);
+
+		Entrant first = entrant(args[0], threads);
+		Entrant second = entrant(args[1], threads);
+		if (first == null || second == null) {
+			System.err.println("Unknown player " + (first == null ? args[0] : args[1]));
+			return;
+		}
+
+		Params gameParams = new Params("config" + SEP + "Clobber.txt");
+		System.out.printf("%s vs %s, %d games at %d tables%n", args[0], args[1], numGames, tables);
+		long startTime = System.currentTimeMillis();
+
+		List<Result> results = new Match(gameParams, new ClobberState()).play(first, second, numGames, tables);
+
+		displaySummary(args[0], results);
+		System.out.printf("%.1f secs%n", (System.currentTimeMillis() - startTime) / 1000.0);
+	}
+}
@@ -30,7 +30,7 @@ public class Params {
 	public boolean defined(String key)
 	{ return map.containsKey(key); }
 	public boolean bool(String key)
-	{ return defined(key) ? Boolean.parseBoolean(key) : false; }
+	{ return defined(key) ? Boolean.parseBoolean(string(key)) : false; }
 	public String string(String key)
 	{ return map.get(key); }
 	public int integer(String key)
@@ -0,0 +1,159 @@
+package game;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The tournament's network side. One thread runs a selector over the
+ * listening socket and every client connection: it accepts clients as
+ * they connect, reads whatever each one sends into that client's lines,
+ * and finishes writes a client could not take at once. No thread ever
+ * blocks on a socket; a game waits on its Client for a line, and the
+ * server's timer wheel wakes it if the line does not come in time.
+ */
+public class Server implements Runnable {
+	public static final int BUFSIZE = 4096;
+
+	public final TimerWheel timers = new TimerWheel();
+	private final Selector selector;
+	private final ServerSocketChannel acceptor;
+	private final LinkedBlockingQueue<Client> accepted = new LinkedBlockingQueue<Client>();
+	private final ConcurrentLinkedQueue<Client> writers = new ConcurrentLinkedQueue<Client>();
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFSIZE);
+	private volatile boolean closed;
+
+	/**
+	 * Opens the server's listening socket
+	 * @param port Port clients connect to
+	 */
+	public Server(int port) throws IOException
+	{
+		selector = Selector.open();
+		acceptor = ServerSocketChannel.open();
+		acceptor.socket().setReuseAddress(true);
+		acceptor.socket().bind(new InetSocketAddress(port));
+		acceptor.configureBlocking(false);
+		acceptor.register(selector, SelectionKey.OP_ACCEPT);
+	}
+	/**
+	 * Starts accepting clients and serving their connections
+	 */
+	public void start()
+	{
+		timers.start();
+		Thread thread = new Thread(this, "Server");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	/**
+	 * Waits for the next client to connect. Clients are returned in the
+	 * order they connected, and each is being read from already, so its
+	 * handshake may be done while others are still connecting.
+	 * @return The client
+	 */
+	public Client accept() throws InterruptedException
+	{ return accepted.take(); }
+	/**
+	 * Closes the listening socket and every connection
+	 */
+	public void close()
+	{
+		closed = true;
+		timers.stop();
+		selector.wakeup();
+	}
+	/**
+	 * Asks for a client's waiting output to be written once its socket
+	 * can take it. Interest is only changed on the selector's thread.
+	 */
+	void wantWrite(Client client)
+	{
+		writers.add(client);
+		selector.wakeup();
+	}
+	public void run()
+	{
+		try {
+			while (!closed) {
+				selector.select();
+
+				for (Client c = writers.poll(); c != null; c = writers.poll()) {
+					SelectionKey key = c.channel.keyFor(selector);
+					if (key != null && key.isValid()) {
+						key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					}
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						SocketChannel channel = acceptor.accept();
+						if (channel == null) {
+							continue;
+						}
+						channel.configureBlocking(false);
+						channel.socket().setTcpNoDelay(true);
+						Client client = new Client(this, channel);
+						channel.register(selector, SelectionKey.OP_READ, client);
+						accepted.add(client);
+						continue;
+					}
+
+					Client client = (Client)key.attachment();
+					try {
+						if (key.isReadable()) {
+							buffer.clear();
+							int n = client.channel.read(buffer);
+							if (n < 0) {
+								client.disconnected();
+								key.cancel();
+								client.channel.close();
+								continue;
+							}
+							buffer.flip();
+							client.received(buffer);
+						}
+						if (key.isValid() && key.isWritable() && client.flush()) {
+							key.interestOps(SelectionKey.OP_READ);
+						}
+					}
+					catch (IOException e) {
+						client.disconnected();
+						key.cancel();
+						client.channel.close();
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			System.err.println("Server problem " + e);
+			e.printStackTrace();
+		}
+		finally {
+			for (SelectionKey key : selector.keys()) {
+				try {
+					if (key.attachment() instanceof Client) {
+						((Client)key.attachment()).disconnected();
+					}
+					key.channel().close();
+				}
+				catch (IOException e) {
+				}
+			}
+			try {
+				selector.close();
+			}
+			catch (IOException e) {
+			}
+		}
+	}
+}
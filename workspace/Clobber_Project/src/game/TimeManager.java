@@ -0,0 +1,102 @@
+package game;
+
+/**
+ * Budgets a player's thinking time from the clock the tournament server keeps.
+ * The server charges a move from the moment it sends MOVE until the reply
+ * arrives, and a player is lost if one move runs past MOVETIME (when no
+ * warnings are allowed), MAXMOVETIME or the remaining GAMETIME. The manager
+ * mirrors the server's game clock through timeOfLastMove and learns how much
+ * the server's figure exceeds the time the player measured itself.
+ */
+public class TimeManager {
+	public static final double SAFETY = 0.1;	// Seconds always left unused
+	public static final double GROWTH = 4.0;	// Iteration growth assumed until measured
+
+	private double gameLimit, moveLimit;
+	private double remaining;	// Game time the server thinks we have left
+	private double overhead;	// Largest recent server time beyond our own
+	private double budget;		// Target thinking time for this move
+	private double deadline;	// Thinking time this move must never pass
+	private long moveStart;
+	private double thought;		// Our own measure of the last move
+
+	/**
+	 * Creates a time manager for a game's timing parameters
+	 * @param gameParams Parameters holding MOVETIME, MAXMOVETIME and GAMETIME
+	 */
+	public TimeManager(Params gameParams)
+	{
+		gameLimit = gameParams.integer("GAMETIME");
+		moveLimit = Math.min(gameParams.integer("MOVETIME"), gameParams.integer("MAXMOVETIME"));
+		startGame();
+	}
+	/**
+	 * Resets the game clock at the start of a game
+	 */
+	public void startGame()
+	{
+		remaining = gameLimit;
+		thought = 0;
+	}
+	/**
+	 * Starts timing a move and works out its budget. The remaining game
+	 * time is shared evenly between the moves still expected, but a move
+	 * may run on to twice its share so long as it stays inside the limits
+	 * the server enforces.
+	 * @param movesLeft Estimate of the moves this player has left to make
+	 */
+	public void startMove(int movesLeft)
+	{
+		moveStart = System.nanoTime();
+		double cap = Math.min(moveLimit, remaining) - overhead - SAFETY;
+		budget = Math.max(0, Math.min(cap, (remaining - SAFETY) / Math.max(1, movesLeft)));
+		deadline = Math.max(budget, Math.min(cap, 2 * budget));
+	}
+	/**
+	 * Records our own measure of the move just made. Called when the
+	 * player has its move ready to send.
+	 */
+	public void stopMove()
+	{ thought = elapsed(); }
+	/**
+	 * Charges the last move against the game clock
+	 * @param secs Time the server charged for the move
+	 */
+	public void endMove(double secs)
+	{
+		remaining -= secs;
+		overhead = Math.max(0.9 * overhead, secs - thought);
+	}
+	/**
+	 * @return Seconds since the current move was started
+	 */
+	public double elapsed()
+	{ return (System.nanoTime() - moveStart) / 1e9; }
+	/**
+	 * Decides whether another search iteration should be started. The
+	 * next iteration is predicted to cost the last one times the growth
+	 * between the last two.
+	 * @param last Seconds taken by the last completed iteration
+	 * @param prev Seconds taken by the iteration before it, or 0 if none
+	 * @return true if the next iteration is expected to finish within budget
+	 */
+	public boolean startIteration(double last, double prev)
+	{
+		double growth = prev > 0 ? Math.min(Math.max(1.0, last / prev), 4 * GROWTH) : GROWTH;
+		return elapsed() + last * growth <= budget;
+	}
+	/**
+	 * @return true once the move has used the time it must not go beyond
+	 */
+	public boolean pastDeadline()
+	{ return elapsed() >= deadline; }
+	/**
+	 * @return Seconds left before the move's deadline
+	 */
+	public double untilDeadline()
+	{ return deadline - elapsed(); }
+	public double budget()
+	{ return budget; }
+	public double remaining()
+	{ return remaining; }
+}
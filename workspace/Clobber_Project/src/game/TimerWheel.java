@@ -0,0 +1,122 @@
+package game;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A hashed timer wheel, which runs tasks at their deadlines from a single
+ * thread. The wheel's slots each cover one tick; a timeout is put in the
+ * slot its deadline falls in, along with the number of turns of the wheel
+ * still to go. Scheduling and cancelling cost the same however many
+ * timeouts are pending, which suits the server's many short-lived move
+ * timeouts, nearly all of which are cancelled when the move arrives.
+ */
+public class TimerWheel implements Runnable {
+	public static final long TICK = 10000000L;	// Nanoseconds a slot covers
+	public static final int SLOTS = 512;		// A power of 2
+
+	/**
+	 * A task waiting on the wheel.
+	 */
+	public static class Timeout {
+		private final long deadline;
+		private final Runnable task;
+		private long turns;
+		private volatile boolean cancelled;
+
+		private Timeout(long deadline, Runnable task)
+		{
+			this.deadline = deadline;
+			this.task = task;
+		}
+		/**
+		 * Stops the task from being run, if it has not run already
+		 */
+		public void cancel()
+		{ cancelled = true; }
+	}
+
+	private final ArrayList<ArrayList<Timeout>> slots = new ArrayList<ArrayList<Timeout>>(SLOTS);
+	private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+	private final long start = System.nanoTime();
+	private long tick;			// Ticks the wheel has turned through
+	private volatile boolean stopped;
+
+	public TimerWheel()
+	{
+		for (int i=0; i<SLOTS; i++) {
+			slots.add(new ArrayList<Timeout>());
+		}
+	}
+	/**
+	 * Starts the wheel turning on a daemon thread of its own
+	 */
+	public void start()
+	{
+		Thread thread = new Thread(this, "TimerWheel");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	/**
+	 * Stops the wheel; pending tasks are never run
+	 */
+	public void stop()
+	{ stopped = true; }
+	/**
+	 * Arranges for a task to run on the wheel's thread at a deadline. The
+	 * task may run up to a tick late, never early.
+	 * @param deadline Time to run it, as given by System.nanoTime
+	 * @param task Task to run; it must be quick, as it holds up the wheel
+	 * @return A handle for cancelling the task
+	 */
+	public Timeout schedule(long deadline, Runnable task)
+	{
+		Timeout timeout = new Timeout(deadline, task);
+		added.add(timeout);
+		return timeout;
+	}
+	public void run()
+	{
+		while (!stopped) {
+			// Sleep to the end of the current tick
+			long next = start + (tick + 1) * TICK;
+			long sleep = next - System.nanoTime();
+			if (sleep > 0) {
+				try {
+					Thread.sleep(sleep / 1000000L, (int)(sleep % 1000000L));
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+			}
+
+			// Timeouts are placed by the wheel's own thread, so the slots need no locking.
+			// Slot k is run once tick k has ended, so a deadline within tick k+1 goes in slot k
+			for (Timeout t = added.poll(); t != null; t = added.poll()) {
+				long ticks = Math.max(tick, (t.deadline - start + TICK - 1) / TICK - 1);
+				t.turns = (ticks - tick) / SLOTS;
+				slots.get((int)(ticks & (SLOTS - 1))).add(t);
+			}
+
+			Iterator<Timeout> it = slots.get((int)(tick & (SLOTS - 1))).iterator();
+			while (it.hasNext()) {
+				Timeout t = it.next();
+				if (t.cancelled) {
+					it.remove();
+				} else if (t.turns == 0) {
+					it.remove();
+					try {
+						t.task.run();
+					}
+					catch (Exception e) {
+						System.err.println("Timer task failed " + e);
+						e.printStackTrace();
+					}
+				} else {
+					t.turns--;
+				}
+			}
+			tick++;
+		}
+	}
+}
@@ -4,6 +4,8 @@ import java.io.*;
 import java.lang.Exception;
 import java.util.Date;
 import java.util.*;
+import java.util.concurrent.*;
+import java.lang.reflect.Method;
 
 /*
 import ttt.*;
@@ -32,6 +34,7 @@ public class Tournament {
 	private static class Game {
 		public int h, a;
 		public int gameNum;
+		public boolean taken;	// Started or scored, so it is no longer pending
 		public Game(int h, int a, int n)
 		{
 			this.h = h;
@@ -145,6 +148,28 @@ public class Tournament {
         }
     	
     }
+    /**
+     * Makes the executor games are played on. Each game spends most of its
+     * time blocked reading from a client, so with VIRTUALTHREADS a game gets
+     * a virtual thread of its own where the JVM has them (Java 21 on).
+     * Otherwise the games share a pool of platform threads, one per game
+     * that may be played at once.
+     * @param maxGames Most games that are played at once
+     * @return The executor
+     */
+    private static ExecutorService newGameExecutor(int maxGames)
+    {
+    	if (tournamentParams.bool("VIRTUALTHREADS")) {
+    		try {
+    			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    			return (ExecutorService)factory.invoke(null);
+    		}
+    		catch (Exception e) {
+    			System.err.println("No virtual threads in this JVM; using " + maxGames + " game threads");
+    		}
+    	}
+    	return Executors.newFixedThreadPool(maxGames);
+    }
     public static void launchTournament(GameState st, GameMove move)
     {
     	boolean systematicTournament = false;
@@ -177,12 +202,25 @@ public class Tournament {
 		ArrayList<Game> schedule = new ArrayList<Game>();
 		threads = new ArrayList<GameThread>();
 		String format = gameParams.bool("TIES") ? "%13s " : "%9s ";
+
+		// A client plays one game at a time, which bounds the games at once even without MAXGAMES
+		int maxGames = systematicTournament ? NUM_CLIENTS : Math.max(1, NUM_CLIENTS / 2);
+		if (tournamentParams.integer("MAXGAMES") > 0) {
+			maxGames = Math.min(maxGames, tournamentParams.integer("MAXGAMES"));
+		}
+		ExecutorService executor = newGameExecutor(maxGames);
+		Server server = null;
 		
 		try {
-			ServerSocket socket = new ServerSocket(PORT);
+			server = new Server(PORT);
+			server.start();
 	        clients = new Client [NUM_CLIENTS];
 			for (i=0; i<NUM_CLIENTS; i++) {
-				clients[i] = new Client(socket, INIT_LIMIT, MOVE_LIMIT, FINAL_PLAY_LIMIT,
+				clients[i] = server.accept();
+			}
+			// Every client is read from as it connects, so the handshakes overlap
+			for (i=0; i<NUM_CLIENTS; i++) {
+				clients[i].handshake(INIT_LIMIT, MOVE_LIMIT, FINAL_PLAY_LIMIT,
 											GAME_LIMIT, MAX_WARNINGS);
 				if (clients[i].name.toUpperCase().contains("HUMAN")) {
 					clients[i].gameTimeLimit = clients[i].moveLimit = 
@@ -210,39 +248,50 @@ public class Tournament {
 			}
 			shuffle(schedule);
 
+			// Index the games by client, in schedule order; a game is on both of its clients' lists
+			ArrayList<LinkedList<Game>> pending = new ArrayList<LinkedList<Game>>();
+			for (i=0; i<NUM_CLIENTS; i++) {
+				pending.add(new LinkedList<Game>());
+			}
+			for (Game g : schedule) {
+				if (g.h >= 0) pending.get(g.h).add(g);
+				if (g.a >= 0) pending.get(g.a).add(g);
+			}
+
+			LinkedBlockingQueue<GameThread> finished = new LinkedBlockingQueue<GameThread>();
+			ArrayDeque<Integer> ready = new ArrayDeque<Integer>();
+			ArrayDeque<Integer> blocked = new ArrayDeque<Integer>();	// Free, but every game slot was in use
+			for (i=0; i<NUM_CLIENTS; i++) {
+				ready.add(i);
+			}
 			int remain = schedule.size();
+			int consecWins = Tournament.tournamentParams.integer("CONSECWINS");
 	
 			while (remain > 0) {
-				Thread.sleep(500);
-				boolean cont = true;
-				while (cont) {
-					cont = false;
-					for (i=0; i<schedule.size(); i++) {
-						Game g = schedule.get(i);
+				// Find games for the clients that have just become free, looking only at their own games
+				while (!ready.isEmpty()) {
+					if (threads.size() >= maxGames) {
+						blocked.addAll(ready);
+						ready.clear();
+						break;
+					}
+					int c = ready.poll();
+					Iterator<Game> it = pending.get(c).iterator();
+					while (!clients[c].busy && it.hasNext()) {
+						Game g = it.next();
+						if (g.taken) {
+							it.remove();
+							continue;
+						}
 						p1 = g.h;
 						p2 = g.a;
-						int actualPlayer = p1 >= 0 ? p1 : p2;
-						int consecWins = Tournament.tournamentParams.integer("CONSECWINS");
-						if (systematicTournament) {
-							if (!clients[actualPlayer].busy) {
-								GameThread game;
-								if (g.h >= 0) {
-									game = new GameThread(clients[g.h], g.h, null, g.a, g.gameNum, move.clone(), st.clone());
-								} else {
-									game = new GameThread(null, g.h, clients[g.a], g.a, g.gameNum, move.clone(), st.clone());
-								}
-								game.start();
-								clients[actualPlayer].busy = true;
-								threads.add(game);
-								schedule.remove(i);
-								System.out.printf("%s (%d)%n", clients[actualPlayer].name, remain);
-								cont = true;
-							}
-						} else if ((headToHeadSummary[p1][p2][0] >= consecWins &&
+						if (!systematicTournament &&
+							((headToHeadSummary[p1][p2][0] >= consecWins &&
 								headToHeadSummary[p1][p2][1] + headToHeadSummary[p1][p2][2] == 0) ||
 							(headToHeadSummary[p1][p2][0] + headToHeadSummary[p1][p2][2] == 0 && 
-								headToHeadSummary[p1][p2][1] >= consecWins)) {
-							schedule.remove(i);
+								headToHeadSummary[p1][p2][1] >= consecWins))) {
+							g.taken = true;
+							it.remove();
 							remain--;
 							if (headToHeadSummary[p1][p2][0] == 0) {
 								headToHeadSummary[p1][p2][1]++; 
@@ -257,64 +306,81 @@ public class Tournament {
 								totalSummary[p1][0]++;
 								totalSummary[p2][1]++;
 							}
-						} else if (!clients[g.h].busy && !clients[g.a].busy) {
-							GameThread game = new GameThread(clients[g.h], g.h, clients[g.a], g.a,
+						} else if ((p1 < 0 || !clients[p1].busy) && (p2 < 0 || !clients[p2].busy)) {
+							GameThread game = new GameThread(p1 >= 0 ? clients[p1] : null, p1,
+													p2 >= 0 ? clients[p2] : null, p2,
 													g.gameNum, move.clone(), st.clone());
-							game.start();
-							clients[g.h].busy = clients[g.a].busy = true;
+							game.finished = finished;
+							if (p1 >= 0) clients[p1].busy = true;
+							if (p2 >= 0) clients[p2].busy = true;
+							g.taken = true;
+							it.remove();
 							threads.add(game);
-							schedule.remove(i);
-							System.out.printf("%s-%s (%d)%n", clients[g.h].name, clients[g.a].name, remain);
-							cont = true;
+							executor.execute(game);
+							if (p1 < 0 || p2 < 0) {
+								System.out.printf("%s (%d)%n", clients[c].name, remain);
+							} else {
+								System.out.printf("%s-%s (%d)%n", clients[p1].name, clients[p2].name, remain);
+							}
 						}
 					}
 				}
-				i = 0;
-				while (i<threads.size()) {
-					GameThread t = threads.get(i);
-					if (t.isAlive()) {
-						i++;
-					} else {
-						boolean systematic = t.homeID < 0 || t.awayID < 0;
-						boolean homeIsSystematic = systematic && t.homeID < 0;
-						boolean awayIsSystematic = systematic && t.awayID < 0;
-						
-						p1 = t.homeID;
-						p2 = t.awayID;
-						if (!homeIsSystematic) clients[p1].busy = false;
-						if (!awayIsSystematic) clients[p2].busy = false;
-	                    GameState.Status outcome = t.result;
-						threads.remove(i);
-						remain--;
-						
-						int cnt = stochasticGame(p1, p2) ? 1 : NUM_GAMES;
-	                    if (outcome == GameState.Status.HOME_WIN) {
-	                    	System.out.printf("home (%s) won%n", homeIsSystematic ? "SYS" : clients[p1].name);
-	                    	if (!systematic) headToHeadSummary[p1][p2][0] += cnt;
-							if (!awayIsSystematic) awaySummary[p2][1] += cnt;
-							if (!homeIsSystematic) homeSummary[p1][0] += cnt;
-							if (!homeIsSystematic) totalSummary[p1][0] += cnt;
-							if (!awayIsSystematic) totalSummary[p2][1] += cnt;
-	                    } else if (outcome == GameState.Status.AWAY_WIN) {
-	                    	System.out.printf("away (%s) won%n", awayIsSystematic ? "SYS" : clients[p2].name);
-	                    	if (!systematic) headToHeadSummary[p1][p2][1] += cnt;
-	                    	if (!awayIsSystematic) awaySummary[p2][0] += cnt;
-	                    	if (!homeIsSystematic) homeSummary[p1][1] += cnt;
-	                    	if (!homeIsSystematic) totalSummary[p1][1] += cnt;
-							if (!awayIsSystematic) totalSummary[p2][0] += cnt;
-	                    } else if (outcome == GameState.Status.DRAW) {
-	                    	System.out.println(" draw\n");
-	                    	if (!systematic) headToHeadSummary[p1][p2][2] += cnt;
-	                    	if (!awayIsSystematic) awaySummary[p2][2] += cnt;
-	                    	if (!homeIsSystematic) homeSummary[p1][2] += cnt;
-	                    	if (!homeIsSystematic) totalSummary[p1][2] += cnt;
-							if (!awayIsSystematic) totalSummary[p2][2] += cnt;
-	                    } else {
-	                    	System.err.println("Error with game outcome");
-	                    }
+				if (remain == 0) {
+					break;
+				}
+				// Only scored games were left for the clients looked at; look at them all again
+				if (threads.isEmpty()) {
+					for (i=0; i<NUM_CLIENTS; i++) {
+						ready.add(i);
 					}
+					continue;
 				}
+
+				// Wait for a game to finish, then free its clients to play again
+				GameThread t = finished.take();
+				boolean systematic = t.homeID < 0 || t.awayID < 0;
+				boolean homeIsSystematic = systematic && t.homeID < 0;
+				boolean awayIsSystematic = systematic && t.awayID < 0;
+				
+				p1 = t.homeID;
+				p2 = t.awayID;
+				if (!homeIsSystematic) clients[p1].busy = false;
+				if (!awayIsSystematic) clients[p2].busy = false;
+				if (!homeIsSystematic) ready.add(p1);
+				if (!awayIsSystematic) ready.add(p2);
+				ready.addAll(blocked);
+				blocked.clear();
+                GameState.Status outcome = t.result;
+				threads.remove(t);
+				remain--;
+				
+				int cnt = stochasticGame(p1, p2) ? 1 : NUM_GAMES;
+                if (outcome == GameState.Status.HOME_WIN) {
+                	System.out.printf("home (%s) won%n", homeIsSystematic ? "SYS" : clients[p1].name);
+                	if (!systematic) headToHeadSummary[p1][p2][0] += cnt;
+					if (!awayIsSystematic) awaySummary[p2][1] += cnt;
+					if (!homeIsSystematic) homeSummary[p1][0] += cnt;
+					if (!homeIsSystematic) totalSummary[p1][0] += cnt;
+					if (!awayIsSystematic) totalSummary[p2][1] += cnt;
+                } else if (outcome == GameState.Status.AWAY_WIN) {
+                	System.out.printf("away (%s) won%n", awayIsSystematic ? "SYS" : clients[p2].name);
+                	if (!systematic) headToHeadSummary[p1][p2][1] += cnt;
+                	if (!awayIsSystematic) awaySummary[p2][0] += cnt;
+                	if (!homeIsSystematic) homeSummary[p1][1] += cnt;
+                	if (!homeIsSystematic) totalSummary[p1][1] += cnt;
+					if (!awayIsSystematic) totalSummary[p2][0] += cnt;
+                } else if (outcome == GameState.Status.DRAW) {
+                	System.out.println(" draw\n");
+                	if (!systematic) headToHeadSummary[p1][p2][2] += cnt;
+                	if (!awayIsSystematic) awaySummary[p2][2] += cnt;
+                	if (!homeIsSystematic) homeSummary[p1][2] += cnt;
+                	if (!homeIsSystematic) totalSummary[p1][2] += cnt;
+					if (!awayIsSystematic) totalSummary[p2][2] += cnt;
+                } else {
+                	System.err.println("Error with game outcome");
+                }
 			}
+			executor.shutdown();
 		
 			for (int j=0; j<NUM_CLIENTS; j++) {
 				clients[j].simpleMsg("DONE");
@@ -334,6 +400,11 @@ public class Tournament {
 		catch (Exception e) {
 			System.out.println("Server problem" + e);
 		}
+		finally {
+			executor.shutdownNow();
+			if (server != null)
+				server.close();
+		}
 	}
 
 	public static void main(String[] args)